@@ -0,0 +1,126 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Daemon Client - Node.js Module
+//  Copyright(C) 2012 Matt Bolt
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a
+//  copy of this software and associated documentation files (the "Software"),
+//  to deal in the Software without restriction, including without limitation
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+//  and/or sell copies of the Software, and to permit persons to whom the
+//  Software is furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in
+//  all copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+//  THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+// Options which never finish, so they're never forwarded to the daemon
+var LONG_RUNNING = [ '--daemon', '--watch', '-w' ];
+
+// Milliseconds to wait for the daemon to accept the connection, then for
+// each piece of its output
+var CONNECT_TIMEOUT = 2000;
+var RESPONSE_TIMEOUT = 300000;
+
+// Requires
+var path = require('path');
+var fs = require('fs');
+var net = require('net');
+
+// Export the DaemonClient class
+exports.DaemonClient = (function() {
+
+  function DaemonClient() {
+
+  }
+
+  /**
+   * Returns the file the running daemon writes its port and token to.
+   */
+  function getDaemonFile() {
+    var home = process.env.HOME || process.env.USERPROFILE || '';
+    return path.join(home, '.coffee-graph', 'daemon');
+  }
+
+  /**
+   * Reads the port and token of the running daemon, or returns null if
+   * there isn't one.
+   */
+  function readDaemonFile() {
+    try {
+      var lines = fs.readFileSync(getDaemonFile(), 'utf8').split('\n');
+      var port = parseInt(lines[0], 10);
+
+      return isNaN(port) ? null : { port: port, token: lines[1] };
+    } catch (e) {
+      return null;
+    }
+  }
+
+  /**
+   * This method forwards the arguments to a running coffee-graph daemon,
+   * writing its output to stdout. If no daemon is running, or it can't be
+   * reached, the fallback function is called instead.
+   */
+  DaemonClient.forward = function(args, fallback) {
+    for (var i = 0; i < args.length; ++i) {
+      if (LONG_RUNNING.indexOf(args[i]) != -1) {
+        fallback();
+        return;
+      }
+    }
+
+    var daemon = readDaemonFile();
+    if (!daemon) {
+      fallback();
+      return;
+    }
+
+    var connected = false;
+    var socket = net.connect(daemon.port, '127.0.0.1', function() {
+      connected = true;
+      socket.setTimeout(RESPONSE_TIMEOUT);
+
+      var request = [ daemon.token, process.cwd() ].concat(args);
+      socket.end(request.join('\n') + '\n\n', 'utf8');
+    });
+
+    socket.setTimeout(CONNECT_TIMEOUT);
+
+    // A daemon which can't be reached in time is ignored, but one which
+    // stops responding mid-command can't be, since it may have done work
+    socket.on('timeout', function() {
+      socket.destroy();
+
+      if (connected) {
+        console.error('[CoffeeGraph Error: The daemon stopped responding]');
+      } else {
+        fallback();
+      }
+    });
+
+    socket.on('data', function(data) {
+      process.stdout.write(data);
+    });
+
+    socket.on('error', function(error) {
+      if (connected) {
+        console.error(error);
+      } else {
+        fallback();
+      }
+    });
+  };
+
+  return DaemonClient;
+
+})();
@@ -147,18 +147,38 @@ exports.JavaHelper = (function() {
     return false;
   };
 
+  /**
+   * This method returns the JVM options which load the class-data-sharing
+   * archive, or an empty array if the archive doesn't exist. JVMs which don't
+   * support the options ignore them, as they do an archive created by a
+   * different JVM.
+   */
+  JavaHelper.sharedArchiveOptions = function(archive) {
+    if (!fs.existsSync(archive)) {
+      return [];
+    }
+
+    return [
+      '-XX:+IgnoreUnrecognizedVMOptions',
+      '-Xshare:auto',
+      '-XX:SharedArchiveFile="' + archive + '"'
+    ];
+  };
+
   /**
    * This method executes java -jar on the jar parameter provided with the arguments 
    * provided. The output of the application is forwarded to the appropriate output
-   * stream.
+   * stream. Any JVM options are passed before the jar.
    */
-  JavaHelper.executeJar = function(jar, args) {
+  JavaHelper.executeJar = function(jar, args, options) {
     if (util.isArray(args)) {
       args = args.join(' ');
     }
     args = " " + args;
+
+    options = util.isArray(options) && options.length > 0 ? options.join(' ') + ' ' : '';
       
-    execute("java -jar " + jar + args, onApplicationOutput);
+    execute("java " + options + "-jar " + jar + args, onApplicationOutput);
   };
 
   return JavaHelper;
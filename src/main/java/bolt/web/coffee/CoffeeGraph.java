@@ -26,12 +26,18 @@
 package bolt.web.coffee;
 
 import bolt.web.coffee.command.CoffeeGraphCommandParser;
+import bolt.web.coffee.dependency.AnalysisCache;
 import bolt.web.coffee.dependency.graph.CyclicDependencyException;
 import bolt.web.coffee.exceptions.ChainedExportException;
+import bolt.web.coffee.exceptions.CoffeeSyntaxException;
 import bolt.web.coffee.exceptions.NoValidCoffeeFilesException;
 import bolt.web.coffee.exceptions.RequiredBuilderComponentException;
 import bolt.web.coffee.io.*;
-import bolt.web.coffee.util.CoffeeScript;
+import bolt.web.coffee.io.lexers.ConformanceLexer;
+import bolt.web.coffee.io.lexers.JavaCoffeeScriptLexer;
+
+import java.io.File;
+import java.io.IOException;
 
 /**
  * This is the main class for the coffee-graph project.
@@ -51,7 +57,7 @@ public class CoffeeGraph implements Runnable {
 
     public static String getVersionInfo() {
         return "[CoffeeGraph v" + CoffeeGraphVersion.Version + "]\n" +
-               " +- Running: CoffeeScript v" + new CoffeeScript().getVersion() + "\n" +
+               " +- Running: CoffeeScript v" + CoffeeGraphVersion.CoffeeScriptVersion + "\n" +
                " +- Using: Java v" + System.getProperty("java.version") +
                     " from " + System.getProperty("java.vendor");
     }
@@ -78,12 +84,24 @@ public class CoffeeGraph implements Runnable {
             return;
         }
 
+        if (options.isDaemon()) {
+            new CoffeeGraphDaemon(exporters, options.getPort()).run();
+            return;
+        }
+
         try {
-            new CoffeeScriptDependencyBuilder()
-                .withTokensFrom(new CoffeeScriptLexer())
-                .parsedWith(new CoffeeScriptMinParser())
+            CoffeeScriptDependencyBuilder builder = new CoffeeScriptDependencyBuilder()
+                .withTokensFrom(lexerFor(options))
+                .parsedWith(parserFor(options))
                 .exportedBy(exporters.exporterFor(options))
-                .build(options.getSourceFiles());
+                .cachedBy(analysisCacheFor(options));
+
+            if (options.isWatch()) {
+                builder.watch(options.getSourceFiles());
+            }
+            else {
+                builder.build(options.getSourceFiles());
+            }
         }
         catch (RequiredBuilderComponentException e) {
             // This is more of a developer error -- maybe be nice to have in ant/maven plugin dev or extensions
@@ -100,6 +118,40 @@ public class CoffeeGraph implements Runnable {
         catch (CyclicDependencyException e) {
             System.out.println("[CoffeeGraph Error: " + e.getMessage() + "]");
         }
+        catch (CoffeeSyntaxException e) {
+            System.out.println("[CoffeeGraph Error: " + e.getMessage() + "]");
+        }
+        catch (IOException e) {
+            System.out.println("[CoffeeGraph Error: " + e.getMessage() + "]");
+        }
+    }
+
+    private static Parser parserFor(CoffeeGraphOptions options) {
+        if (options.getJobs() > 1) {
+            return new ParallelCoffeeScriptParser(options.getJobs());
+        }
+
+        return new CoffeeScriptMinParser();
+    }
+
+    private static AnalysisCache analysisCacheFor(CoffeeGraphOptions options) {
+        if (null == options.getCacheDirectory()) {
+            return null;
+        }
+
+        return new AnalysisCache(new File(options.getCacheDirectory(), "analysis"));
+    }
+
+    private static Lexer lexerFor(CoffeeGraphOptions options) {
+        if (options.isLexerConformance()) {
+            return new ConformanceLexer(new CoffeeScriptLexer(), new JavaCoffeeScriptLexer());
+        }
+
+        if (options.isJavaLexer()) {
+            return new JavaCoffeeScriptLexer();
+        }
+
+        return new CoffeeScriptLexer();
     }
 
 }
@@ -0,0 +1,229 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee;
+
+import bolt.web.coffee.command.CoffeeGraphCommandParser;
+import bolt.web.coffee.io.ExporterFactory;
+import bolt.web.coffee.util.SymbolTable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class runs coffee-graph as a daemon, so the JVM, the CoffeeScript compiler and the JIT stay warm between
+ * builds. It listens on a loopback port, and the port and a random token are written to the daemon file in the user's
+ * home directory, which only the user can read. The {@code bin/coffee-graph} launcher forwards its arguments to the
+ * daemon when the file exists, and falls back to starting a new JVM when it doesn't, or the daemon can't be reached.
+ *
+ * <p>
+ * A request is the token, the client's working directory, then each argument, one per line and ending with an empty
+ * line. The output of the command is written back on the same connection. Commands run one at a time, since their
+ * output is captured by replacing {@code System.out}, so a client which stalls while sending its request is dropped
+ * once the read times out, rather than blocking every other client.
+ *
+ * @author Matt Bolt
+ */
+public class CoffeeGraphDaemon implements Runnable {
+
+    private static final String ENCODING = "UTF-8";
+
+    // The milliseconds to wait for each line of a request
+    private static final int REQUEST_TIMEOUT = 10000;
+
+    // Options which never finish, so they can't be run by the daemon
+    private static final List<String> LONG_RUNNING = Arrays.asList("--daemon", "--watch", "-w");
+
+    /**
+     * @return The {@code File} the running daemon's port and token are written to.
+     */
+    public static File getDaemonFile() {
+        return new File(new File(System.getProperty("user.home"), ".coffee-graph"), "daemon");
+    }
+
+    private final ExporterFactory exporters;
+    private final int port;
+
+    public CoffeeGraphDaemon(ExporterFactory exporters, int port) {
+        this.exporters = exporters;
+        this.port = port;
+    }
+
+    @Override
+    public void run() {
+        ServerSocket server = null;
+        final File daemonFile = getDaemonFile();
+
+        try {
+            server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+            String token = newToken();
+
+            writeDaemonFile(daemonFile, server.getLocalPort(), token);
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                @Override
+                public void run() {
+                    daemonFile.delete();
+                }
+            });
+
+            System.out.println("[CoffeeGraph daemon listening on port " + server.getLocalPort() + "]");
+
+            while (!Thread.currentThread().isInterrupted()) {
+                Socket socket = server.accept();
+
+                try {
+                    socket.setSoTimeout(REQUEST_TIMEOUT);
+                    serve(socket, token);
+                }
+                catch (SocketTimeoutException e) {
+                    System.out.println("[CoffeeGraph Error: Dropped a client which didn't send its request in time]");
+                }
+                catch (IOException e) {
+                    System.out.println("[CoffeeGraph Error: " + e.getMessage() + "]");
+                }
+                finally {
+                    socket.close();
+                }
+            }
+        }
+        catch (IOException e) {
+            System.out.println("[CoffeeGraph Error: " + e.getMessage() + "]");
+        }
+        finally {
+            daemonFile.delete();
+
+            if (null != server) {
+                try {
+                    server.close();
+                }
+                catch (IOException e) {
+                    // Already stopping
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket, String token) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), ENCODING));
+
+        if (!token.equals(reader.readLine())) {
+            return;
+        }
+
+        String directory = reader.readLine();
+        if (null == directory) {
+            return;
+        }
+
+        List<String> arguments = new ArrayList<String>();
+        for (String line = reader.readLine(); null != line && !line.isEmpty(); line = reader.readLine()) {
+            arguments.add(line);
+        }
+
+        PrintStream output = new PrintStream(socket.getOutputStream(), true, ENCODING);
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+
+        System.setOut(output);
+        System.setErr(output);
+
+        try {
+            for (String argument : arguments) {
+                if (LONG_RUNNING.contains(argument)) {
+                    output.println("[CoffeeGraph Error: " + argument + " can't be run by the daemon.]");
+                    return;
+                }
+            }
+
+            CoffeeGraphCommandParser parser =
+                new CoffeeGraphCommandParser(arguments.toArray(new String[arguments.size()]), new File(directory));
+
+            new CoffeeGraph(parser, exporters).run();
+        }
+        catch (RuntimeException e) {
+            // Keep the daemon running, whatever happens to the command
+            output.println("[CoffeeGraph Error: " + e + "]");
+        }
+        finally {
+            System.setOut(out);
+            System.setErr(err);
+            output.flush();
+
+            // Nothing from the command outlives it, so don't keep its identifier names
+            SymbolTable.reset();
+        }
+    }
+
+    private static String newToken() {
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+
+        StringBuilder token = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            token.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return token.toString();
+    }
+
+    private static void writeDaemonFile(File daemonFile, int port, String token) throws IOException {
+        File directory = daemonFile.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create the daemon directory: " + directory);
+        }
+
+        daemonFile.delete();
+        if (!daemonFile.createNewFile()) {
+            throw new IOException("Could not create the daemon file: " + daemonFile);
+        }
+
+        // Only the user may read the token
+        daemonFile.setReadable(false, false);
+        daemonFile.setWritable(false, false);
+        daemonFile.setReadable(true, true);
+        daemonFile.setWritable(true, true);
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(daemonFile), ENCODING);
+        try {
+            writer.write(port + "\n" + token + "\n");
+        }
+        finally {
+            writer.close();
+        }
+    }
+}
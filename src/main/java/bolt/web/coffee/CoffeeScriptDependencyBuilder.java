@@ -26,12 +26,15 @@
 package bolt.web.coffee;
 
 
+import bolt.web.coffee.dependency.AnalysisCache;
 import bolt.web.coffee.dependency.CoffeeIdentifier;
 import bolt.web.coffee.dependency.CoffeeScriptDependencies;
+import bolt.web.coffee.dependency.FileAnalysis;
 import bolt.web.coffee.dependency.graph.CyclicDependencyException;
 import bolt.web.coffee.dependency.graph.DependencyGraph;
 import bolt.web.coffee.exceptions.NoValidCoffeeFilesException;
 import bolt.web.coffee.exceptions.RequiredBuilderComponentException;
+import bolt.web.coffee.io.ExportContext;
 import bolt.web.coffee.io.Exporter;
 import bolt.web.coffee.io.Lexer;
 import bolt.web.coffee.io.Parser;
@@ -40,6 +43,8 @@ import bolt.web.coffee.util.FileHelper;
 import bolt.web.coffee.util.FileType;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -50,6 +55,7 @@ public class CoffeeScriptDependencyBuilder {
     private Lexer coffeeLexer;
     private Parser coffeeParser;
     private Exporter coffeeExporter;
+    private AnalysisCache analysisCache;
 
     public CoffeeScriptDependencyBuilder() {
 
@@ -70,31 +76,63 @@ public class CoffeeScriptDependencyBuilder {
         return this;
     }
 
+    /**
+     * This method sets an optional cache for the analysis of each file. Only files that are missing from the cache, or
+     * have changed since they were cached, are lexed and parsed.
+     */
+    public CoffeeScriptDependencyBuilder cachedBy(AnalysisCache analysisCache) {
+        this.analysisCache = analysisCache;
+        return this;
+    }
+
     public void build(List<File> fileTargets)
         throws CyclicDependencyException, RequiredBuilderComponentException, NoValidCoffeeFilesException
     {
-        check(coffeeLexer, "coffeeLexer", "withTokensFrom");
-        check(coffeeParser, "coffeeParser", "parsedWith");
-        check(coffeeExporter, "coffeeExporter", "exportedBy");
+        checkComponents();
 
         // Create a new dependency management instance
         CoffeeScriptDependencies dependencies = new CoffeeScriptDependencies();
 
         // 1. Collect all of the files in each directory provided
+        List<File> files = collect(fileTargets);
+
+        // 2. Analyze each file, only building the CoffeeScript Tree for files which aren't cached
+        List<FileAnalysis> analyses = analyze(dependencies, files, false);
+
+        // 3. Generate Dependency Graph
+        DependencyGraph<CoffeeIdentifier> graph = dependencies.generateGraph(analyses);
+
+        // 4. Export
+        export(new ExportContext(graph));
+    }
+
+    /**
+     * This method builds the dependencies, then watches the source files and directories for changes, patching the
+     * dependency graph and exporting again each time they change. This method doesn't return until the current thread
+     * is interrupted.
+     *
+     * @param fileTargets The coffee-script source files and directories to watch.
+     */
+    public void watch(List<File> fileTargets)
+        throws RequiredBuilderComponentException, NoValidCoffeeFilesException, IOException
+    {
+        checkComponents();
+
+        new CoffeeScriptDependencyWatcher(this).watch(fileTargets);
+    }
+
+    List<File> collect(List<File> fileTargets) throws NoValidCoffeeFilesException {
         List<File> files = FileHelper.collectFiles(fileTargets, FileType.Coffee);
         if (files.isEmpty()) {
             throw new NoValidCoffeeFilesException("No coffee-script source files were found in provided paths/files.");
         }
 
-        // 2. Build CoffeeScript Tree
-        CoffeeTree tree = coffeeParser.parse(coffeeLexer, files);
-
-        // 3. Generate Dependency Graph
-        DependencyGraph<CoffeeIdentifier> graph = dependencies.generateGraph(tree);
+        return files;
+    }
 
-        // 4. Export
+    void export(ExportContext context) throws CyclicDependencyException {
         try {
-            coffeeExporter.export(graph);
+            coffeeExporter.export(context);
         }
         catch (RuntimeException e) {
             if (e.getCause() instanceof CyclicDependencyException) {
@@ -105,6 +143,60 @@ public class CoffeeScriptDependencyBuilder {
         }
     }
 
+    /**
+     * Analyzes the files, using the analysis cache if there is one.
+     *
+     * @param changed {@code true} if the files are known to have changed, so the cache always compares their contents.
+     */
+    List<FileAnalysis> analyze(CoffeeScriptDependencies dependencies, List<File> files, boolean changed) {
+        if (null == analysisCache) {
+            CoffeeTree tree = coffeeParser.parse(coffeeLexer, files);
+
+            List<FileAnalysis> analyses = new ArrayList<FileAnalysis>(files.size());
+            for (File file : tree.getFiles()) {
+                analyses.add(dependencies.analyze(file, tree.scopeFor(file)));
+            }
+
+            return analyses;
+        }
+
+        List<FileAnalysis> analyses = new ArrayList<FileAnalysis>(files.size());
+        List<File> stale = new ArrayList<File>();
+
+        for (File file : files) {
+            FileAnalysis analysis = analysisCache.get(file, changed);
+            if (null == analysis) {
+                stale.add(file);
+            }
+
+            analyses.add(analysis);
+        }
+
+        if (stale.isEmpty()) {
+            return analyses;
+        }
+
+        CoffeeTree tree = coffeeParser.parse(coffeeLexer, stale);
+
+        for (int i = 0; i < analyses.size(); ++i) {
+            if (null == analyses.get(i)) {
+                File file = files.get(i);
+                FileAnalysis analysis = dependencies.analyze(file, tree.scopeFor(file));
+
+                analysisCache.put(analysis);
+                analyses.set(i, analysis);
+            }
+        }
+
+        return analyses;
+    }
+
+    private void checkComponents() throws RequiredBuilderComponentException {
+        check(coffeeLexer, "coffeeLexer", "withTokensFrom");
+        check(coffeeParser, "coffeeParser", "parsedWith");
+        check(coffeeExporter, "coffeeExporter", "exportedBy");
+    }
+
     private <T> void check(T instance, String name, String methodName) throws RequiredBuilderComponentException {
         if (null == instance) {
             throw new RequiredBuilderComponentException(name, methodName);
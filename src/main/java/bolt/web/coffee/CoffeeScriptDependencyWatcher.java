@@ -0,0 +1,293 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee;
+
+import bolt.web.coffee.dependency.CoffeeScriptDependencies;
+import bolt.web.coffee.dependency.FileAnalysis;
+import bolt.web.coffee.dependency.IncrementalDependencies;
+import bolt.web.coffee.dependency.graph.CyclicDependencyException;
+import bolt.web.coffee.exceptions.ChainedExportException;
+import bolt.web.coffee.exceptions.CoffeeSyntaxException;
+import bolt.web.coffee.exceptions.NoValidCoffeeFilesException;
+import bolt.web.coffee.io.ExportContext;
+import bolt.web.coffee.util.FileHelper;
+import bolt.web.coffee.util.FileType;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class watches the coffee-script source files and directories with a {@code WatchService}. Each time files
+ * change, only the changed files are lexed again, their nodes and edges are patched in the dependency graph by an
+ * {@link IncrementalDependencies}, and the builder's exporter runs again.
+ *
+ * <p>
+ * Errors are reported and the watch continues, so a file with a syntax error simply keeps its last good analysis until
+ * it's fixed.
+ *
+ * @author Matt Bolt
+ */
+class CoffeeScriptDependencyWatcher {
+
+    // Editors often write a file more than once on save, so wait for the events to settle before updating
+    private static final long SETTLE_MILLIS = 100;
+
+    private final CoffeeScriptDependencyBuilder builder;
+    private final CoffeeScriptDependencies dependencies = new CoffeeScriptDependencies();
+
+    private final Map<WatchKey, File> directories = new HashMap<WatchKey, File>();
+    private final Set<WatchKey> trees = new HashSet<WatchKey>();
+
+    // The source files given directly, by their absolute path
+    private final Map<File, File> sourceFiles = new HashMap<File, File>();
+
+    private WatchService watchService;
+    private IncrementalDependencies incremental;
+
+    CoffeeScriptDependencyWatcher(CoffeeScriptDependencyBuilder builder) {
+        this.builder = builder;
+    }
+
+    void watch(List<File> fileTargets) throws NoValidCoffeeFilesException, IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+
+        try {
+            // Register before the first build, so no change made during it is missed
+            for (File target : fileTargets) {
+                if (target.isDirectory()) {
+                    registerTree(target);
+                }
+            }
+
+            for (File target : fileTargets) {
+                if (!target.isDirectory()) {
+                    sourceFiles.put(target.getAbsoluteFile(), target);
+                    register(target.getAbsoluteFile().getParentFile());
+                }
+            }
+
+            List<File> files = builder.collect(fileTargets);
+            incremental = new IncrementalDependencies(analyze(files, false));
+            export("built", files.size());
+
+            while (true) {
+                Set<File> changed = new LinkedHashSet<File>();
+                Set<File> removed = new LinkedHashSet<File>();
+
+                for (WatchKey key = watchService.take(); null != key;
+                     key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS))
+                {
+                    collectEvents(key, fileTargets, changed, removed);
+                }
+
+                if (changed.isEmpty() && removed.isEmpty()) {
+                    continue;
+                }
+
+                incremental.update(analyze(new ArrayList<File>(changed), true), removed);
+                export("rebuilt", changed.size() + removed.size());
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            watchService.close();
+        }
+    }
+
+    private void collectEvents(WatchKey key, List<File> fileTargets, Set<File> changed, Set<File> removed) {
+        File directory = directories.get(key);
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (StandardWatchEventKinds.OVERFLOW == event.kind()) {
+                // Some events were lost, so compare every source file against the last analysis
+                rescan(fileTargets, changed, removed);
+                continue;
+            }
+
+            if (null == directory) {
+                continue;
+            }
+
+            File file = fileFor(key, directory, ((Path) event.context()).toString());
+            if (null == file) {
+                continue;
+            }
+
+            if (StandardWatchEventKinds.ENTRY_DELETE == event.kind()) {
+                for (File known : incremental.getFiles()) {
+                    if (known.equals(file) || known.getPath().startsWith(file.getPath() + File.separator)) {
+                        removed.add(known);
+                        changed.remove(known);
+                    }
+                }
+            }
+            else if (file.isDirectory()) {
+                if (trees.contains(key) && StandardWatchEventKinds.ENTRY_CREATE == event.kind()) {
+                    registerTree(file);
+                    changed.addAll(FileHelper.collectFiles(Arrays.asList(file), FileType.Coffee));
+                }
+            }
+            else if (FileHelper.isFileType(file, FileType.Coffee)) {
+                changed.add(file);
+                removed.remove(file);
+            }
+        }
+
+        if (!key.reset()) {
+            directories.remove(key);
+            trees.remove(key);
+        }
+    }
+
+    private void rescan(List<File> fileTargets, Set<File> changed, Set<File> removed) {
+        List<File> files = FileHelper.collectFiles(fileTargets, FileType.Coffee);
+
+        changed.addAll(files);
+        for (File known : incremental.getFiles()) {
+            if (!files.contains(known)) {
+                removed.add(known);
+            }
+        }
+    }
+
+    /**
+     * Returns the {@code File} for a path in a watched directory, with the same path that it was collected with, or
+     * {@code null} if the path isn't watched.
+     */
+    private File fileFor(WatchKey key, File directory, String name) {
+        File file = new File(directory, name);
+
+        if (trees.contains(key)) {
+            return file;
+        }
+
+        return sourceFiles.get(file.getAbsoluteFile());
+    }
+
+    /**
+     * Analyzes the files, using the builder's cache and parser. If a file has a syntax error, each file is analyzed on
+     * its own, so only the files with errors are left out. The contents of changed files are always compared with the
+     * cache, rather than trusting their modification time and size.
+     */
+    private List<FileAnalysis> analyze(List<File> files, boolean changed) {
+        try {
+            return builder.analyze(dependencies, files, changed);
+        }
+        catch (CoffeeSyntaxException e) {
+            if (files.size() == 1) {
+                report(e);
+                return new ArrayList<FileAnalysis>();
+            }
+        }
+
+        List<FileAnalysis> analyses = new ArrayList<FileAnalysis>(files.size());
+        for (File file : files) {
+            analyses.addAll(analyze(Arrays.asList(file), changed));
+        }
+
+        return analyses;
+    }
+
+    /**
+     * Exports the current graph, followed by a marker on its own line, so the output of successive builds, such as the
+     * file names printed with {@code --print}, stays apart.
+     */
+    private void export(String action, int files) {
+        try {
+            builder.export(new ExportContext(incremental.getGraph(), incremental.getSortedIdentifiers()));
+        }
+        catch (CyclicDependencyException e) {
+            report(e);
+        }
+        catch (ChainedExportException e) {
+            for (Throwable throwable : e.getExceptions()) {
+                report(throwable);
+            }
+        }
+        catch (RuntimeException e) {
+            report(e);
+        }
+
+        System.out.println();
+        System.out.println("[CoffeeGraph: " + action + " " + files + (files == 1 ? " file]" : " files]"));
+    }
+
+    private void registerTree(File directory) {
+        WatchKey key = register(directory);
+        if (null != key) {
+            trees.add(key);
+        }
+
+        File[] children = directory.listFiles();
+        if (null != children) {
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    registerTree(child);
+                }
+            }
+        }
+    }
+
+    private WatchKey register(File directory) {
+        try {
+            WatchKey key = directory.toPath().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+
+            // Keep the path the directory was first registered with, which the collected files use
+            if (!directories.containsKey(key)) {
+                directories.put(key, directory);
+            }
+            return key;
+        }
+        catch (IOException e) {
+            report(e);
+            return null;
+        }
+    }
+
+    private static void report(Throwable throwable) {
+        System.out.println("[CoffeeGraph Error: " + throwable.getMessage() + "]");
+    }
+}
@@ -57,6 +57,30 @@ public final class CoffeeGraphCommand implements CoffeeGraphOptions {
     @Parameter(names = {"--bare", "-b"}, description = "Compiles the CoffeeScript source without a security wrapper.")
     private boolean bare = false;
 
+    @Parameter(names = {"--java-lexer"}, description = "Tokenizes using the built-in Java lexer instead of the CoffeeScript compiler.")
+    private boolean javaLexer = false;
+
+    @Parameter(names = {"--lexer-conformance"}, description = "Tokenizes using both lexers and reports any differences.")
+    private boolean lexerConformance = false;
+
+    @Parameter(names = {"--jobs", "-j"}, description = "The number of files to lex and parse in parallel, and to compile in parallel with --separate-scopes.")
+    private int jobs = 1;
+
+    @Parameter(names = {"--separate-scopes"}, description = "Compiles each file on its own, so functions can't assign to the top-level variables of other files.")
+    private boolean separateScopes = false;
+
+    @Parameter(names = {"--cache-dir"}, description = "Caches the dependency analysis and the compiled JavaScript in this directory.")
+    private File cacheDirectory = null;
+
+    @Parameter(names = {"--watch", "-w"}, description = "Watches the source files and exports again each time they change.")
+    private boolean watch = false;
+
+    @Parameter(names = {"--daemon"}, description = "Runs a daemon that the coffee-graph launcher forwards commands to.")
+    private boolean daemon = false;
+
+    @Parameter(names = {"--port"}, description = "The loopback port the daemon listens on, where 0 uses any free port.")
+    private int port = 0;
+
     @Parameter(names = {"-o" }, description = "The file to output the dependency graph to.")
     private File outputFile = new File("lib/coffee-graph.js");
 
@@ -77,6 +101,14 @@ public final class CoffeeGraphCommand implements CoffeeGraphOptions {
             .append("println: ").append(println).append(", ")
             .append("tree: ").append(tree).append(", ")
             .append("compile: ").append(compile).append(", ")
+            .append("javaLexer: ").append(javaLexer).append(", ")
+            .append("lexerConformance: ").append(lexerConformance).append(", ")
+            .append("jobs: ").append(jobs).append(", ")
+            .append("separateScopes: ").append(separateScopes).append(", ")
+            .append("cacheDirectory: ").append(cacheDirectory).append(", ")
+            .append("watch: ").append(watch).append(", ")
+            .append("daemon: ").append(daemon).append(", ")
+            .append("port: ").append(port).append(", ")
             .append("files: ").append(files).append(", ")
             .append("outputFile: ").append(outputFile).append(", ")
             .append("]").toString();
@@ -117,6 +149,46 @@ public final class CoffeeGraphCommand implements CoffeeGraphOptions {
         return bare;
     }
 
+    @Override
+    public boolean isJavaLexer() {
+        return javaLexer;
+    }
+
+    @Override
+    public boolean isLexerConformance() {
+        return lexerConformance;
+    }
+
+    @Override
+    public int getJobs() {
+        return jobs;
+    }
+
+    @Override
+    public boolean isSeparateScopes() {
+        return separateScopes;
+    }
+
+    @Override
+    public File getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    @Override
+    public boolean isWatch() {
+        return watch;
+    }
+
+    @Override
+    public boolean isDaemon() {
+        return daemon;
+    }
+
+    @Override
+    public int getPort() {
+        return port;
+    }
+
     @Override
     public List<File> getSourceFiles() {
         return files;
@@ -126,4 +198,27 @@ public final class CoffeeGraphCommand implements CoffeeGraphOptions {
     public File getOutputFile() {
         return outputFile;
     }
+
+    /**
+     * This method resolves any relative paths against a working directory other than the current one, which is used
+     * when the command was sent to a daemon.
+     *
+     * @param directory The working directory the command was run from.
+     */
+    void resolveAgainst(File directory) {
+        for (int i = 0; i < files.size(); ++i) {
+            files.set(i, resolve(directory, files.get(i)));
+        }
+
+        outputFile = resolve(directory, outputFile);
+        cacheDirectory = resolve(directory, cacheDirectory);
+    }
+
+    private static File resolve(File directory, File file) {
+        if (null == file || file.isAbsolute()) {
+            return file;
+        }
+
+        return new File(directory, file.getPath());
+    }
 }
@@ -30,6 +30,8 @@ import bolt.web.coffee.io.CoffeeGraphOptionsParser;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.ParameterException;
 
+import java.io.File;
+
 /**
  * This class parses the command line options using JCommander.
  *
@@ -38,6 +40,7 @@ import com.beust.jcommander.ParameterException;
 public class CoffeeGraphCommandParser implements CoffeeGraphOptionsParser {
 
     private final String[] arguments;
+    private final File workingDirectory;
 
     private final JCommander commander;
     private final CoffeeGraphCommand command;
@@ -45,7 +48,15 @@ public class CoffeeGraphCommandParser implements CoffeeGraphOptionsParser {
     private StringBuilder usageString;
 
     public CoffeeGraphCommandParser(String[] arguments) {
+        this(arguments, null);
+    }
+
+    /**
+     * Creates a parser for arguments passed from another working directory. Relative paths are resolved against it.
+     */
+    public CoffeeGraphCommandParser(String[] arguments, File workingDirectory) {
         this.arguments = arguments;
+        this.workingDirectory = workingDirectory;
 
         command = new CoffeeGraphCommand();
         commander = new JCommander(command);
@@ -56,12 +67,21 @@ public class CoffeeGraphCommandParser implements CoffeeGraphOptionsParser {
 
     @Override
     public CoffeeGraphOptions parse() {
+        FileConverter.workingDirectory.set(workingDirectory);
+
         try {
             commander.parse(arguments);
         }
         catch (ParameterException e) {
             return null;
         }
+        finally {
+            FileConverter.workingDirectory.remove();
+        }
+
+        if (null != workingDirectory) {
+            command.resolveAgainst(workingDirectory);
+        }
 
         return command;
     }
@@ -36,10 +36,19 @@ import java.io.IOException;
 * @author Matt Bolt
 */
 public class FileConverter implements IStringConverter<File> {
+
+    // JCommander creates the converter itself, so a parser sets the directory to resolve relative paths against here
+    static final ThreadLocal<File> workingDirectory = new ThreadLocal<File>();
+
     @Override
     public File convert(String s) {
+        File file = new File(s);
+        if (!file.isAbsolute() && null != workingDirectory.get()) {
+            file = new File(workingDirectory.get(), s);
+        }
+
         try {
-            return new File(s).getCanonicalFile();
+            return file.getCanonicalFile();
         } catch (IOException e) {
             return null;
         }
@@ -0,0 +1,311 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.dependency;
+
+import bolt.web.coffee.CoffeeGraphVersion;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class is an on-disk cache of the {@link FileAnalysis} of each coffee-script source file, so files that haven't
+ * changed since the last build don't need to be lexed again. There is one entry per source file, which records the
+ * coffee-graph and CoffeeScript versions, the file's modification time and size, and a SHA-1 hash of its contents.
+ *
+ * <p>
+ * If the modification time and size still match, the entry is used without reading the source file, unless the caller
+ * knows the file has changed. Otherwise the source is hashed, and the entry is only used if the contents are unchanged.
+ * An entry written by a different version is always ignored. Entries are written to a temporary file and renamed into
+ * place, so a build that's interrupted never leaves a partial entry behind.
+ *
+ * @author Matt Bolt
+ */
+public class AnalysisCache {
+
+    private static final int FORMAT = 1;
+    private static final String EXTENSION = ".analysis";
+
+    private final File directory;
+    private final String version;
+
+    // The stamp of each file that missed the cache, taken before the file is lexed
+    private final Map<File, Stamp> stamps = new ConcurrentHashMap<File, Stamp>();
+
+    public AnalysisCache(File directory) {
+        this(directory, CoffeeGraphVersion.Version + "/" + CoffeeGraphVersion.CoffeeScriptVersion);
+    }
+
+    public AnalysisCache(File directory, String version) {
+        this.directory = directory;
+        this.version = version;
+    }
+
+    /**
+     * This method returns the cached analysis of a source file.
+     *
+     * @param file The coffee-script source {@code File}.
+     *
+     * @return The cached {@code FileAnalysis}, or {@code null} if the file isn't cached, or has changed since it was.
+     */
+    public FileAnalysis get(File file) {
+        return get(file, false);
+    }
+
+    /**
+     * This method returns the cached analysis of a source file, as with {@link #get(java.io.File)}. A file which is
+     * known to have changed is always hashed, since a save within the file system's modification time resolution that
+     * doesn't change the size would otherwise look unchanged.
+     *
+     * @param file The coffee-script source {@code File}.
+     *
+     * @param changed {@code true} if the file is known to have changed since it may have been cached.
+     *
+     * @return The cached {@code FileAnalysis}, or {@code null} if the file isn't cached, or its contents have changed.
+     */
+    public FileAnalysis get(File file, boolean changed) {
+        File entry = entryFor(file);
+        stamps.remove(file);
+
+        try {
+            FileAnalysis analysis = null;
+
+            if (entry.isFile()) {
+                DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)));
+
+                try {
+                    analysis = read(file, input, changed);
+                }
+                finally {
+                    input.close();
+                }
+            }
+
+            if (null != analysis) {
+                // The contents were unchanged, record the file's new modification time and size
+                if (stamps.containsKey(file)) {
+                    put(analysis);
+                }
+
+                return analysis;
+            }
+
+            if (!stamps.containsKey(file)) {
+                stamps.put(file, stampOf(file));
+            }
+        }
+        catch (IOException e) {
+            // A corrupt or unreadable entry is just a miss
+            stamps.remove(file);
+        }
+
+        return null;
+    }
+
+    /**
+     * This method caches the analysis of a source file which missed the cache. Failing to write the cache is not an
+     * error, the file will just be lexed again next time.
+     *
+     * @param analysis The {@code FileAnalysis} of the file.
+     */
+    public void put(FileAnalysis analysis) {
+        Stamp stamp = stamps.remove(analysis.getFile());
+        if (null == stamp || !directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+            return;
+        }
+
+        File entry = entryFor(analysis.getFile());
+        File temporary = null;
+        try {
+            temporary = File.createTempFile(entry.getName(), ".tmp", directory);
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+
+            try {
+                write(analysis, stamp, output);
+            }
+            finally {
+                output.close();
+            }
+
+            if (!temporary.renameTo(entry)) {
+                entry.delete();
+                temporary.renameTo(entry);
+            }
+        }
+        catch (IOException e) {
+            // An entry which can't be written is just a miss next time
+        }
+        finally {
+            if (null != temporary) {
+                temporary.delete();
+            }
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    private FileAnalysis read(File file, DataInputStream input, boolean changed) throws IOException {
+        if (FORMAT != input.readInt() || !version.equals(input.readUTF()) || !pathOf(file).equals(input.readUTF())) {
+            return null;
+        }
+
+        Stamp cached = new Stamp(input.readLong(), input.readLong(), input.readUTF());
+
+        // Fast path, only hash the contents if the file has been touched or is known to have changed
+        if (changed || cached.lastModified != file.lastModified() || cached.length != file.length()) {
+            Stamp current = stampOf(file);
+            stamps.put(file, current);
+
+            if (!cached.hash.equals(current.hash)) {
+                return null;
+            }
+        }
+
+        FileAnalysis analysis = new FileAnalysis(file, input.readInt());
+
+        for (int i = input.readInt(); i > 0; --i) {
+            analysis.addIdentifier(input.readUTF(), input.readBoolean());
+        }
+
+        for (int i = input.readInt(); i > 0; --i) {
+            analysis.addScope();
+
+            for (int j = input.readInt(); j > 0; --j) {
+                analysis.addCandidate(input.readUTF(), input.readBoolean(), input.readBoolean());
+            }
+        }
+
+        return analysis;
+    }
+
+    private void write(FileAnalysis analysis, Stamp stamp, DataOutputStream output) throws IOException {
+        output.writeInt(FORMAT);
+        output.writeUTF(version);
+        output.writeUTF(pathOf(analysis.getFile()));
+        output.writeLong(stamp.lastModified);
+        output.writeLong(stamp.length);
+        output.writeUTF(stamp.hash);
+        output.writeInt(analysis.getDepth());
+
+        output.writeInt(analysis.getIdentifiers().size());
+        for (String name : analysis.getIdentifiers()) {
+            output.writeUTF(name);
+            output.writeBoolean(analysis.isGlobal(name));
+        }
+
+        output.writeInt(analysis.getScopes().size());
+        for (List<FileAnalysis.Candidate> candidates : analysis.getScopes()) {
+            output.writeInt(candidates.size());
+
+            for (FileAnalysis.Candidate candidate : candidates) {
+                output.writeUTF(candidate.getName());
+                output.writeBoolean(candidate.isAssigned());
+                output.writeBoolean(candidate.isReference());
+            }
+        }
+    }
+
+    private File entryFor(File file) {
+        try {
+            return new File(directory, hexOf(digest().digest(pathOf(file).getBytes("UTF-8"))) + EXTENSION);
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Stamp stampOf(File file) throws IOException {
+        // Take the modification time and size first, so a change made while hashing is caught by the next build
+        long lastModified = file.lastModified();
+        long length = file.length();
+
+        MessageDigest digest = digest();
+        InputStream input = new FileInputStream(file);
+
+        try {
+            byte[] buffer = new byte[8192];
+            for (int read = input.read(buffer); read != -1; read = input.read(buffer)) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        finally {
+            input.close();
+        }
+
+        return new Stamp(lastModified, length, hexOf(digest.digest()));
+    }
+
+    private static String pathOf(File file) {
+        return file.getAbsolutePath();
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String hexOf(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * The modification time, size and content hash of a source file when it was analyzed.
+     */
+    private static final class Stamp {
+
+        private final long lastModified;
+        private final long length;
+        private final String hash;
+
+        private Stamp(long lastModified, long length, String hash) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.hash = hash;
+        }
+    }
+}
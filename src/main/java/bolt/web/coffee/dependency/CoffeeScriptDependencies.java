@@ -28,15 +28,21 @@ package bolt.web.coffee.dependency;
 import bolt.web.coffee.dependency.graph.DependencyGraph;
 import bolt.web.coffee.io.CoffeeToken;
 import bolt.web.coffee.tree.CoffeeScope;
+import bolt.web.coffee.tree.CompactScopes;
 import bolt.web.coffee.tree.CoffeeTree;
 import bolt.web.coffee.types.CoffeeScriptType;
 import bolt.web.coffee.types.CoffeeSymbolType;
 import bolt.web.coffee.types.CoffeeTokenType;
+import bolt.web.coffee.types.CoffeeType;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -58,123 +64,225 @@ public class CoffeeScriptDependencies {
     private final DependencyReferenceFactory<CoffeeIdentifier> reference;
 
     public CoffeeScriptDependencies() {
-        this.dependencies = new DependencyManager<CoffeeIdentifier>();
+        this(new DependencyManager<CoffeeIdentifier>());
+    }
+
+    /**
+     * Creates an instance which resolves references using global identifiers that have already been registered.
+     */
+    CoffeeScriptDependencies(DependencyManager<CoffeeIdentifier> dependencies) {
+        this.dependencies = dependencies;
         this.reference = new DependencyReferenceFactory<CoffeeIdentifier>(this.dependencies);
     }
 
     public DependencyGraph<CoffeeIdentifier> generateGraph(CoffeeTree tree) {
-        DependencyGraph<CoffeeIdentifier> graph = new DependencyGraph<CoffeeIdentifier>();
+        List<FileAnalysis> analyses = new ArrayList<FileAnalysis>();
 
-        List<OutgoingReferences<CoffeeIdentifier>> outgoing = new ArrayList<OutgoingReferences<CoffeeIdentifier>>();
-        Set<File> files = tree.getFiles();
+        for (File file : tree.getFiles()) {
+            analyses.add(analyze(file, tree.scopeFor(file)));
+        }
 
-        // 1. Iterate through each file and perform the first pass edge creation for the dependency graph
-        for (File file : files) {
-            CoffeeScope scope = tree.scopeFor(file);
-            List<CoffeeToken> idTokens = scope.tokensFor(CoffeeTokenType.Identifier);
+        return generateGraph(analyses);
+    }
 
-            if (null == idTokens) {
-                continue;
-            }
+    /**
+     * This method generates the dependency graph from the analysis of each file, which may have been cached from a
+     * previous build rather than analyzed from a {@code CoffeeTree}.
+     *
+     * @param analyses The {@code FileAnalysis} of each source file, in the order the files were collected.
+     *
+     * @return The frozen {@code DependencyGraph} of the identifiers in every file.
+     */
+    public DependencyGraph<CoffeeIdentifier> generateGraph(List<FileAnalysis> analyses) {
+        DependencyGraph<CoffeeIdentifier> graph = new DependencyGraph<CoffeeIdentifier>();
 
-            // Collect all of the global identifiers, determine any potential identifiers referenced
-            for (CoffeeToken idToken : idTokens) {
-                CoffeeIdentifier identifier = new CoffeeIdentifier(idToken.getValue(), file, scope.getDepth());
+        Map<File, Set<CoffeeIdentifier>> identifiersByFile = new LinkedHashMap<File, Set<CoffeeIdentifier>>();
 
-                if (isAssignedToGlobal(scope, idToken)) {
-                    scope.addAssignment(idToken);
-                }
+        // 1. Iterate through each file and collect the identifiers, registering any that are visible globally
+        for (FileAnalysis analysis : analyses) {
+            File file = analysis.getFile();
+            Set<CoffeeIdentifier> identifiers = new LinkedHashSet<CoffeeIdentifier>();
+
+            for (String name : analysis.getIdentifiers()) {
+                CoffeeIdentifier identifier = new CoffeeIdentifier(name, file, analysis.getDepth());
 
-                if (isGlobalScoped(scope, idToken)) {
+                if (analysis.isGlobal(name)) {
                     dependencies.add(identifier);
                 }
 
                 graph.add(identifier);
-                outgoing.add(new OutgoingReferences<CoffeeIdentifier>(identifier, findReferencesIn(scope)));
+                identifiers.add(identifier);
             }
-        }
 
-        // 2. Resolve the other side of the dependencies -- this is the brute force alternative to look ahead parsing
-        //    Probably lots of ways to optimize this!
+            identifiersByFile.put(file, identifiers);
+        }
 
-        // After resolving all identifiers, resolve the outgoing references and add them to the dependency graph
-        // Also, ignore any "identifiers" that fail to resolve. These are due to my lazy parsing below.
-        for (OutgoingReferences<CoffeeIdentifier> references : outgoing) {
-            CoffeeIdentifier parentIdentifier = references.getItem();
+        // 2. Determine the potential identifiers referenced by each file. The references only depend on the file's
+        //    scopes, so they're found once per file and shared by every identifier declared in it. Searching after
+        //    all files are registered also means global overrides no longer depend on the order files are visited.
+        for (FileAnalysis analysis : analyses) {
+            List<CoffeeIdentifier> resolved = referencesIn(analysis);
 
-            for (DependencyReference<CoffeeIdentifier> idReference : references.getOutgoing()) {
-                CoffeeIdentifier resolvedReference = idReference.get();
-                if (null == resolvedReference) {
-                    continue;
+            for (CoffeeIdentifier identifier : identifiersByFile.get(analysis.getFile())) {
+                for (CoffeeIdentifier reference : resolved) {
+                    graph.add(identifier, reference);
                 }
+            }
+        }
 
-                if (resolvedReference.getFile().equals(parentIdentifier.getFile())) {
-                    continue;
-                }
+        return graph.freeze();
+    }
+
+    /**
+     * This method analyzes a single file's scope, collecting the identifiers it declares and the candidate references
+     * in each of its scopes. The analysis doesn't depend on any other file.
+     *
+     * @param file The coffee-script source {@code File}.
+     *
+     * @param scope The {@code CoffeeScope} parsed from the file.
+     *
+     * @return The {@code FileAnalysis} for the file.
+     */
+    public FileAnalysis analyze(File file, CoffeeScope scope) {
+        return analyze(file, scope.compact());
+    }
+
+    /**
+     * This method analyzes a single file's scopes, as with {@link #analyze(java.io.File, CoffeeScope)}.
+     *
+     * @param file The coffee-script source {@code File}.
+     *
+     * @param scopes The {@code CompactScopes} of the file, where the file scope has the id {@code 0}.
+     *
+     * @return The {@code FileAnalysis} for the file.
+     */
+    public FileAnalysis analyze(File file, CompactScopes scopes) {
+        FileAnalysis analysis = new FileAnalysis(file, scopes.depthOf(0));
+
+        // Tracks re-assignment of variables in the file scope by symbol id
+        BitSet assignments = new BitSet();
+
+        for (int i = 0; i < scopes.countOf(0, CoffeeTokenType.Identifier); ++i) {
+            int position = scopes.positionOf(0, CoffeeTokenType.Identifier, i);
+            int symbol = scopes.symbolAt(0, position);
+
+            if (isAssignedToGlobal(scopes, 0, position) && symbol >= 0) {
+                assignments.set(symbol);
+            }
+
+            analysis.addIdentifier(scopes.valueAt(0, position), isGlobalScoped(scopes, 0, position, assignments));
+        }
 
-                graph.add(parentIdentifier, resolvedReference);
+        addCandidates(analysis, scopes);
+
+        return analysis;
+    }
+
+    /**
+     * Records the identifier tokens in each scope that may reference an identifier in another file. Tokens which are
+     * neither assigned nor used as a reference can't affect the graph, so they're left out. The scopes are numbered in
+     * the order they were opened, so this is a depth first walk of the file's scopes.
+     */
+    private void addCandidates(FileAnalysis analysis, CompactScopes scopes) {
+        for (int scope = 0; scope < scopes.getScopeCount(); ++scope) {
+            analysis.addScope();
+
+            for (int i = 0; i < scopes.countOf(scope, CoffeeTokenType.Identifier); ++i) {
+                int position = scopes.positionOf(scope, CoffeeTokenType.Identifier, i);
+
+                boolean assigned = isAssigned(scopes, scope, position);
+                boolean validReference = isValidReference(scopes, scope, position);
+
+                if (assigned || validReference) {
+                    analysis.addCandidate(scopes.symbolAt(scope, position), assigned, validReference);
+                }
             }
         }
+    }
 
-        return graph;
+    /**
+     * This method finds the identifiers in other files that a file references, using the global identifiers registered
+     * so far.
+     *
+     * @param analysis The {@code FileAnalysis} of the file.
+     *
+     * @return A {@code List} of the identifiers in other files that the file references.
+     */
+    List<CoffeeIdentifier> referencesIn(FileAnalysis analysis) {
+        return resolve(analysis.getFile(), findReferencesIn(analysis));
     }
 
     /**
-     * Recursively search each inner-scope for references to identifiers outside of the current scope.
+     * Resolves the outgoing references for a file, ignoring any "identifiers" that fail to resolve or that resolve to
+     * the file itself. The unresolved identifiers are due to my lazy parsing below.
      *
-     * @param scope The {@code CoffeeScope} instance to search.
+     * @param file The {@code File} the references were found in.
      *
-     * @return A list of the identifier references found in the existing and inner scopes.
+     * @param references The {@code Set} of references found in the file.
+     *
+     * @return A {@code List} of the identifiers in other files that the references resolve to.
      */
-    private Set<DependencyReference<CoffeeIdentifier>> findReferencesIn(CoffeeScope scope) {
-        List<CoffeeScope> scopes = scope.getScopes();
-        scopes.add(0, scope);
+    private List<CoffeeIdentifier> resolve(File file, Set<DependencyReference<CoffeeIdentifier>> references) {
+        List<CoffeeIdentifier> resolved = new ArrayList<CoffeeIdentifier>(references.size());
 
-        return findReferencesIn(scopes, new HashSet<String>());
+        for (DependencyReference<CoffeeIdentifier> idReference : references) {
+            CoffeeIdentifier resolvedReference = idReference.get();
+            if (null == resolvedReference) {
+                continue;
+            }
+
+            if (resolvedReference.getFile().equals(file)) {
+                continue;
+            }
+
+            resolved.add(resolvedReference);
+        }
+
+        return resolved;
     }
 
     /**
-     * Recursively search each inner-scope for references to identifiers outside of the current scope.
+     * Search each scope of a file for references to identifiers outside of the file.
+     *
+     * <p>
+     * If any of the global identifiers are overridden in a scope, we need to ensure that the identifiers following the
+     * assignment within that scope do not create a dependency with the global identifier.
      *
-     * @param scopes A {@code List} of {@code CoffeeScope} instances to search.
+     * <p>
+     * This is the hottest loop of the analysis, so the identifiers are compared by their symbol ids, and the overrides
+     * are a {@code BitSet} which is cleared between scopes rather than a new {@code HashSet} of names per scope.
      *
-     * @param overrides If any of the global identifiers are overridden in a different scope, we need to ensure that any
-     * identifiers within that scope do not create a dependency with the global identifier. We collect "overrides" as we
-     * recurse and pass them onto the next inner scope reference search. It's important to note that <strong>This
-     * Set instance is *not* modified.</strong>
+     * @param analysis The {@code FileAnalysis} containing the candidate references of each scope.
      *
-     * @return A list of the identifier references found in the existing and inner scopes.
+     * @return A list of the identifier references found in the file's scopes.
      */
-    private Set<DependencyReference<CoffeeIdentifier>> findReferencesIn(List<CoffeeScope> scopes, Set<String> overrides) {
+    private Set<DependencyReference<CoffeeIdentifier>> findReferencesIn(FileAnalysis analysis) {
         Set<DependencyReference<CoffeeIdentifier>> references = new HashSet<DependencyReference<CoffeeIdentifier>>();
+        BitSet overrides = new BitSet();
+
+        for (List<FileAnalysis.Candidate> candidates : analysis.getScopes()) {
+            overrides.clear();
 
-        // Recursively search each inner scope
-        for (CoffeeScope innerScope : scopes) {
-            List<CoffeeToken> tokens = innerScope.tokensFor(CoffeeTokenType.Identifier);
-            Set<String> innerOverrides = new HashSet<String>();
+            for (FileAnalysis.Candidate candidate : candidates) {
+                int symbol = candidate.getSymbol();
 
-            for (CoffeeToken token : tokens) {
                 // Check the current scope override identifiers to see if this token fails
-                if (innerOverrides.contains(token.getValue())) {
+                if (overrides.get(symbol)) {
                     continue;
                 }
 
                 // Check for a global identifier with the same name -- ensure that this identifier is to be ignored
                 // throughout the scope of this token.
-                if (dependencies.canResolve(token.getValue()) && isAssigned(innerScope, token)) {
-                    innerOverrides.add(token.getValue());
+                if (candidate.isAssigned() && dependencies.canResolve(symbol)) {
+                    overrides.set(symbol);
                     continue;
                 }
 
                 // If we determine that the identifier reference is legitimate, add a dependency reference
-                if (isValidReference(innerScope, token)) {
-                    references.add(reference.to(token.getValue()));
+                if (candidate.isReference()) {
+                    references.add(reference.to(symbol));
                 }
             }
-
-            // Pass existing overrides with the inner overrides found in this scope, and recurse
-            innerOverrides.addAll(overrides);
-            references.addAll( findReferencesIn(innerScope.getScopes(), innerOverrides) );
         }
 
         return references;
@@ -182,133 +290,107 @@ public class CoffeeScriptDependencies {
 
     // This will resolve anything that looks like it may reference a global dependency, which is ok because
     // it will not show up in the global list of identifiers. They will then be ignored.
-    private boolean isValidReference(CoffeeScope scope, CoffeeToken token) {
-        CoffeeToken after = scope.after(token);
-        CoffeeToken before = scope.before(token);
-
-        return isFieldReference(before, after) || isFunctionReference(scope, after) || isClassReference(before);
+    //
+    // The checks below work on the position of each token within the flattened scopes, where the token before and
+    // after are at the neighbouring positions. Positions outside of the scope have no type or value, so every check
+    // fails on them.
+    private boolean isValidReference(CompactScopes scopes, int scope, int position) {
+        int after = position + 1;
+        int before = position - 1;
+
+        return isFieldReference(scopes, scope, before, after)
+            || isFunctionReference(scopes, scope, after)
+            || isClassReference(scopes, scope, before);
     }
 
-    private boolean isFieldReference(CoffeeToken before, CoffeeToken after) {
-        boolean isDotAfter = null != after && isDot(after);
-
-        return isDotAfter && (null == before || !isDot(before));
+    private boolean isFieldReference(CompactScopes scopes, int scope, int before, int after) {
+        return isDot(scopes, scope, after) && !isDot(scopes, scope, before);
     }
 
-    private boolean isClassReference(CoffeeToken before) {
-        return null != before && (isNew(before) || isExtends(before));
+    private boolean isClassReference(CompactScopes scopes, int scope, int before) {
+        return isNew(scopes, scope, before) || isExtends(scopes, scope, before);
     }
 
-    private boolean isFunctionReference(CoffeeScope scope, CoffeeToken after) {
-        if (null == after || !isCallStart(after)) {
-            return false;
-        }
-
-        CoffeeToken next = scope.after(after);
-        while (null != next) {
-            if (isCallEnd(next)) {
-                return true;
-            }
-            next = scope.after(next);
-        }
-
-        return false;
+    private boolean isFunctionReference(CompactScopes scopes, int scope, int after) {
+        return isCallStart(scopes, scope, after)
+            && isCallEnd(scopes, scope, scopes.closingPositionFor(scope, after));
     }
 
-    private boolean isAssigned(CoffeeScope scope, CoffeeToken token) {
-        return isAssignment(scope.after(token));
+    private boolean isAssigned(CompactScopes scopes, int scope, int position) {
+        return isAssignment(scopes, scope, position + 1);
     }
 
-    private boolean isGlobalScoped(CoffeeScope scope, CoffeeToken token) {
-        CoffeeToken before = scope.before(token);
-        if (null == before) {
-            return false;
-        }
+    private boolean isGlobalScoped(CompactScopes scopes, int scope, int position, BitSet assignments) {
+        int before = position - 1;
 
-        return isAt(before)
-            || isThisDot(scope, before)
-            || isWindowDot(scope, before)
-            || isGlobalDot(scope, before);
+        return isAt(scopes, scope, before)
+            || isThisDot(scopes, scope, before)
+            || isWindowDot(scopes, scope, before)
+            || isGlobalDot(scopes, scope, before, assignments);
     }
 
-    private boolean isAssignedToGlobal(CoffeeScope scope, CoffeeToken token) {
-        if (!isAssigned(scope, token)) {
-            return false;
-        }
-
-        CoffeeToken after = scope.after(token);
-        while(null != after && !isTerminator(after)) {
-            if (isExports(after) || isAt(after) || isThis(after) || isWindow(after) || hasGlobalAssignment(scope, after)) {
-                after = scope.after(after);
-                if (!isDot(after)) {
-                    return true;
-                }
-                continue;
-            }
-            after = scope.after(after);
-        }
-
-        return true;
+    // Every assignment is recorded, isGlobalDot() only consults them for identifiers which are then dereferenced
+    private boolean isAssignedToGlobal(CompactScopes scopes, int scope, int position) {
+        return isAssigned(scopes, scope, position);
     }
 
-    private boolean hasGlobalAssignment(CoffeeScope scope, CoffeeToken token) {
-        return null != token && scope.hasAssignment(token);
-    }
+    private boolean hasGlobalAssignment(CompactScopes scopes, int scope, int position, BitSet assignments) {
+        int symbol = scopes.symbolAt(scope, position);
 
-    private boolean isTerminator(CoffeeToken token) {
-        return null != token && CoffeeTokenType.Terminator == token.getType();
+        return symbol >= 0 && assignments.get(symbol);
     }
 
-    private boolean isThisDot(CoffeeScope scope, CoffeeToken token) {
-        return null != token && isDot(token) && isThis(scope.before(token));
+    private boolean isThisDot(CompactScopes scopes, int scope, int position) {
+        return isDot(scopes, scope, position) && isThis(scopes, scope, position - 1);
     }
 
-    private boolean isWindowDot(CoffeeScope scope, CoffeeToken token) {
-        return null != token && isDot(token) && isWindow(scope.before(token));
+    private boolean isWindowDot(CompactScopes scopes, int scope, int position) {
+        return isDot(scopes, scope, position) && isWindow(scopes, scope, position - 1);
     }
 
-    private boolean isGlobalDot(CoffeeScope scope, CoffeeToken token) {
-        return null != token && isDot(token) && hasGlobalAssignment(scope, scope.before(token));
+    private boolean isGlobalDot(CompactScopes scopes, int scope, int position, BitSet assignments) {
+        return isDot(scopes, scope, position) && hasGlobalAssignment(scopes, scope, position - 1, assignments);
     }
 
-    private boolean isNew(CoffeeToken token) {
-        return null != token && CoffeeScriptType.typeFor(token.getValue()) == CoffeeSymbolType.New;
+    private boolean isNew(CompactScopes scopes, int scope, int position) {
+        return CoffeeScriptType.typeFor(scopes.valueAt(scope, position)) == CoffeeSymbolType.New;
     }
 
-    private boolean isExtends(CoffeeToken token) {
-        return null != token && CoffeeTokenType.Extends == token.getType();
+    private boolean isExtends(CompactScopes scopes, int scope, int position) {
+        return CoffeeTokenType.Extends == scopes.typeAt(scope, position);
     }
 
-    private boolean isAssignment(CoffeeToken token) {
-        return null != token
-            && (CoffeeSymbolType.Assignment == token.getType() || CoffeeTokenType.CompoundAssign == token.getType());
+    private boolean isAssignment(CompactScopes scopes, int scope, int position) {
+        CoffeeType type = scopes.typeAt(scope, position);
+
+        return CoffeeSymbolType.Assignment == type || CoffeeTokenType.CompoundAssign == type;
     }
 
-    private boolean isThis(CoffeeToken token) {
-        return null != token && CoffeeTokenType.This == token.getType();
+    private boolean isThis(CompactScopes scopes, int scope, int position) {
+        return CoffeeTokenType.This == scopes.typeAt(scope, position);
     }
 
     public boolean isExports(CoffeeToken token) {
         return null != token && CoffeeScriptType.typeFor(token.getValue()) == CoffeeSymbolType.Exports;
     }
 
-    private boolean isWindow(CoffeeToken token) {
-        return null != token && CoffeeScriptType.typeFor(token.getValue()) == CoffeeSymbolType.Window;
+    private boolean isWindow(CompactScopes scopes, int scope, int position) {
+        return CoffeeScriptType.typeFor(scopes.valueAt(scope, position)) == CoffeeSymbolType.Window;
     }
 
-    private boolean isAt(CoffeeToken token) {
-        return null != token && CoffeeSymbolType.At == token.getType();
+    private boolean isAt(CompactScopes scopes, int scope, int position) {
+        return CoffeeSymbolType.At == scopes.typeAt(scope, position);
     }
 
-    private boolean isDot(CoffeeToken token) {
-        return null != token && CoffeeSymbolType.Dot == token.getType();
+    private boolean isDot(CompactScopes scopes, int scope, int position) {
+        return CoffeeSymbolType.Dot == scopes.typeAt(scope, position);
     }
 
-    private boolean isCallStart(CoffeeToken token) {
-        return null != token && CoffeeTokenType.CallStart == token.getType();
+    private boolean isCallStart(CompactScopes scopes, int scope, int position) {
+        return CoffeeTokenType.CallStart == scopes.typeAt(scope, position);
     }
 
-    private boolean isCallEnd(CoffeeToken token) {
-        return null != token && CoffeeTokenType.CallEnd == token.getType();
+    private boolean isCallEnd(CompactScopes scopes, int scope, int position) {
+        return CoffeeTokenType.CallEnd == scopes.typeAt(scope, position);
     }
 }
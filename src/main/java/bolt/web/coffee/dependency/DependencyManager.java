@@ -25,14 +25,17 @@
 
 package bolt.web.coffee.dependency;
 
-import java.util.HashMap;
+import bolt.web.coffee.util.SymbolTable;
+
+import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.Map;
+import java.util.List;
 import java.util.Set;
 
 /**
- * This class is just a simple wrapper for a {@code String} -> {@code NamedDependency} map that implements the
- * {@code DependencyResolver} interface for any dependencies referenced prior to creation.
+ * This class is just a simple wrapper for a symbol id -> {@code NamedDependency} table that implements the
+ * {@code DependencyResolver} interface for any dependencies referenced prior to creation. Names are interned in the
+ * global {@link SymbolTable}, so look-ups by symbol id are a single array access.
  *
  * <p>
  * For example, since we're building a dependency graph for an unordered list of N files, we could easily run
@@ -49,31 +52,53 @@ import java.util.Set;
  */
 public class DependencyManager<T extends NamedDependency> implements DependencyResolver<T> {
 
-    private final Map<String, T> byName;
+    private final SymbolTable symbols;
+    private final List<T> bySymbol;
+    private final List<T> all;
 
     public DependencyManager() {
-        this.byName = new HashMap<String, T>();
+        this.symbols = SymbolTable.global();
+        this.bySymbol = new ArrayList<T>();
+        this.all = new ArrayList<T>();
     }
 
     @Override
     public void add(T dependency) {
-        if (!byName.containsKey(dependency.getName())) {
-            byName.put(dependency.getName(), dependency);
+        int symbol = symbols.intern(dependency.getName());
+        if (canResolve(symbol)) {
+            return;
+        }
+
+        while (bySymbol.size() <= symbol) {
+            bySymbol.add(null);
         }
+
+        bySymbol.set(symbol, dependency);
+        all.add(dependency);
     }
 
     @Override
     public boolean canResolve(String name) {
-        return byName.containsKey(name);
+        return canResolve(symbols.idOf(name));
     }
 
     @Override
     public T resolve(String name) {
-        return byName.get(name);
+        return resolve(symbols.idOf(name));
+    }
+
+    @Override
+    public boolean canResolve(int symbol) {
+        return null != resolve(symbol);
+    }
+
+    @Override
+    public T resolve(int symbol) {
+        return symbol >= 0 && symbol < bySymbol.size() ? bySymbol.get(symbol) : null;
     }
 
     @Override
     public Set<T> getAll() {
-        return new HashSet<T>(byName.values());
+        return new HashSet<T>(all);
     }
 }
@@ -25,18 +25,25 @@
 
 package bolt.web.coffee.dependency;
 
+import bolt.web.coffee.util.SymbolTable;
+
 /**
- * Resolves a reference by name using a dependency resolver instance.
+ * Resolves a reference by name using a dependency resolver instance. The name is held as its {@link SymbolTable} id,
+ * so references are compared and hashed as {@code int}s.
  *
  * @author Matt Bolt
  */
 public class DependencyReference<T extends NamedDependency> {
 
-    private final String name;
+    private final int symbol;
     private final DependencyResolver<T> resolver;
 
     public DependencyReference(String name, DependencyResolver<T> resolver) {
-        this.name = name;
+        this(SymbolTable.global().intern(name), resolver);
+    }
+
+    public DependencyReference(int symbol, DependencyResolver<T> resolver) {
+        this.symbol = symbol;
         this.resolver = resolver;
     }
 
@@ -47,12 +54,12 @@ public class DependencyReference<T extends NamedDependency> {
      * is returned.
      */
     public T get() {
-        return resolver.resolve(name);
+        return resolver.resolve(symbol);
     }
 
     @Override
     public String toString() {
-        return "[DependencyReference - name: " + name + "]";
+        return "[DependencyReference - name: " + SymbolTable.global().nameOf(symbol) + "]";
     }
 
     @Override
@@ -62,13 +69,11 @@ public class DependencyReference<T extends NamedDependency> {
 
         DependencyReference that = (DependencyReference) o;
 
-        if (name != null ? !name.equals(that.name) : that.name != null) return false;
-
-        return true;
+        return symbol == that.symbol;
     }
 
     @Override
     public int hashCode() {
-        return name != null ? name.hashCode() : 0;
+        return symbol;
     }
 }
@@ -39,4 +39,8 @@ public class DependencyReferenceFactory<T extends NamedDependency> {
     public DependencyReference<T> to(String name) {
         return new DependencyReference<T>(name, resolver);
     }
+
+    public DependencyReference<T> to(int symbol) {
+        return new DependencyReference<T>(symbol, resolver);
+    }
 }
@@ -60,6 +60,25 @@ public interface DependencyResolver<T extends NamedDependency> {
      */
     T resolve(String name);
 
+    /**
+     * This method determines whether or not the identifier with the {@link bolt.web.coffee.util.SymbolTable} id passed
+     * can be resolved or not.
+     *
+     * @param symbol The symbol id of the identifier to check.
+     *
+     * @return {@code true} if the identifier can be resolved.
+     */
+    boolean canResolve(int symbol);
+
+    /**
+     * This method resolves a dependency by {@link bolt.web.coffee.util.SymbolTable} id.
+     *
+     * @param symbol The symbol id of the identifier.
+     *
+     * @return The {@link NamedDependency} implementer with the symbol's name, or {@code null}.
+     */
+    T resolve(int symbol);
+
     /**
      * This method returns a {@code Set} of all the dependencies managed by the implementation
      */
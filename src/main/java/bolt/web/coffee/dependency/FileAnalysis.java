@@ -0,0 +1,175 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.dependency;
+
+import bolt.web.coffee.util.SymbolTable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class is the result of analyzing a single coffee-script source file, and contains everything
+ * {@link CoffeeScriptDependencies} needs to add the file to a dependency graph without its tokens: the identifiers the
+ * file declares, which of them are visible globally, and the identifier tokens in each scope that could reference an
+ * identifier in another file.
+ *
+ * <p>
+ * Whether a candidate is an actual reference can't be decided until every file's global identifiers are known, so the
+ * candidates are recorded in token order, scope by scope, with just enough information to make that decision later.
+ * Since the analysis doesn't depend on any other file, it can be cached until the file changes.
+ *
+ * @author Matt Bolt
+ */
+public class FileAnalysis {
+
+    private final File file;
+    private final int depth;
+    private final Set<String> identifiers = new LinkedHashSet<String>();
+    private final Set<String> globals = new LinkedHashSet<String>();
+    private final List<List<Candidate>> scopes = new ArrayList<List<Candidate>>();
+
+    public FileAnalysis(File file, int depth) {
+        this.file = file;
+        this.depth = depth;
+    }
+
+    /**
+     * This method adds an identifier declared in the file.
+     *
+     * @param name The name of the identifier.
+     *
+     * @param global {@code true} if the identifier is visible to other files.
+     */
+    public void addIdentifier(String name, boolean global) {
+        identifiers.add(name);
+
+        if (global) {
+            globals.add(name);
+        }
+    }
+
+    /**
+     * This method starts a new scope. Any candidates added afterwards belong to the new scope.
+     */
+    public void addScope() {
+        scopes.add(new ArrayList<Candidate>());
+    }
+
+    /**
+     * This method adds a candidate reference to the current scope.
+     *
+     * @param name The name of the identifier token.
+     *
+     * @param assigned {@code true} if the identifier is assigned a value, which overrides a global identifier of the
+     * same name for the rest of the scope.
+     *
+     * @param reference {@code true} if the identifier is used in a way that references another identifier.
+     */
+    public void addCandidate(String name, boolean assigned, boolean reference) {
+        addCandidate(SymbolTable.global().intern(name), assigned, reference);
+    }
+
+    /**
+     * This method adds a candidate reference to the current scope.
+     *
+     * @param symbol The {@link SymbolTable} id of the identifier token.
+     *
+     * @see #addCandidate(String, boolean, boolean)
+     */
+    public void addCandidate(int symbol, boolean assigned, boolean reference) {
+        if (scopes.isEmpty()) {
+            addScope();
+        }
+
+        scopes.get(scopes.size() - 1).add(new Candidate(symbol, assigned, reference));
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public Set<String> getIdentifiers() {
+        return Collections.unmodifiableSet(identifiers);
+    }
+
+    public boolean isGlobal(String name) {
+        return globals.contains(name);
+    }
+
+    public List<List<Candidate>> getScopes() {
+        return Collections.unmodifiableList(scopes);
+    }
+
+    /**
+     * An identifier token that may reference an identifier in another file. The name is held as its
+     * {@link SymbolTable} id.
+     */
+    public static final class Candidate {
+
+        private final int symbol;
+        private final boolean assigned;
+        private final boolean reference;
+
+        public Candidate(String name, boolean assigned, boolean reference) {
+            this(SymbolTable.global().intern(name), assigned, reference);
+        }
+
+        public Candidate(int symbol, boolean assigned, boolean reference) {
+            this.symbol = symbol;
+            this.assigned = assigned;
+            this.reference = reference;
+        }
+
+        public String getName() {
+            return SymbolTable.global().nameOf(symbol);
+        }
+
+        public int getSymbol() {
+            return symbol;
+        }
+
+        public boolean isAssigned() {
+            return assigned;
+        }
+
+        public boolean isReference() {
+            return reference;
+        }
+
+        @Override
+        public String toString() {
+            return "[Candidate - name: " + getName() + ", assigned: " + assigned + ", reference: " + reference + "]";
+        }
+    }
+}
@@ -0,0 +1,259 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.dependency;
+
+import bolt.web.coffee.dependency.graph.CyclicDependencyException;
+import bolt.web.coffee.dependency.graph.DependencyGraph;
+import bolt.web.coffee.dependency.graph.DynamicTopologicalOrder;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class maintains a dependency graph which is patched as files change, rather than generated again from every
+ * file. When a file changes, its nodes are replaced, and the edges are only resolved again for the files that could be
+ * affected: the changed files themselves, and any file with a candidate reference to a global identifier that a
+ * changed file declared before or after the change.
+ *
+ * <p>
+ * Files keep their position when they change, and new files are added last. Since the first file to declare a global
+ * identifier is the one that's referenced, a name declared globally by more than one file may resolve differently than
+ * it would for a full build, which visits new files in directory order.
+ *
+ * <p>
+ * The topological order of the identifiers is maintained alongside the graph by a {@link DynamicTopologicalOrder},
+ * so only the part of the order affected by an update is repaired. If an update creates a cycle, the order is dropped
+ * until a later update removes the cycle.
+ *
+ * @author Matt Bolt
+ */
+public class IncrementalDependencies {
+
+    private final Map<File, FileAnalysis> analyses = new LinkedHashMap<File, FileAnalysis>();
+    private final Map<String, Set<File>> candidateFiles = new HashMap<String, Set<File>>();
+    private final DependencyGraph<CoffeeIdentifier> graph = new DependencyGraph<CoffeeIdentifier>();
+
+    // Null while the graph contains a cycle, or until the first update is complete
+    private DynamicTopologicalOrder<CoffeeIdentifier> order;
+
+    public IncrementalDependencies(List<FileAnalysis> analyses) {
+        update(analyses, new HashSet<File>());
+    }
+
+    /**
+     * This method patches the graph with the new analysis of each changed file, and removes the deleted files.
+     *
+     * @param changed The {@code FileAnalysis} of each file that was added or modified.
+     *
+     * @param removed The {@code File}s that were deleted.
+     */
+    public void update(List<FileAnalysis> changed, Collection<File> removed) {
+        Set<File> affected = new LinkedHashSet<File>();
+        Set<String> globals = new HashSet<String>();
+
+        // 1. Remove the nodes of each changed or deleted file, then add the nodes of the new analysis
+        for (File file : removed) {
+            FileAnalysis previous = analyses.remove(file);
+            if (null != previous) {
+                forget(previous, globals);
+            }
+        }
+
+        for (FileAnalysis analysis : changed) {
+            FileAnalysis previous = analyses.get(analysis.getFile());
+            if (null != previous) {
+                forget(previous, globals);
+            }
+
+            analyses.put(analysis.getFile(), analysis);
+            index(analysis, globals);
+            affected.add(analysis.getFile());
+        }
+
+        // 2. Any file which could reference a global declared by a changed file needs its edges resolved again
+        for (String name : globals) {
+            if (candidateFiles.containsKey(name)) {
+                affected.addAll(candidateFiles.get(name));
+            }
+        }
+
+        // 3. Register the global identifiers in file order, and resolve the edges of the affected files
+        CoffeeScriptDependencies dependencies = new CoffeeScriptDependencies(register());
+
+        for (File file : affected) {
+            FileAnalysis analysis = analyses.get(file);
+            if (null == analysis) {
+                continue;
+            }
+
+            List<CoffeeIdentifier> resolved = dependencies.referencesIn(analysis);
+
+            for (String name : analysis.getIdentifiers()) {
+                CoffeeIdentifier identifier = identifierFor(analysis, name);
+
+                for (CoffeeIdentifier reference : graph.outgoingFor(identifier)) {
+                    removeEdge(identifier, reference);
+                }
+
+                for (CoffeeIdentifier reference : resolved) {
+                    addEdge(identifier, reference);
+                }
+            }
+        }
+
+        if (null == order) {
+            try {
+                order = new DynamicTopologicalOrder<CoffeeIdentifier>(graph);
+            }
+            catch (CyclicDependencyException e) {
+                // Still cyclic, the export will report the cycle
+            }
+        }
+    }
+
+    /**
+     * This method returns a frozen snapshot of the graph, which isn't affected by later updates.
+     *
+     * @return The frozen {@code DependencyGraph}.
+     */
+    public DependencyGraph<CoffeeIdentifier> getGraph() {
+        return graph.freeze();
+    }
+
+    /**
+     * This method returns the identifiers in topological order, such that each identifier follows its dependencies.
+     *
+     * @return A {@code List} of the sorted identifiers, or {@code null} if the graph contains a cycle.
+     */
+    public List<CoffeeIdentifier> getSortedIdentifiers() {
+        return null == order ? null : order.getOrder();
+    }
+
+    public Set<File> getFiles() {
+        return analyses.keySet();
+    }
+
+    private void forget(FileAnalysis analysis, Set<String> globals) {
+        for (String name : analysis.getIdentifiers()) {
+            removeNode(identifierFor(analysis, name));
+
+            if (analysis.isGlobal(name)) {
+                globals.add(name);
+            }
+        }
+
+        for (List<FileAnalysis.Candidate> candidates : analysis.getScopes()) {
+            for (FileAnalysis.Candidate candidate : candidates) {
+                Set<File> files = candidateFiles.get(candidate.getName());
+                if (null != files) {
+                    files.remove(analysis.getFile());
+                }
+            }
+        }
+    }
+
+    private void index(FileAnalysis analysis, Set<String> globals) {
+        for (String name : analysis.getIdentifiers()) {
+            addNode(identifierFor(analysis, name));
+
+            if (analysis.isGlobal(name)) {
+                globals.add(name);
+            }
+        }
+
+        for (List<FileAnalysis.Candidate> candidates : analysis.getScopes()) {
+            for (FileAnalysis.Candidate candidate : candidates) {
+                if (!candidateFiles.containsKey(candidate.getName())) {
+                    candidateFiles.put(candidate.getName(), new HashSet<File>());
+                }
+
+                candidateFiles.get(candidate.getName()).add(analysis.getFile());
+            }
+        }
+    }
+
+    private void addNode(CoffeeIdentifier node) {
+        graph.add(node);
+
+        if (null != order) {
+            order.add(node);
+        }
+    }
+
+    private void removeNode(CoffeeIdentifier node) {
+        graph.remove(node);
+
+        if (null != order) {
+            order.remove(node);
+        }
+    }
+
+    private void addEdge(CoffeeIdentifier from, CoffeeIdentifier to) {
+        graph.add(from, to);
+
+        if (null != order) {
+            try {
+                order.add(from, to);
+            }
+            catch (CyclicDependencyException e) {
+                order = null;
+            }
+        }
+    }
+
+    private void removeEdge(CoffeeIdentifier from, CoffeeIdentifier to) {
+        graph.remove(from, to);
+
+        if (null != order) {
+            order.remove(from, to);
+        }
+    }
+
+    private DependencyManager<CoffeeIdentifier> register() {
+        DependencyManager<CoffeeIdentifier> dependencies = new DependencyManager<CoffeeIdentifier>();
+
+        for (FileAnalysis analysis : analyses.values()) {
+            for (String name : analysis.getIdentifiers()) {
+                if (analysis.isGlobal(name)) {
+                    dependencies.add(identifierFor(analysis, name));
+                }
+            }
+        }
+
+        return dependencies;
+    }
+
+    private static CoffeeIdentifier identifierFor(FileAnalysis analysis, String name) {
+        return new CoffeeIdentifier(name, analysis.getFile(), analysis.getDepth());
+    }
+}
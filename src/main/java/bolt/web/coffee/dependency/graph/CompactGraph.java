@@ -0,0 +1,228 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.dependency.graph;
+
+import java.util.*;
+
+/**
+ * An immutable, compact form of a {@link DependencyGraph}. Each node is interned to a dense {@code int} id, and the
+ * outgoing and incoming edges are each stored once in compressed-sparse-row form: the edges for node {@code n} occupy
+ * {@code offsets[n]} until {@code offsets[n + 1]} of a flat {@code int[]} of node ids.
+ *
+ * <p>
+ * This is the representation a {@code DependencyGraph} switches to when it's {@link DependencyGraph#freeze() frozen}
+ * after all of the dependencies are resolved. Algorithms that walk the whole graph can use the ids directly to avoid
+ * hashing and boxing each node.
+ *
+ * @author Matt Bolt
+ */
+public final class CompactGraph<T> {
+
+    private final List<T> nodes;
+    private final Map<T, Integer> ids;
+
+    private final int[] outOffsets;
+    private final int[] outTargets;
+
+    private final int[] inOffsets;
+    private final int[] inSources;
+
+    CompactGraph(Collection<T> nodes, Map<T, Set<T>> outgoing) {
+        int size = nodes.size();
+
+        this.nodes = new ArrayList<T>(nodes);
+        this.ids = new HashMap<T, Integer>(size * 2);
+
+        for (int i = 0; i < size; ++i) {
+            ids.put(this.nodes.get(i), i);
+        }
+
+        int edgeCount = 0;
+        int[] inDegrees = new int[size];
+
+        this.outOffsets = new int[size + 1];
+        for (int i = 0; i < size; ++i) {
+            outOffsets[i] = edgeCount;
+
+            Set<T> targets = outgoing.get(this.nodes.get(i));
+            if (null != targets) {
+                edgeCount += targets.size();
+            }
+        }
+        outOffsets[size] = edgeCount;
+
+        this.outTargets = new int[edgeCount];
+        for (int i = 0, edge = 0; i < size; ++i) {
+            Set<T> targets = outgoing.get(this.nodes.get(i));
+            if (null == targets) {
+                continue;
+            }
+
+            for (T target : targets) {
+                int id = ids.get(target);
+                outTargets[edge++] = id;
+                inDegrees[id]++;
+            }
+        }
+
+        // Incoming edges are the transpose, filled by counting sort over the target ids
+        this.inOffsets = new int[size + 1];
+        for (int i = 0; i < size; ++i) {
+            inOffsets[i + 1] = inOffsets[i] + inDegrees[i];
+        }
+
+        this.inSources = new int[edgeCount];
+        int[] next = Arrays.copyOf(inOffsets, size);
+        for (int i = 0; i < size; ++i) {
+            for (int edge = outOffsets[i]; edge < outOffsets[i + 1]; ++edge) {
+                inSources[next[outTargets[edge]]++] = i;
+            }
+        }
+    }
+
+    /**
+     * @return The number of nodes in the graph.
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * @return The number of edges in the graph.
+     */
+    public int edgeCount() {
+        return outTargets.length;
+    }
+
+    /**
+     * This method returns the id of a node.
+     *
+     * @param node The {@code T} node to look-up.
+     *
+     * @return The id of the node, or {@code -1} if the node isn't in the graph.
+     */
+    public int idOf(T node) {
+        Integer id = ids.get(node);
+        return null == id ? -1 : id;
+    }
+
+    /**
+     * This method returns the node for an id.
+     *
+     * @param id The node id, from {@code 0} until {@link #size()}.
+     *
+     * @return The {@code T} node.
+     */
+    public T nodeAt(int id) {
+        return nodes.get(id);
+    }
+
+    public int outDegree(int id) {
+        return outOffsets[id + 1] - outOffsets[id];
+    }
+
+    /**
+     * @return The id of the {@code index}th node that node {@code id} has an edge to.
+     */
+    public int outgoing(int id, int index) {
+        return outTargets[outOffsets[id] + index];
+    }
+
+    public int inDegree(int id) {
+        return inOffsets[id + 1] - inOffsets[id];
+    }
+
+    /**
+     * @return The id of the {@code index}th node that has an edge to node {@code id}.
+     */
+    public int incoming(int id, int index) {
+        return inSources[inOffsets[id] + index];
+    }
+
+    /**
+     * @return An unmodifiable {@code List} of the nodes, ordered by id.
+     */
+    public List<T> getNodes() {
+        return Collections.unmodifiableList(nodes);
+    }
+
+    Set<T> outgoingFor(T node) {
+        int id = idOf(node);
+        return id < 0 ? Collections.<T>emptySet() : new NodeSet(outTargets, outOffsets[id], outOffsets[id + 1]);
+    }
+
+    Set<T> incomingFor(T node) {
+        int id = idOf(node);
+        return id < 0 ? Collections.<T>emptySet() : new NodeSet(inSources, inOffsets[id], inOffsets[id + 1]);
+    }
+
+    /**
+     * An unmodifiable {@code Set} view of one row of the outgoing or incoming edges. A node never has two edges to the
+     * same target, so the row holds no duplicates.
+     */
+    private final class NodeSet extends AbstractSet<T> {
+
+        private final int[] row;
+        private final int from;
+        private final int to;
+
+        NodeSet(int[] row, int from, int to) {
+            this.row = row;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new Iterator<T>() {
+                private int index = from;
+
+                @Override
+                public boolean hasNext() {
+                    return index < to;
+                }
+
+                @Override
+                public T next() {
+                    if (index >= to) {
+                        throw new NoSuchElementException();
+                    }
+                    return nodes.get(row[index++]);
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+}
@@ -38,11 +38,13 @@ public class CyclicDependencyException extends Exception {
 
     private static <T> String messageFor(List<Edge<T>> edges) {
         StringBuilder builder = new StringBuilder("Cyclic Dependencies for: ");
-        for (Edge<T> edge : edges) {
-            builder.append(edge.getFrom()).append("->").append(edge.getTo());
-            if (edges.indexOf(edge) != edges.size()-1) {
+        for (int i = 0; i < edges.size(); ++i) {
+            if (i > 0) {
                 builder.append(", ");
             }
+
+            Edge<T> edge = edges.get(i);
+            builder.append(edge.getFrom()).append("->").append(edge.getTo());
         }
 
         return builder.toString();
@@ -31,6 +31,11 @@ import java.util.*;
  * This data structure is used to track generic nodes and an optional relationships between them, defined by an
  * {@link Edge} instance.
  *
+ * <p>
+ * A graph is built up using the hash based adjacency maps, then {@link #freeze() frozen} once it's complete. A frozen
+ * graph is a read-only view over a {@link CompactGraph}, which stores the edges as {@code int} node ids, can be shared
+ * without copying, and doesn't allocate to answer {@link #outgoingFor(Object)} or {@link #incomingFor(Object)}.
+ *
  * @author Matt Bolt
  */
 public class DependencyGraph<T> {
@@ -40,20 +45,30 @@ public class DependencyGraph<T> {
     private final Map<T, Set<T>> outgoing;
     private final Map<T, Set<T>> incoming;
 
-    private final Set<Edge<T>> edges;
+    // Set once the graph is frozen, the hash based fields are no longer used
+    private final CompactGraph<T> compact;
 
     public DependencyGraph() {
-        this(new HashSet<T>(), new HashMap<T, Set<T>>(), new HashMap<T, Set<T>>(), new HashSet<Edge<T>>());
+        this(new HashSet<T>(), new HashMap<T, Set<T>>(), new HashMap<T, Set<T>>());
     }
 
-    private DependencyGraph(Set<T> nodes, Map<T, Set<T>> outgoing, Map<T, Set<T>> incoming, Set<Edge<T>> edges) {
+    private DependencyGraph(Set<T> nodes, Map<T, Set<T>> outgoing, Map<T, Set<T>> incoming) {
         this.nodes = nodes;
         this.outgoing = outgoing;
         this.incoming = incoming;
-        this.edges = edges;
+        this.compact = null;
+    }
+
+    private DependencyGraph(CompactGraph<T> compact) {
+        this.nodes = null;
+        this.outgoing = null;
+        this.incoming = null;
+        this.compact = compact;
     }
 
     public void add(T node) {
+        checkMutable();
+
         if (!nodes.contains(node)) {
             nodes.add(node);
         }
@@ -64,6 +79,8 @@ public class DependencyGraph<T> {
     }
 
     public void add(Edge<T> edge) {
+        checkMutable();
+
         T from = edge.getFrom();
         T to = edge.getTo();
 
@@ -79,8 +96,27 @@ public class DependencyGraph<T> {
 
         outgoing.get(from).add(to);
         incoming.get(to).add(from);
+    }
+
+    /**
+     * This method removes a node from the graph, along with every edge to or from it.
+     */
+    public void remove(T node) {
+        checkMutable();
+
+        if (outgoing.containsKey(node)) {
+            for (T to : outgoing.remove(node)) {
+                incoming.get(to).remove(node);
+            }
+        }
+
+        if (incoming.containsKey(node)) {
+            for (T from : incoming.remove(node)) {
+                outgoing.get(from).remove(node);
+            }
+        }
 
-        edges.add(edge);
+        nodes.remove(node);
     }
 
     public void remove(T from, T to) {
@@ -88,6 +124,8 @@ public class DependencyGraph<T> {
     }
 
     public void remove(Edge<T> edge) {
+        checkMutable();
+
         T from = edge.getFrom();
         T to = edge.getTo();
 
@@ -98,11 +136,17 @@ public class DependencyGraph<T> {
         if (incoming.containsKey(to)) {
             incoming.get(to).remove(from);
         }
-
-        edges.remove(edge);
     }
 
+    /**
+     * This method returns the nodes the {@code item} has an edge to. For a frozen graph, this is an unmodifiable view.
+     * Otherwise, it's a copy that's safe to iterate while removing edges.
+     */
     public Set<T> outgoingFor(T item) {
+        if (isFrozen()) {
+            return compact.outgoingFor(item);
+        }
+
         Set<T> out = new HashSet<T>();
 
         if (outgoing.containsKey(item)) {
@@ -112,7 +156,15 @@ public class DependencyGraph<T> {
         return out;
     }
 
+    /**
+     * This method returns the nodes with an edge to the {@code item}. For a frozen graph, this is an unmodifiable view.
+     * Otherwise, it's a copy that's safe to iterate while removing edges.
+     */
     public Set<T> incomingFor(T item) {
+        if (isFrozen()) {
+            return compact.incomingFor(item);
+        }
+
         Set<T> in = new HashSet<T>();
 
         if (incoming.containsKey(item)) {
@@ -122,24 +174,106 @@ public class DependencyGraph<T> {
         return in;
     }
 
+    /**
+     * This method returns a mutable copy of the graph. Copying a frozen graph expands it back into the hash based form.
+     */
     public DependencyGraph<T> copy() {
+        if (isFrozen()) {
+            return thaw();
+        }
+
         return new DependencyGraph<T>(
             new HashSet<T>(nodes),
             copyMap(outgoing),
-            copyMap(incoming),
-            new HashSet<Edge<T>>(edges));
+            copyMap(incoming));
+    }
+
+    /**
+     * This method returns a read-only view of the graph backed by a {@link CompactGraph}. Any attempt to add or remove
+     * nodes or edges from the frozen graph will throw an {@code UnsupportedOperationException}.
+     *
+     * @return The frozen {@code DependencyGraph}, which is this instance if it's already frozen.
+     */
+    public DependencyGraph<T> freeze() {
+        if (isFrozen()) {
+            return this;
+        }
+
+        return new DependencyGraph<T>(new CompactGraph<T>(nodes, outgoing));
+    }
+
+    public boolean isFrozen() {
+        return null != compact;
+    }
+
+    /**
+     * This method returns the {@link CompactGraph} backing a frozen graph.
+     *
+     * @return The {@code CompactGraph} instance, or {@code null} if the graph isn't frozen.
+     */
+    public CompactGraph<T> getCompactGraph() {
+        return compact;
     }
 
     public Set<T> getRoots() {
+        if (isFrozen()) {
+            Set<T> result = new HashSet<T>();
+
+            for (int id = 0; id < compact.size(); ++id) {
+                if (compact.inDegree(id) == 0) {
+                    result.add(compact.nodeAt(id));
+                }
+            }
+
+            return result;
+        }
+
         Set<T> result = new HashSet<T>(nodes);
         result.removeAll(incoming.keySet());
         return result;
     }
 
     public Set<Edge<T>> getEdges() {
+        Set<Edge<T>> edges = new HashSet<Edge<T>>();
+
+        if (isFrozen()) {
+            for (int id = 0; id < compact.size(); ++id) {
+                for (int i = 0; i < compact.outDegree(id); ++i) {
+                    edges.add(new Edge<T>(compact.nodeAt(id), compact.nodeAt(compact.outgoing(id, i))));
+                }
+            }
+        }
+        else {
+            for (Map.Entry<T, Set<T>> entry : outgoing.entrySet()) {
+                for (T to : entry.getValue()) {
+                    edges.add(new Edge<T>(entry.getKey(), to));
+                }
+            }
+        }
+
         return Collections.unmodifiableSet(edges);
     }
 
+    private DependencyGraph<T> thaw() {
+        DependencyGraph<T> graph = new DependencyGraph<T>();
+
+        for (int id = 0; id < compact.size(); ++id) {
+            graph.add(compact.nodeAt(id));
+
+            for (int i = 0; i < compact.outDegree(id); ++i) {
+                graph.add(compact.nodeAt(id), compact.nodeAt(compact.outgoing(id, i)));
+            }
+        }
+
+        return graph;
+    }
+
+    private void checkMutable() {
+        if (isFrozen()) {
+            throw new UnsupportedOperationException("A frozen DependencyGraph can't be modified.");
+        }
+    }
+
     private static <T> Map<T, Set<T>> copyMap(Map<T, Set<T>> source) {
         Map<T, Set<T>> result = new HashMap<T, Set<T>>();
 
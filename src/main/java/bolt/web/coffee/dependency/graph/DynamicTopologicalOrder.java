@@ -0,0 +1,279 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.dependency.graph;
+
+import java.util.*;
+
+/**
+ * This class maintains a topological order of a {@link DependencyGraph} as nodes and edges are added and removed,
+ * using the dynamic topological sort of Pearce and Kelly. Each node has a position, and every edge goes from a lower
+ * position to a higher one. Adding an edge which already agrees with the positions costs nothing. Otherwise, only the
+ * nodes between the edge's endpoints which are reachable from it are searched and shuffled between the positions they
+ * already occupy, so a small edit to a large graph stays cheap.
+ *
+ * <p>
+ * An edge that would create a cycle is found during the same search, and is rejected with a
+ * {@link CyclicDependencyException}, leaving the graph and order unchanged. Removing nodes or edges never invalidates
+ * the order.
+ *
+ * @author Matt Bolt
+ */
+public class DynamicTopologicalOrder<T> {
+
+    private final DependencyGraph<T> graph;
+
+    // Every edge goes from a lower position to a higher one. Removed nodes leave a null until the positions are compacted
+    private final Map<T, Integer> positions = new HashMap<T, Integer>();
+    private final List<T> nodes = new ArrayList<T>();
+    private int removed = 0;
+
+    public DynamicTopologicalOrder() {
+        this.graph = new DependencyGraph<T>();
+    }
+
+    /**
+     * Creates the order for an existing graph, which is copied. The initial order is found with
+     * {@link GraphUtils#topologicalSort(DependencyGraph)}.
+     *
+     * @throws CyclicDependencyException This exception is thrown when the graph already contains a cycle.
+     */
+    public DynamicTopologicalOrder(DependencyGraph<T> dependencyGraph) throws CyclicDependencyException {
+        List<T> sorted = GraphUtils.topologicalSort(dependencyGraph);
+
+        this.graph = dependencyGraph.copy();
+
+        // The sort places each node after the nodes it has an edge to, which is the reverse of the positions
+        for (int i = sorted.size() - 1; i >= 0; --i) {
+            append(sorted.get(i));
+        }
+    }
+
+    public void add(T node) {
+        if (!positions.containsKey(node)) {
+            graph.add(node);
+            append(node);
+        }
+    }
+
+    /**
+     * This method adds an edge, repairing the order of the nodes between its endpoints if needed.
+     *
+     * @throws CyclicDependencyException This exception is thrown if the edge would create a cycle, in which case the
+     * edge isn't added. The exception reports the edges of the cycle.
+     */
+    public void add(T from, T to) throws CyclicDependencyException {
+        add(from);
+        add(to);
+
+        if (from.equals(to)) {
+            throw new CyclicDependencyException(Arrays.asList(new Edge<T>(from, to)));
+        }
+
+        int lower = positions.get(to);
+        int upper = positions.get(from);
+
+        if (lower > upper) {
+            graph.add(from, to);
+            return;
+        }
+
+        // The edge disagrees with the order, so find the nodes between the endpoints that have to move
+        List<T> forward = searchForward(from, to, upper);
+        List<T> backward = searchBackward(from, lower);
+
+        graph.add(from, to);
+        reorder(backward, forward);
+    }
+
+    public void remove(T from, T to) {
+        graph.remove(from, to);
+    }
+
+    public void remove(T node) {
+        Integer position = positions.remove(node);
+        if (null == position) {
+            return;
+        }
+
+        graph.remove(node);
+        nodes.set(position, null);
+
+        if (++removed > nodes.size() / 2) {
+            compact();
+        }
+    }
+
+    public boolean contains(T node) {
+        return positions.containsKey(node);
+    }
+
+    /**
+     * This method returns the nodes in the same sense as {@link GraphUtils#topologicalSort(DependencyGraph)}, with
+     * each node following the nodes it has an edge to.
+     *
+     * @return A new {@code List} of the ordered nodes.
+     */
+    public List<T> getOrder() {
+        List<T> order = new ArrayList<T>(positions.size());
+
+        for (int i = nodes.size() - 1; i >= 0; --i) {
+            if (null != nodes.get(i)) {
+                order.add(nodes.get(i));
+            }
+        }
+
+        return order;
+    }
+
+    /**
+     * @return A frozen snapshot of the graph being ordered.
+     */
+    public DependencyGraph<T> getGraph() {
+        return graph.freeze();
+    }
+
+    /**
+     * Finds the nodes reachable from {@code to} that are positioned before {@code from}. Reaching {@code from} means
+     * the new edge closes a cycle.
+     */
+    private List<T> searchForward(T from, T to, int upper) throws CyclicDependencyException {
+        Map<T, T> parents = new HashMap<T, T>();
+        Deque<T> stack = new ArrayDeque<T>();
+        List<T> visited = new ArrayList<T>();
+
+        parents.put(to, to);
+        stack.push(to);
+
+        while (!stack.isEmpty()) {
+            T node = stack.pop();
+            visited.add(node);
+
+            for (T next : graph.outgoingFor(node)) {
+                if (next.equals(from)) {
+                    throw new CyclicDependencyException(cycleFor(from, to, node, parents));
+                }
+
+                if (positions.get(next) < upper && !parents.containsKey(next)) {
+                    parents.put(next, node);
+                    stack.push(next);
+                }
+            }
+        }
+
+        return visited;
+    }
+
+    /**
+     * Finds the nodes that reach {@code from} which are positioned after {@code to}.
+     */
+    private List<T> searchBackward(T from, int lower) {
+        Set<T> seen = new HashSet<T>();
+        Deque<T> stack = new ArrayDeque<T>();
+        List<T> visited = new ArrayList<T>();
+
+        seen.add(from);
+        stack.push(from);
+
+        while (!stack.isEmpty()) {
+            T node = stack.pop();
+            visited.add(node);
+
+            for (T previous : graph.incomingFor(node)) {
+                if (positions.get(previous) > lower && seen.add(previous)) {
+                    stack.push(previous);
+                }
+            }
+        }
+
+        return visited;
+    }
+
+    /**
+     * Moves the nodes that reach the new edge ahead of the nodes it reaches, reusing the positions they occupy.
+     */
+    private void reorder(List<T> backward, List<T> forward) {
+        Comparator<T> byPosition = new Comparator<T>() {
+            @Override
+            public int compare(T first, T second) {
+                return positions.get(first) - positions.get(second);
+            }
+        };
+
+        Collections.sort(backward, byPosition);
+        Collections.sort(forward, byPosition);
+
+        List<T> moved = new ArrayList<T>(backward.size() + forward.size());
+        moved.addAll(backward);
+        moved.addAll(forward);
+
+        int[] slots = new int[moved.size()];
+        for (int i = 0; i < slots.length; ++i) {
+            slots[i] = positions.get(moved.get(i));
+        }
+        Arrays.sort(slots);
+
+        for (int i = 0; i < slots.length; ++i) {
+            T node = moved.get(i);
+
+            positions.put(node, slots[i]);
+            nodes.set(slots[i], node);
+        }
+    }
+
+    private List<Edge<T>> cycleFor(T from, T to, T last, Map<T, T> parents) {
+        LinkedList<Edge<T>> cycle = new LinkedList<Edge<T>>();
+        cycle.add(new Edge<T>(last, from));
+
+        for (T node = last; !node.equals(to); node = parents.get(node)) {
+            cycle.addFirst(new Edge<T>(parents.get(node), node));
+        }
+
+        cycle.addFirst(new Edge<T>(from, to));
+        return cycle;
+    }
+
+    private void append(T node) {
+        positions.put(node, nodes.size());
+        nodes.add(node);
+    }
+
+    private void compact() {
+        List<T> remaining = new ArrayList<T>(positions.size());
+        for (T node : nodes) {
+            if (null != node) {
+                remaining.add(node);
+            }
+        }
+
+        nodes.clear();
+        positions.clear();
+        removed = 0;
+
+        for (T node : remaining) {
+            append(node);
+        }
+    }
+}
@@ -38,40 +38,54 @@ import java.util.*;
 public final class GraphUtils {
 
     /**
-     * This method performs a topological sort on the {@code DependencyGraph} and returns the sorted {@code List}. This
-     * method does not alter the original graph.
+     * This method performs a topological sort on the {@code DependencyGraph} and returns the sorted {@code List}, with
+     * each node following the nodes it has an edge to. This method does not alter the original graph.
+     *
+     * <p>
+     * The sort counts the remaining incoming edges of each node rather than removing edges, so it runs in
+     * {@code O(V + E)} over the {@link CompactGraph} of a frozen graph. A graph which isn't frozen is compacted first.
      *
      * @param dependencyGraph The {@code DependencyGraph} to sort topologically.
      *
      * @return A {@code List} containing the sorted nodes.
      *
      * @throws CyclicDependencyException This exception is thrown when cyclic dependencies are found within the graph.
+     * Only the edges of the shortest cycle found in each strongly connected component are reported.
      */
     public static <T> List<T> topologicalSort(DependencyGraph<T> dependencyGraph) throws CyclicDependencyException {
-        DependencyGraph<T> graph = dependencyGraph.copy();
-        List<T> identifiers = new ArrayList<T>();
-        Set<T> noIncoming = graph.getRoots();
+        CompactGraph<T> graph = dependencyGraph.freeze().getCompactGraph();
+
+        int size = graph.size();
+        int[] inDegrees = new int[size];
+        Deque<Integer> noIncoming = new ArrayDeque<Integer>();
+
+        for (int id = 0; id < size; ++id) {
+            inDegrees[id] = graph.inDegree(id);
+            if (inDegrees[id] == 0) {
+                noIncoming.add(id);
+            }
+        }
+
+        Deque<T> identifiers = new ArrayDeque<T>(size);
 
         while (!noIncoming.isEmpty()) {
-            T n = shift(noIncoming);
-            identifiers.add(0, n);
+            int n = noIncoming.poll();
+            identifiers.addFirst(graph.nodeAt(n));
 
-            for (T m : graph.outgoingFor(n)) {
-                graph.remove(n, m);
+            for (int i = 0; i < graph.outDegree(n); ++i) {
+                int m = graph.outgoing(n, i);
 
-                if (graph.incomingFor(m).isEmpty()) {
+                if (--inDegrees[m] == 0) {
                     noIncoming.add(m);
                 }
             }
         }
 
-        if (!graph.getEdges().isEmpty()) {
-            List<Edge<T>> edges = new ArrayList<Edge<T>>(graph.getEdges());
-
-            throw new CyclicDependencyException(edges);
+        if (identifiers.size() != size) {
+            throw new CyclicDependencyException(cycleEdges(findCycles(graph)));
         }
 
-        return identifiers;
+        return new ArrayList<T>(identifiers);
     }
 
     /**
@@ -85,9 +99,19 @@ public final class GraphUtils {
     public static <T extends NamedDependency> void printDependencies(DependencyGraph<T> dependencyGraph)
         throws CyclicDependencyException
     {
-        DependencyGraph<T> graph = dependencyGraph.copy();
-        List<T> ordered = topologicalSort(dependencyGraph);
+        DependencyGraph<T> graph = dependencyGraph.freeze();
+
+        printDependencies(graph, topologicalSort(graph));
+    }
 
+    /**
+     * This method prints each outgoing dependency of a dependency graph which has already been sorted.
+     *
+     * @param graph The dependency graph to print.
+     *
+     * @param ordered The nodes of the graph, as returned by {@link #topologicalSort(DependencyGraph)}.
+     */
+    public static <T extends NamedDependency> void printDependencies(DependencyGraph<T> graph, List<T> ordered) {
         Set<String> alreadyPrinted = new HashSet<String>();
 
         for (T root : ordered) {
@@ -115,21 +139,207 @@ public final class GraphUtils {
     }
 
     /**
-     * This helper method gets the first elements of the set, removes it, and returns it.
+     * This method finds the strongly connected components of the graph which contain a cycle, using an iterative form
+     * of Tarjan's algorithm so deep graphs can't overflow the call stack. It runs in {@code O(V + E)}.
      *
-     * @param set The set to shift the first element found off the set.
+     * @param dependencyGraph The {@code DependencyGraph} to search.
      *
-     * @return The {@code T} element shifted off.
+     * @return A {@code List} of the components, each a {@code List} of its nodes. A node only forms a component on its
+     * own if it has an edge to itself.
      */
-    private static <T> T shift(Set<T> set) {
-        Iterator<T> iterator = set.iterator();
-        if (iterator.hasNext()) {
-            T next = iterator.next();
-            set.remove(next);
-            return next;
+    public static <T> List<List<T>> stronglyConnectedComponents(DependencyGraph<T> dependencyGraph) {
+        CompactGraph<T> graph = dependencyGraph.freeze().getCompactGraph();
+
+        List<List<T>> components = new ArrayList<List<T>>();
+        for (int[] component : componentsOf(graph)) {
+            components.add(nodesFor(graph, component));
         }
 
-        return null;
+        return components;
+    }
+
+    /**
+     * This method finds a cycle within each strongly connected component of the graph. Each cycle is the shortest loop
+     * back to the first node of its component, found by a breadth first search that stays within the component.
+     *
+     * @param dependencyGraph The {@code DependencyGraph} to search.
+     *
+     * @return A {@code List} of cycles. Each cycle is a {@code List} of nodes, where each node has an edge to the next,
+     * and the last node has an edge to the first.
+     */
+    public static <T> List<List<T>> findCycles(DependencyGraph<T> dependencyGraph) {
+        return findCycles(dependencyGraph.freeze().getCompactGraph());
+    }
+
+    private static <T> List<List<T>> findCycles(CompactGraph<T> graph) {
+        List<int[]> components = componentsOf(graph);
+
+        int[] componentOf = new int[graph.size()];
+        Arrays.fill(componentOf, -1);
+        for (int c = 0; c < components.size(); ++c) {
+            for (int id : components.get(c)) {
+                componentOf[id] = c;
+            }
+        }
+
+        int[] parents = new int[graph.size()];
+        Arrays.fill(parents, -1);
+
+        List<List<T>> cycles = new ArrayList<List<T>>();
+        for (int c = 0; c < components.size(); ++c) {
+            cycles.add(nodesFor(graph, shortestCycle(graph, components.get(c)[0], c, componentOf, parents)));
+        }
+
+        return cycles;
+    }
+
+    // Iterative Tarjan, returning only the components which contain a cycle
+    private static <T> List<int[]> componentsOf(CompactGraph<T> graph) {
+        int size = graph.size();
+
+        int[] index = new int[size];
+        int[] lowLink = new int[size];
+        int[] nextEdge = new int[size];
+        boolean[] onStack = new boolean[size];
+        Arrays.fill(index, -1);
+
+        int[] stack = new int[size];
+        int stackSize = 0;
+        int[] calls = new int[size];
+        int counter = 0;
+
+        List<int[]> components = new ArrayList<int[]>();
+
+        for (int root = 0; root < size; ++root) {
+            if (index[root] != -1) {
+                continue;
+            }
+
+            int depth = 0;
+            calls[depth++] = root;
+            index[root] = lowLink[root] = counter++;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+
+            while (depth > 0) {
+                int v = calls[depth - 1];
+
+                if (nextEdge[v] < graph.outDegree(v)) {
+                    int w = graph.outgoing(v, nextEdge[v]++);
+
+                    if (index[w] == -1) {
+                        calls[depth++] = w;
+                        index[w] = lowLink[w] = counter++;
+                        stack[stackSize++] = w;
+                        onStack[w] = true;
+                    }
+                    else if (onStack[w]) {
+                        lowLink[v] = Math.min(lowLink[v], index[w]);
+                    }
+                    continue;
+                }
+
+                --depth;
+                if (depth > 0) {
+                    int u = calls[depth - 1];
+                    lowLink[u] = Math.min(lowLink[u], lowLink[v]);
+                }
+
+                if (lowLink[v] != index[v]) {
+                    continue;
+                }
+
+                int first = stackSize;
+                do {
+                    onStack[stack[--first]] = false;
+                } while (stack[first] != v);
+
+                int[] component = Arrays.copyOfRange(stack, first, stackSize);
+                stackSize = first;
+
+                if (component.length > 1 || hasEdge(graph, v, v)) {
+                    components.add(component);
+                }
+            }
+        }
+
+        return components;
+    }
+
+    // Breadth first search from start back to itself, following only the edges within the same component
+    private static <T> int[] shortestCycle(CompactGraph<T> graph, int start, int component, int[] componentOf,
+                                           int[] parents)
+    {
+        Deque<Integer> queue = new ArrayDeque<Integer>();
+        List<Integer> visited = new ArrayList<Integer>();
+        queue.add(start);
+
+        int last = -1;
+        while (!queue.isEmpty() && last == -1) {
+            int v = queue.poll();
+
+            for (int i = 0; i < graph.outDegree(v); ++i) {
+                int w = graph.outgoing(v, i);
+
+                if (w == start) {
+                    last = v;
+                    break;
+                }
+
+                if (componentOf[w] == component && parents[w] == -1) {
+                    parents[w] = v;
+                    visited.add(w);
+                    queue.add(w);
+                }
+            }
+        }
+
+        int length = 1;
+        for (int v = last; v != start; v = parents[v]) {
+            ++length;
+        }
+
+        int[] cycle = new int[length];
+        for (int v = last, i = length - 1; i >= 0; v = parents[v], --i) {
+            cycle[i] = v;
+        }
+
+        // Reset only what this search touched, so each component's search stays proportional to its size
+        for (int v : visited) {
+            parents[v] = -1;
+        }
+
+        return cycle;
+    }
+
+    private static <T> List<Edge<T>> cycleEdges(List<List<T>> cycles) {
+        List<Edge<T>> edges = new ArrayList<Edge<T>>();
+
+        for (List<T> cycle : cycles) {
+            for (int i = 0; i < cycle.size(); ++i) {
+                edges.add(new Edge<T>(cycle.get(i), cycle.get((i + 1) % cycle.size())));
+            }
+        }
+
+        return edges;
+    }
+
+    private static <T> boolean hasEdge(CompactGraph<T> graph, int from, int to) {
+        for (int i = 0; i < graph.outDegree(from); ++i) {
+            if (graph.outgoing(from, i) == to) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static <T> List<T> nodesFor(CompactGraph<T> graph, int[] ids) {
+        List<T> nodes = new ArrayList<T>(ids.length);
+        for (int id : ids) {
+            nodes.add(graph.nodeAt(id));
+        }
+        return nodes;
     }
 
     private static String spacingFor(int depth) {
@@ -84,6 +84,63 @@ public interface CoffeeGraphOptions {
      */
     boolean isBare();
 
+    /**
+     * Tokenizes using the built-in Java lexer rather than the lexer inside the CoffeeScript compiler.
+     *
+     * @return {@code true} if Coffee-Graph should tokenize using the Java lexer.
+     */
+    boolean isJavaLexer();
+
+    /**
+     * Tokenizes using both lexers and reports any difference between their tokens.
+     *
+     * @return {@code true} if Coffee-Graph should check the Java lexer against the CoffeeScript compiler.
+     */
+    boolean isLexerConformance();
+
+    /**
+     * The number of files to lex and parse in parallel, and to compile in parallel when using separate scopes.
+     *
+     * @return The number of worker threads to use, where {@code 1} parses and compiles each file in turn.
+     */
+    int getJobs();
+
+    /**
+     * Compiles each file on its own rather than compiling the joined files. Each file then has its own top-level scope,
+     * so a function assigning to a top-level variable of another file declares a new local variable instead.
+     *
+     * @return {@code true} if each file should be compiled on its own.
+     */
+    boolean isSeparateScopes();
+
+    /**
+     * The directory to cache the dependency analysis and the compiled JavaScript in.
+     *
+     * @return The cache directory {@code File}, or {@code null} if nothing should be cached.
+     */
+    File getCacheDirectory();
+
+    /**
+     * Watches the source files and directories, and exports again each time they change.
+     *
+     * @return {@code true} if Coffee-Graph should keep running and export on each change.
+     */
+    boolean isWatch();
+
+    /**
+     * Runs a daemon which keeps the JVM and CoffeeScript compiler warm, and runs the commands forwarded to it.
+     *
+     * @return {@code true} if Coffee-Graph should run as a daemon.
+     */
+    boolean isDaemon();
+
+    /**
+     * The loopback port the daemon listens on.
+     *
+     * @return The port number, where {@code 0} uses any free port.
+     */
+    int getPort();
+
     /**
      * A {@code List} of {@code File} instances representing the source files or directories to build the dependency
      * graph for.
@@ -25,24 +25,35 @@
 
 package bolt.web.coffee.io;
 
-import bolt.web.coffee.types.CoffeeScriptLine;
+import bolt.web.coffee.exceptions.CoffeeSyntaxException;
 import bolt.web.coffee.types.CoffeeScriptType;
 import bolt.web.coffee.types.CoffeeType;
 import bolt.web.coffee.types.UndefinedCoffeeType;
 import bolt.web.coffee.util.CoffeeScript;
-import org.mozilla.javascript.NativeArray;
-import org.mozilla.javascript.NativeObject;
+import bolt.web.coffee.util.CoffeeScriptTokens;
+import bolt.web.coffee.util.FileHelper;
+import org.mozilla.javascript.RhinoException;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * This class uses a {@code CoffeeScript} instance, which uses rhino to execute the javascript coffee-script utilities.
+ *
+ * <p>
+ * The tokens are read straight out of the rhino arrays through {@link CoffeeScriptTokens}, and either streamed to a
+ * {@link TokenSink} or returned in a {@link TokenBuffer}. Many files can be tokenized while entering rhino once using
+ * {@link #tokenizeAll(List)}.
+ *
+ * <p>
+ * The compiler reports syntax errors by throwing a JavaScript {@code SyntaxError}, which is translated into a
+ * {@link CoffeeSyntaxException} with the compiler's message, so every lexer fails the same way.
  * 
  * @author Matt Bolt
  */
-public class CoffeeScriptLexer implements Lexer {
+public class CoffeeScriptLexer implements BatchLexer, StreamingLexer {
 
     private final CoffeeScript coffeeScript;
 
@@ -52,43 +63,77 @@ public class CoffeeScriptLexer implements Lexer {
 
     @Override
     public List<CoffeeToken> tokenize(File coffeeFile) {
-        return tokenize(coffeeScript.tokenize(coffeeFile));
+        return tokenize(FileHelper.loadText(coffeeFile));
     }
 
     @Override
     public List<CoffeeToken> tokenize(String coffeeString) {
-        return tokenize(coffeeScript.tokenize(coffeeString));
+        CoffeeScriptTokens coffeeTokens = tokenizeSources(Collections.singletonList(coffeeString)).get(0);
+
+        return tokensFrom(coffeeTokens);
+    }
+
+    @Override
+    public void tokenize(File coffeeFile, TokenSink sink) {
+        tokenize(FileHelper.loadText(coffeeFile), sink);
+    }
+
+    @Override
+    public void tokenize(String coffeeString, TokenSink sink) {
+        emit(tokenizeSources(Collections.singletonList(coffeeString)).get(0), sink);
     }
 
-    @SuppressWarnings({"unchecked"})
-    private List<CoffeeToken> tokenize(NativeArray nativeTokens) {
-        List<CoffeeToken> tokens = new ArrayList<CoffeeToken>();
+    @Override
+    public List<List<CoffeeToken>> tokenizeAll(List<File> coffeeFiles) {
+        List<String> sources = new ArrayList<String>(coffeeFiles.size());
+        for (File coffeeFile : coffeeFiles) {
+            sources.add(FileHelper.loadText(coffeeFile));
+        }
 
-        ArrayList<NativeArray> list = new ArrayList<NativeArray>(nativeTokens);
-        for (NativeArray token : list) {
-            tokens.add( tokenFrom(new ArrayList<Object>(token)) );
+        List<List<CoffeeToken>> tokens = new ArrayList<List<CoffeeToken>>(coffeeFiles.size());
+        for (CoffeeScriptTokens coffeeTokens : tokenizeSources(sources)) {
+            tokens.add(tokensFrom(coffeeTokens));
         }
 
         return tokens;
     }
 
-    private CoffeeToken tokenFrom(List<Object> tokenEntries) {
-        String typeString = (String) tokenEntries.get(0);
-        CoffeeType type = CoffeeScriptType.typeFor(typeString);
-
-        if (type == CoffeeScriptType.NoType) {
-            // To keep the process going, let's create a "filler" coffee type, and have it report a warning
-            type = new UndefinedCoffeeType(typeString);
+    private List<CoffeeScriptTokens> tokenizeSources(List<String> sources) {
+        try {
+            return coffeeScript.tokenizeAll(sources);
         }
+        catch (RhinoException e) {
+            throw new CoffeeSyntaxException(e.details());
+        }
+    }
+
+    private static TokenBuffer tokensFrom(CoffeeScriptTokens coffeeTokens) {
+        TokenBuffer tokens = new TokenBuffer(coffeeTokens.size());
+        emit(coffeeTokens, tokens);
+
+        return tokens;
+    }
 
-        Object next = tokenEntries.size() > 1 ? tokenEntries.get(1) : "";
+    private static void emit(CoffeeScriptTokens coffeeTokens, TokenSink sink) {
+        while (coffeeTokens.next()) {
+            CoffeeType type = typeFor(coffeeTokens.getTag());
 
-        if (CoffeeScriptLine.isLine(next)) {
-            return new CoffeeToken(type, type.getType(), CoffeeScriptLine.parseLine(next));
+            // Tokens which carry their location in place of a value use the type as the value
+            String value = null == coffeeTokens.getValue() ? type.getType() : coffeeTokens.getValue();
+
+            sink.token(type, value, coffeeTokens.getFirstLine(), coffeeTokens.getFirstColumn(),
+                coffeeTokens.getLastLine(), coffeeTokens.getLastColumn());
         }
+    }
+
+    private static CoffeeType typeFor(String typeString) {
+        CoffeeType type = CoffeeScriptType.typeFor(typeString);
 
-        NativeObject obj = tokenEntries.size() > 2 ? (NativeObject) tokenEntries.get(2) : null;
+        if (type == CoffeeScriptType.NoType) {
+            // To keep the process going, let's use a "filler" coffee type, and have it report a warning
+            type = UndefinedCoffeeType.typeFor(typeString);
+        }
 
-        return new CoffeeToken(type, next.toString(), CoffeeScriptLine.parseLine(obj));
+        return type;
     }
 }
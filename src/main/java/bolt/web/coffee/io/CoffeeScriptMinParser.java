@@ -39,10 +39,17 @@ import java.util.List;
  * Note that the {@link CoffeeTree} class took more of the parsing responsibility than I meant it to. This is a bit of
  * a design flaw, but isn't hurting anything as of yet. This will change in a future release to something more reliable.
  *
+ * <p>
+ * A {@link BatchLexer} is handed the files in batches of {@code BATCH_SIZE}, which keeps the cost of crossing into the
+ * lexer low for many small files without holding the tokens of every file in memory at once. Otherwise, a
+ * {@link StreamingLexer} streams each file's tokens straight into the tree as they're decoded.
+ *
  * @author Matt Bolt
  */
 public class CoffeeScriptMinParser implements Parser {
 
+    private static final int BATCH_SIZE = 64;
+
     public CoffeeScriptMinParser() {
 
     }
@@ -51,17 +58,50 @@ public class CoffeeScriptMinParser implements Parser {
     public CoffeeTree parse(Lexer lexer, List<File> files) {
         CoffeeTree tree = new CoffeeTree();
 
-        for (File file : files) {
-            List<CoffeeToken> tokens = lexer.tokenize(file);
-            tree.add(file);
+        if (lexer instanceof BatchLexer && files.size() > 1) {
+            BatchLexer batchLexer = (BatchLexer) lexer;
+
+            for (int start = 0; start < files.size(); start += BATCH_SIZE) {
+                List<File> batch = files.subList(start, Math.min(files.size(), start + BATCH_SIZE));
+                List<List<CoffeeToken>> tokens = batchLexer.tokenizeAll(batch);
+
+                for (int i = 0; i < batch.size(); ++i) {
+                    add(tree, batch.get(i), tokens.get(i));
+                }
+            }
+
+            return tree;
+        }
+
+        if (lexer instanceof StreamingLexer) {
+            StreamingLexer streamingLexer = (StreamingLexer) lexer;
 
-            for (CoffeeToken token : tokens) {
-                tree.add(token);
+            for (File file : files) {
+                streamingLexer.tokenize(file, tree.sinkFor(file));
             }
 
-            // Tree automatically pops file scope when we add the next file
+            return tree;
+        }
+
+        for (File file : files) {
+            add(tree, file, lexer.tokenize(file));
         }
 
         return tree;
     }
+
+    private static void add(CoffeeTree tree, File file, List<CoffeeToken> tokens) {
+        if (tokens instanceof TokenBuffer) {
+            tree.add(file, (TokenBuffer) tokens);
+            return;
+        }
+
+        tree.add(file);
+
+        for (CoffeeToken token : tokens) {
+            tree.add(token);
+        }
+
+        // Tree automatically pops file scope when we add the next file
+    }
 }
@@ -29,32 +29,44 @@ import bolt.web.coffee.types.CoffeeScriptLine;
 import bolt.web.coffee.types.CoffeeTokenType;
 import bolt.web.coffee.types.CoffeeType;
 
-import java.util.concurrent.atomic.AtomicInteger;
-
 
 /**
  * This class represents a lexical token in the Coffee Script language.
+ *
+ * <p>
+ * A token is either created on its own, or as a view of a single index in a {@link TokenBuffer}. Tokens created on
+ * their own are only equal to themselves, while views are equal to any other view of the same index in the same
+ * buffer.
  * 
  * @author Matt Bolt
  */
 public class CoffeeToken {
 
-    private static AtomicInteger idCount = new AtomicInteger();
-
-    private final int id;
     private final CoffeeType type;
     private final String value;
     private final CoffeeScriptLine lineNumber;
 
+    final TokenBuffer buffer;
+    final int index;
+
     public CoffeeToken(CoffeeType type, String value) {
         this(type, value, CoffeeScriptLine.Zero);
     }
 
     public CoffeeToken(CoffeeType type, String value, CoffeeScriptLine lineNumber) {
-        this.id = idCount.incrementAndGet();
         this.type = type;
         this.value = value;
         this.lineNumber = lineNumber;
+        this.buffer = null;
+        this.index = -1;
+    }
+
+    CoffeeToken(TokenBuffer buffer, int index) {
+        this.type = buffer.typeAt(index);
+        this.value = buffer.valueAt(index);
+        this.lineNumber = buffer.lineAt(index);
+        this.buffer = buffer;
+        this.index = index;
     }
 
     @Override
@@ -64,21 +76,16 @@ public class CoffeeToken {
 
         CoffeeToken that = (CoffeeToken) o;
 
-        if (id != that.id) return false;
-        if (!lineNumber.equals(that.lineNumber)) return false;
-        if (!type.equals(that.type)) return false;
-        if (!value.equals(that.value)) return false;
-
-        return true;
+        return null != buffer && buffer == that.buffer && index == that.index;
     }
 
     @Override
     public int hashCode() {
-        int result = id;
-        result = 31 * result + type.hashCode();
-        result = 31 * result + value.hashCode();
-        result = 31 * result + lineNumber.hashCode();
-        return result;
+        if (null == buffer) {
+            return System.identityHashCode(this);
+        }
+
+        return 31 * System.identityHashCode(buffer) + index;
     }
 
     @Override
@@ -29,6 +29,7 @@ import bolt.web.coffee.io.exporters.ChainedExporter;
 import bolt.web.coffee.io.exporters.CoffeeScriptCompileExporter;
 import bolt.web.coffee.io.exporters.DependencyTreeExporter;
 import bolt.web.coffee.io.exporters.ListFilesExporter;
+import bolt.web.coffee.util.CompiledScriptCache;
 
 /**
  * The default {@link ExporterFactory} implementation, which chains Coffee-Graph usage options together.
@@ -58,7 +59,13 @@ public class DefaultExporterFactory implements ExporterFactory {
         }
 
         if (options.isCompile()) {
-            exporter.addExporter(new CoffeeScriptCompileExporter(options.getOutputFile(), options.isBare()));
+            CompiledScriptCache cache = null;
+            if (null != options.getCacheDirectory()) {
+                cache = new CompiledScriptCache(options.getCacheDirectory());
+            }
+
+            exporter.addExporter(new CoffeeScriptCompileExporter(
+                options.getOutputFile(), options.isBare(), options.getJobs(), options.isSeparateScopes(), cache));
         }
 
         return exporter;
@@ -0,0 +1,168 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.io;
+
+import bolt.web.coffee.dependency.CoffeeIdentifier;
+import bolt.web.coffee.dependency.graph.CyclicDependencyException;
+import bolt.web.coffee.dependency.graph.DependencyGraph;
+import bolt.web.coffee.dependency.graph.GraphUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class holds everything an {@link Exporter} needs from a resolved dependency graph. The graph is frozen, so it
+ * can be shared between exporters, and the sorted identifiers and file order are computed the first time they're
+ * requested, then reused by every exporter handed the same context.
+ *
+ * @author Matt Bolt
+ */
+public class ExportContext {
+
+    private final DependencyGraph<CoffeeIdentifier> graph;
+
+    private List<CoffeeIdentifier> sortedIdentifiers;
+    private CyclicDependencyException cycle;
+
+    private List<CoffeeIdentifier> fileOrder;
+    private List<String> filePaths;
+
+    public ExportContext(DependencyGraph<CoffeeIdentifier> graph) {
+        this.graph = graph.freeze();
+    }
+
+    /**
+     * Creates a context for a graph whose topological order is already known, such as one maintained while the graph
+     * is edited.
+     *
+     * @param graph The {@code DependencyGraph} being exported.
+     *
+     * @param sortedIdentifiers The identifiers in topological order, or {@code null} to sort the graph when the order
+     * is first requested.
+     */
+    public ExportContext(DependencyGraph<CoffeeIdentifier> graph, List<CoffeeIdentifier> sortedIdentifiers) {
+        this(graph);
+
+        if (null != sortedIdentifiers) {
+            this.sortedIdentifiers = Collections.unmodifiableList(sortedIdentifiers);
+        }
+    }
+
+    /**
+     * @return The frozen {@code DependencyGraph} being exported.
+     */
+    public DependencyGraph<CoffeeIdentifier> getGraph() {
+        return graph;
+    }
+
+    /**
+     * This method returns the identifiers in topological order, such that each identifier follows its dependencies.
+     *
+     * @return An unmodifiable {@code List} of the sorted {@link CoffeeIdentifier} instances.
+     *
+     * @throws CyclicDependencyException This exception is thrown when cyclic dependencies are found within the graph.
+     */
+    public List<CoffeeIdentifier> getSortedIdentifiers() throws CyclicDependencyException {
+        if (null != cycle) {
+            throw cycle;
+        }
+
+        if (null == sortedIdentifiers) {
+            try {
+                sortedIdentifiers = Collections.unmodifiableList(GraphUtils.topologicalSort(graph));
+            }
+            catch (CyclicDependencyException e) {
+                cycle = e;
+                throw e;
+            }
+        }
+
+        return sortedIdentifiers;
+    }
+
+    /**
+     * This method returns the first sorted identifier from each file, which gives the order the files should be
+     * joined in.
+     *
+     * @return An unmodifiable {@code List} of {@link CoffeeIdentifier} instances, one per file.
+     *
+     * @throws CyclicDependencyException This exception is thrown when cyclic dependencies are found within the graph.
+     */
+    public List<CoffeeIdentifier> getFileOrder() throws CyclicDependencyException {
+        if (null == fileOrder) {
+            trimDuplicateFiles(getSortedIdentifiers());
+        }
+
+        return fileOrder;
+    }
+
+    /**
+     * This method returns the canonical paths of the files, in the order they should be joined in.
+     *
+     * @return An unmodifiable {@code List} of canonical file paths, matching {@link #getFileOrder()}.
+     *
+     * @throws CyclicDependencyException This exception is thrown when cyclic dependencies are found within the graph.
+     */
+    public List<String> getFilePaths() throws CyclicDependencyException {
+        if (null == filePaths) {
+            trimDuplicateFiles(getSortedIdentifiers());
+        }
+
+        return filePaths;
+    }
+
+    private void trimDuplicateFiles(List<CoffeeIdentifier> identifiers) {
+        List<CoffeeIdentifier> files = new ArrayList<CoffeeIdentifier>();
+        List<String> paths = new ArrayList<String>();
+        Set<String> usedFiles = new HashSet<String>();
+
+        for (CoffeeIdentifier identifier : identifiers) {
+            String file;
+
+            try {
+                file = identifier.getFile().getCanonicalPath();
+            }
+            catch (IOException e) {
+                // TODO: Throw an appropriate exception here?
+                e.printStackTrace();
+                continue;
+            }
+
+            if (!usedFiles.contains(file)) {
+                usedFiles.add(file);
+                files.add(identifier);
+                paths.add(file);
+            }
+        }
+
+        this.fileOrder = Collections.unmodifiableList(files);
+        this.filePaths = Collections.unmodifiableList(paths);
+    }
+}
@@ -26,7 +26,6 @@
 package bolt.web.coffee.io;
 
 import bolt.web.coffee.dependency.CoffeeIdentifier;
-import bolt.web.coffee.dependency.graph.DependencyGraph;
 
 /**
  * Implementation prototype for an object which accepts dependency information and exports it based on specified options.
@@ -38,8 +37,8 @@ public interface Exporter {
     /**
      * This method exports the ordered list of {@link CoffeeIdentifier} based on the implementation.
      *
-     * @param graph The {@link DependencyGraph} that ordered list is based on.
+     * @param context The {@link ExportContext} holding the dependency graph and the ordered list based on it.
      */
-    void export(DependencyGraph<CoffeeIdentifier> graph);
+    void export(ExportContext context);
 
 }
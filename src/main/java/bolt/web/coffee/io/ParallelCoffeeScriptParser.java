@@ -0,0 +1,116 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.io;
+
+import bolt.web.coffee.tree.CoffeeTree;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This {@link Parser} implementation lexes each file and builds its file scope on a bounded pool of worker threads.
+ * Every file is parsed into its own {@code CoffeeTree} by the {@link CoffeeScriptMinParser}, then the file scopes are
+ * merged into a single tree in the same order as the input files, so the result doesn't depend on which worker
+ * finishes first.
+ *
+ * <p>
+ * The {@link Lexer} is shared between the workers, so it must be safe to use from multiple threads. Both of the
+ * bundled lexers are.
+ *
+ * @author Matt Bolt
+ */
+public class ParallelCoffeeScriptParser implements Parser {
+
+    private final int threads;
+    private final Parser fileParser;
+
+    public ParallelCoffeeScriptParser(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The parser requires at least one thread.");
+        }
+
+        this.threads = threads;
+        this.fileParser = new CoffeeScriptMinParser();
+    }
+
+    @Override
+    public CoffeeTree parse(final Lexer lexer, List<File> files) {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, files.size())));
+
+        try {
+            List<Future<CoffeeTree>> fileTrees = new ArrayList<Future<CoffeeTree>>(files.size());
+
+            for (final File file : files) {
+                fileTrees.add(executor.submit(new Callable<CoffeeTree>() {
+                    @Override
+                    public CoffeeTree call() throws Exception {
+                        return fileParser.parse(lexer, Collections.singletonList(file));
+                    }
+                }));
+            }
+
+            CoffeeTree tree = new CoffeeTree();
+            for (Future<CoffeeTree> fileTree : fileTrees) {
+                tree.merge(resultOf(fileTree));
+            }
+
+            return tree;
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Rethrows any failure from the worker as is, such that errors match those of the serial parser
+    private static CoffeeTree resultOf(Future<CoffeeTree> fileTree) {
+        try {
+            return fileTree.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw new RuntimeException(cause);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.io;
+
+import java.io.File;
+
+/**
+ * A {@link Lexer} which can push each token to a {@link TokenSink} as it's decoded, rather than returning all of the
+ * tokens at once. The {@link CoffeeScriptMinParser} streams the tokens straight into the tree, so a file's tokens are
+ * only ever stored once. The {@code List} returning methods of {@link Lexer} remain, and are simply a stream into a
+ * {@link TokenBuffer}.
+ *
+ * @author Matt Bolt
+ */
+public interface StreamingLexer extends Lexer {
+
+    /**
+     * This method tokenizes a {@code File}, passing each token to the {@code TokenSink} in order.
+     *
+     * @param coffeeFile The {@code File} instance to tokenize.
+     *
+     * @param sink The {@code TokenSink} which accepts the tokens.
+     */
+    void tokenize(File coffeeFile, TokenSink sink);
+
+    /**
+     * This method tokenizes a {@code String}, passing each token to the {@code TokenSink} in order.
+     *
+     * @param coffeeString The {@code String} containing coffee-script to tokenize.
+     *
+     * @param sink The {@code TokenSink} which accepts the tokens.
+     */
+    void tokenize(String coffeeString, TokenSink sink);
+}
@@ -0,0 +1,253 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.io;
+
+import bolt.web.coffee.types.CoffeeScriptLine;
+import bolt.web.coffee.types.CoffeeTokenType;
+import bolt.web.coffee.types.CoffeeType;
+import bolt.web.coffee.util.SymbolTable;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class stores the tokens of a single file in primitive arrays rather than as one object per token. Each token is
+ * an index into the buffer with a type id, a value id and a packed first and last location. The types and values are
+ * each stored once per buffer, so a file which repeats the same identifier many times only holds one copy of it.
+ * Identifier values are also interned in the global {@link SymbolTable} as they're added, once per distinct value.
+ *
+ * <p>
+ * The buffer is also a read-only {@code List} of {@link CoffeeToken} instances, which are created on demand as views
+ * of a single index. Code which walks many tokens, like the {@link bolt.web.coffee.tree.CoffeeScope}, should use the
+ * index based accessors instead.
+ *
+ * @author Matt Bolt
+ */
+public class TokenBuffer extends AbstractList<CoffeeToken> implements TokenSink {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final List<CoffeeType> types = new ArrayList<CoffeeType>();
+    private final Map<CoffeeType, Integer> typeIds = new HashMap<CoffeeType, Integer>();
+
+    private final List<String> values = new ArrayList<String>();
+    private final Map<String, Integer> valueIds = new HashMap<String, Integer>();
+
+    // The symbol id of each value, or -1 for values which have only been used by tokens that aren't identifiers
+    private int[] symbolIds = new int[INITIAL_CAPACITY];
+
+    private short[] typeIdAt;
+    private int[] valueIdAt;
+    private long[] firstAt;
+    private long[] lastAt;
+    private int size;
+
+    public TokenBuffer() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public TokenBuffer(int capacity) {
+        capacity = Math.max(1, capacity);
+
+        typeIdAt = new short[capacity];
+        valueIdAt = new int[capacity];
+        firstAt = new long[capacity];
+        lastAt = new long[capacity];
+    }
+
+    /**
+     * This method adds a token to the end of the buffer.
+     *
+     * @return The index of the token.
+     */
+    public int append(CoffeeType type, String value, int firstLine, int firstColumn, int lastLine, int lastColumn) {
+        if (size == typeIdAt.length) {
+            grow();
+        }
+
+        int valueId = idFor(value);
+
+        typeIdAt[size] = (short) idFor(type);
+        valueIdAt[size] = valueId;
+        firstAt[size] = pack(firstLine, firstColumn);
+        lastAt[size] = pack(lastLine, lastColumn);
+
+        if (CoffeeTokenType.Identifier == type && null != value && symbolIds[valueId] < 0) {
+            symbolIds[valueId] = SymbolTable.global().intern(value);
+        }
+
+        return size++;
+    }
+
+    /**
+     * This method copies a token to the end of the buffer.
+     *
+     * @return The index of the token.
+     */
+    public int append(CoffeeToken token) {
+        CoffeeScriptLine line = token.getLineNumber();
+
+        return append(token.getType(), token.getValue(),
+            line.getFirstLine(), line.getFirstColumn(), line.getLastLine(), line.getLastColumn());
+    }
+
+    @Override
+    public boolean add(CoffeeToken token) {
+        append(token);
+        return true;
+    }
+
+    @Override
+    public void token(CoffeeType type, String value, int firstLine, int firstColumn, int lastLine, int lastColumn) {
+        append(type, value, firstLine, firstColumn, lastLine, lastColumn);
+    }
+
+    @Override
+    public CoffeeToken get(int index) {
+        checkIndex(index);
+
+        return new CoffeeToken(this, index);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public CoffeeType typeAt(int index) {
+        checkIndex(index);
+
+        return types.get(typeIdAt[index]);
+    }
+
+    public String valueAt(int index) {
+        checkIndex(index);
+
+        return values.get(valueIdAt[index]);
+    }
+
+    /**
+     * @return The id of the token's value. Two tokens in the same buffer have the same value id if and only if their
+     *         values are equal.
+     */
+    public int valueIdAt(int index) {
+        checkIndex(index);
+
+        return valueIdAt[index];
+    }
+
+    /**
+     * @return The {@link SymbolTable} id of the token's value if the token is an identifier. Otherwise, {@code -1}.
+     */
+    public int symbolAt(int index) {
+        checkIndex(index);
+
+        return CoffeeTokenType.Identifier == types.get(typeIdAt[index]) ? symbolIds[valueIdAt[index]] : -1;
+    }
+
+    public CoffeeScriptLine lineAt(int index) {
+        checkIndex(index);
+
+        long first = firstAt[index];
+        long last = lastAt[index];
+
+        return CoffeeScriptLine.lineFor(lineOf(first), columnOf(first), lineOf(last), columnOf(last));
+    }
+
+    /**
+     * This method returns the index of a token in this buffer.
+     *
+     * @param token The {@code CoffeeToken} to find.
+     *
+     * @return The index of the token, or {@code -1} if it isn't a view of this buffer.
+     */
+    public int indexOf(CoffeeToken token) {
+        return this == token.buffer ? token.index : -1;
+    }
+
+    private int idFor(CoffeeType type) {
+        Integer id = typeIds.get(type);
+        if (null == id) {
+            if (types.size() > Short.MAX_VALUE) {
+                throw new IllegalStateException("Too many token types in a single buffer.");
+            }
+
+            id = types.size();
+            typeIds.put(type, id);
+            types.add(type);
+        }
+
+        return id;
+    }
+
+    private int idFor(String value) {
+        Integer id = valueIds.get(value);
+        if (null == id) {
+            id = values.size();
+            valueIds.put(value, id);
+            values.add(value);
+
+            if (id == symbolIds.length) {
+                symbolIds = Arrays.copyOf(symbolIds, id * 2);
+            }
+
+            symbolIds[id] = -1;
+        }
+
+        return id;
+    }
+
+    private void grow() {
+        int capacity = typeIdAt.length * 2;
+
+        typeIdAt = Arrays.copyOf(typeIdAt, capacity);
+        valueIdAt = Arrays.copyOf(valueIdAt, capacity);
+        firstAt = Arrays.copyOf(firstAt, capacity);
+        lastAt = Arrays.copyOf(lastAt, capacity);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    private static long pack(int line, int column) {
+        return ((long) line << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    private static int lineOf(long location) {
+        return (int) (location >> 32);
+    }
+
+    private static int columnOf(long location) {
+        return (int) location;
+    }
+}
@@ -0,0 +1,55 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.io;
+
+import bolt.web.coffee.types.CoffeeType;
+
+/**
+ * Implementation prototype for a consumer of tokens as a {@link StreamingLexer} decodes them, in the order they appear
+ * in the source. The {@link TokenBuffer} is a sink which stores the tokens, while the sink returned by
+ * {@link bolt.web.coffee.tree.CoffeeTree#sinkFor(java.io.File)} builds the file's scopes as the tokens arrive.
+ *
+ * @author Matt Bolt
+ */
+public interface TokenSink {
+
+    /**
+     * This method accepts the next token.
+     *
+     * @param type The {@code CoffeeType} of the token.
+     *
+     * @param value The value of the token.
+     *
+     * @param firstLine The line the token starts on.
+     *
+     * @param firstColumn The column the token starts on.
+     *
+     * @param lastLine The line the token ends on.
+     *
+     * @param lastColumn The column the token ends on.
+     */
+    void token(CoffeeType type, String value, int firstLine, int firstColumn, int lastLine, int lastColumn);
+}
@@ -25,15 +25,8 @@
 
 package bolt.web.coffee.io.exporters;
 
-import bolt.web.coffee.dependency.CoffeeIdentifier;
 import bolt.web.coffee.io.Exporter;
 
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
-
 /**
  * This class should be used as the base class for {@code Exporter} implementations.
  * 
@@ -44,29 +37,4 @@ public abstract class AbstractExporter implements Exporter {
     public AbstractExporter() {
 
     }
-
-    protected List<CoffeeIdentifier> trimDuplicateFiles(List<CoffeeIdentifier> identifiers) {
-        List<CoffeeIdentifier> result = new ArrayList<CoffeeIdentifier>();
-        Set<String> usedFiles = new HashSet<String>();
-
-        for (CoffeeIdentifier identifier : identifiers) {
-            String file;
-
-            try {
-                file = identifier.getFile().getCanonicalPath();
-            }
-            catch (IOException e) {
-                // TODO: Throw an appropriate exception here?
-                e.printStackTrace();
-                continue;
-            }
-
-            if (!usedFiles.contains(file)) {
-                usedFiles.add(file);
-                result.add(identifier);
-            }
-        }
-
-        return result;
-    }
 }
@@ -25,16 +25,16 @@
 
 package bolt.web.coffee.io.exporters;
 
-import bolt.web.coffee.dependency.CoffeeIdentifier;
-import bolt.web.coffee.dependency.graph.DependencyGraph;
 import bolt.web.coffee.exceptions.ChainedExportException;
+import bolt.web.coffee.io.ExportContext;
 import bolt.web.coffee.io.Exporter;
 
 import java.util.ArrayList;
 import java.util.List;
 
 /**
- * This class executes multiple {@link Exporter} implementations serially using a copy of the input dependency graph.
+ * This class executes multiple {@link Exporter} implementations serially. Each exporter is handed the same
+ * {@link ExportContext}, so the graph is sorted at most once no matter how many exporters are chained.
  * 
  * @author Matt Bolt
  */
@@ -57,12 +57,12 @@ public class ChainedExporter implements Exporter {
     }
 
     @Override
-    public void export(DependencyGraph<CoffeeIdentifier> graph) {
+    public void export(ExportContext context) {
         List<Throwable> throwables = null;
 
         for (Exporter exporter : exporters) {
             try {
-                exporter.export(graph.copy());
+                exporter.export(context);
             }
             catch (RuntimeException e) {
                 if (null == throwables) {
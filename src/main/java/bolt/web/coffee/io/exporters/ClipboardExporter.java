@@ -25,15 +25,12 @@
 
 package bolt.web.coffee.io.exporters;
 
-import bolt.web.coffee.dependency.CoffeeIdentifier;
 import bolt.web.coffee.dependency.graph.CyclicDependencyException;
-import bolt.web.coffee.dependency.graph.DependencyGraph;
-import bolt.web.coffee.dependency.graph.GraphUtils;
+import bolt.web.coffee.io.ExportContext;
 
 import java.awt.*;
 import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.StringSelection;
-import java.io.IOException;
 import java.util.List;
 
 /**
@@ -54,30 +51,24 @@ public class ClipboardExporter extends AbstractExporter {
     }
 
     @Override
-    public void export(DependencyGraph<CoffeeIdentifier> graph) {
-        List<CoffeeIdentifier> identifiers;
+    public void export(ExportContext context) {
+        List<String> paths;
         try {
-            identifiers = GraphUtils.topologicalSort(graph);
+            paths = context.getFilePaths();
         }
         catch (CyclicDependencyException e) {
             throw new RuntimeException(e);
         }
 
-        List<CoffeeIdentifier> trimmed = trimDuplicateFiles(identifiers);
         StringBuilder builder = new StringBuilder();
 
-        for (CoffeeIdentifier identifier : trimmed) {
-            try {
-                String path = identifier.getFile().getCanonicalPath();
-                builder.append(path);
+        for (String path : paths) {
+            builder.append(path);
 
-                if (multiLine) {
-                    builder.append("\n");
-                } else {
-                    builder.append(" ");
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
+            if (multiLine) {
+                builder.append("\n");
+            } else {
+                builder.append(" ");
             }
         }
 
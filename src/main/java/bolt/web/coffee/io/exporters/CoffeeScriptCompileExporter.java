@@ -28,44 +28,78 @@ package bolt.web.coffee.io.exporters;
 import bolt.web.coffee.CoffeeGraphVersion;
 import bolt.web.coffee.dependency.CoffeeIdentifier;
 import bolt.web.coffee.dependency.graph.CyclicDependencyException;
-import bolt.web.coffee.dependency.graph.DependencyGraph;
-import bolt.web.coffee.dependency.graph.GraphUtils;
+import bolt.web.coffee.io.ExportContext;
 import bolt.web.coffee.util.CoffeeScript;
+import bolt.web.coffee.util.CompiledScriptCache;
 import bolt.web.coffee.util.FileHelper;
 
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * This {@link bolt.web.coffee.io.Exporter} implementation orders the dependencies, then executes a similar function to
  * {@code $ coffee --join <output> --compile <files>}
  *
+ * <p>
+ * When separate scopes are used, each file is compiled bare on its own, using the given number of threads, and the
+ * results are written in dependency order as they complete. Unless the output is bare, the whole output is then wrapped
+ * in a single security wrapper. A file compiled on its own can't see the top-level variables of the files before it,
+ * so a function assigning to one of them declares a new local variable instead, which is why the files are joined
+ * unless separate scopes are asked for. A compile error names the file it occurred in, with the line number relative
+ * to that file.
+ *
+ * <p>
+ * When a {@link CompiledScriptCache} is provided, the joined source is looked up as a whole, and is only passed to the
+ * compiler when it misses the cache, so the cache never changes the JavaScript generated. When using separate scopes,
+ * each file is looked up on its own, and only the files which miss the cache are passed to the compiler.
+ *
  * @author Matt Bolt
  */
 public class CoffeeScriptCompileExporter extends AbstractExporter {
 
     private final File outputFile;
     private final boolean bare;
+    private final int threads;
+    private final boolean separateScopes;
+    private final CompiledScriptCache cache;
 
     public CoffeeScriptCompileExporter(File outputFile) {
         this(outputFile, false);
     }
     public CoffeeScriptCompileExporter(File outputFile, boolean bare) {
+        this(outputFile, bare, 1, false);
+    }
+    public CoffeeScriptCompileExporter(File outputFile, boolean bare, int threads, boolean separateScopes) {
+        this(outputFile, bare, threads, separateScopes, null);
+    }
+    public CoffeeScriptCompileExporter(
+        File outputFile, boolean bare, int threads, boolean separateScopes, CompiledScriptCache cache) {
         this.outputFile = outputFile;
         this.bare = bare;
+        this.threads = Math.max(1, threads);
+        this.separateScopes = separateScopes;
+        this.cache = cache;
     }
 
     @Override
-    public void export(DependencyGraph<CoffeeIdentifier> graph) {
+    public void export(ExportContext context) {
         CoffeeScript coffeeScript = new CoffeeScript();
 
         // Process all of the identifiers and filter any duplicate files from identifier dependencies.
         List<CoffeeIdentifier> identifiers = null;
         try {
-            identifiers = trimDuplicateFiles( GraphUtils.topologicalSort(graph) );
+            identifiers = context.getFileOrder();
         }
         catch (CyclicDependencyException e) {
             throw new RuntimeException(e);
@@ -97,6 +131,16 @@ public class CoffeeScriptCompileExporter extends AbstractExporter {
             throw new RuntimeException(e);
         }
 
+        if (separateScopes) {
+            compileEachFile(coffeeScript, identifiers);
+        } else {
+            compileJoined(coffeeScript, identifiers);
+        }
+
+        System.out.println("CoffeeScript compiled successfully.");
+    }
+
+    private void compileJoined(CoffeeScript coffeeScript, List<CoffeeIdentifier> identifiers) {
         // Finally, compile each file in order and push the output to our file.
         BufferedWriter out = null;
         try {
@@ -113,10 +157,30 @@ public class CoffeeScriptCompileExporter extends AbstractExporter {
             System.out.println("Compiling CoffeeScript sources...");
 
             // Write CoffeeScript version and Coffee-Graph header used
+            String version = coffeeScript.getVersion();
             out.write( getHeader(coffeeScript) );
 
-            // Compile joined CoffeeScript source
-            String compiledJs = coffeeScript.compile(joinedCoffee.toString(), bare);
+            // Compile joined CoffeeScript source, unless the same joined source was compiled before
+            String joined = joinedCoffee.toString();
+            String compiledJs = null;
+            String key = null;
+
+            if (null != cache) {
+                key = cache.keyFor(joined, version, bare);
+                compiledJs = cache.get(key);
+            }
+
+            if (null == compiledJs) {
+                compiledJs = coffeeScript.compile(joined, bare);
+
+                if (null != cache) {
+                    cache.put(key, compiledJs);
+                    cache.trim();
+                }
+            } else {
+                System.out.println("Cached: joined CoffeeScript sources");
+            }
+
             out.write(compiledJs + "\n\n");
 
         } catch (IOException e) {
@@ -130,11 +194,112 @@ public class CoffeeScriptCompileExporter extends AbstractExporter {
                 e.printStackTrace();
             }
         }
+    }
 
-        System.out.println("CoffeeScript compiled successfully.");
+    private void compileEachFile(CoffeeScript coffeeScript, List<CoffeeIdentifier> identifiers) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        // Only a bounded number of files compile ahead of the one being written, which limits the output held in memory
+        Queue<Future<String>> pending = new ArrayDeque<Future<String>>();
+        Iterator<CoffeeIdentifier> sources = identifiers.iterator();
+
+        BufferedWriter out = null;
+        try {
+            out = new BufferedWriter(new FileWriter(outputFile));
+
+            System.out.println("Compiling CoffeeScript sources...");
+
+            // Write CoffeeScript version and Coffee-Graph header used
+            String version = coffeeScript.getVersion();
+            out.write( getHeader(coffeeScript) );
+
+            if (!bare) {
+                out.write("(function() {\n\n");
+            }
+
+            while (sources.hasNext() || !pending.isEmpty()) {
+                while (sources.hasNext() && pending.size() < threads * 2) {
+                    pending.add(executor.submit(compileTask(coffeeScript, version, sources.next().getFile())));
+                }
+
+                out.write(resultOf(pending.poll()) + "\n");
+            }
+
+            if (!bare) {
+                out.write("}).call(this);\n\n");
+            }
+
+            if (null != cache) {
+                cache.trim();
+            }
+
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            executor.shutdownNow();
+
+            try {
+                out.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            } catch (NullPointerException e) {
+                e.printStackTrace();
+            }
+        }
     }
 
+    private Callable<String> compileTask(final CoffeeScript coffeeScript, final String version, final File coffeeSource) {
+        return new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                String source = FileHelper.loadText(coffeeSource);
+                String key = null;
+
+                if (null != cache) {
+                    key = cache.keyFor(source, version, true);
+
+                    String cached = cache.get(key);
+                    if (null != cached) {
+                        System.out.println("Cached: " + coffeeSource.getName());
+                        return cached;
+                    }
+                }
 
+                System.out.println("Compiling: " + coffeeSource.getName());
+
+                String compiledJs;
+                try {
+                    compiledJs = coffeeScript.compile(source, true);
+                }
+                catch (RuntimeException e) {
+                    throw new RuntimeException("Could not compile " + coffeeSource.getPath() + ": " + e.getMessage());
+                }
+
+                if (null != cache) {
+                    cache.put(key, compiledJs);
+                }
+
+                return compiledJs;
+            }
+        };
+    }
+
+    private static String resultOf(Future<String> compiled) {
+        try {
+            return compiled.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw new RuntimeException(e.getCause());
+        }
+    }
 
     private String getHeader(CoffeeScript coffeeScript) {
         return "// [Dependencies Linked with CoffeeGraph v" + CoffeeGraphVersion.Version + "]\n" +
@@ -25,10 +25,9 @@
 
 package bolt.web.coffee.io.exporters;
 
-import bolt.web.coffee.dependency.CoffeeIdentifier;
 import bolt.web.coffee.dependency.graph.CyclicDependencyException;
-import bolt.web.coffee.dependency.graph.DependencyGraph;
 import bolt.web.coffee.dependency.graph.GraphUtils;
+import bolt.web.coffee.io.ExportContext;
 import bolt.web.coffee.io.Exporter;
 
 /**
@@ -39,11 +38,11 @@ import bolt.web.coffee.io.Exporter;
 public class DependencyTreeExporter implements Exporter {
 
     @Override
-    public void export(DependencyGraph<CoffeeIdentifier> graph) {
+    public void export(ExportContext context) {
         try {
             System.out.println("\nCoffee-Graph Object Dependency Tree");
             System.out.println("===================================");
-            GraphUtils.printDependencies(graph);
+            GraphUtils.printDependencies(context.getGraph(), context.getSortedIdentifiers());
             System.out.println("===================================");
         }
         catch (CyclicDependencyException e) {
@@ -25,12 +25,9 @@
 
 package bolt.web.coffee.io.exporters;
 
-import bolt.web.coffee.dependency.CoffeeIdentifier;
 import bolt.web.coffee.dependency.graph.CyclicDependencyException;
-import bolt.web.coffee.dependency.graph.DependencyGraph;
-import bolt.web.coffee.dependency.graph.GraphUtils;
+import bolt.web.coffee.io.ExportContext;
 
-import java.io.IOException;
 import java.util.List;
 
 import static java.lang.System.out;
@@ -53,28 +50,20 @@ public class ListFilesExporter extends AbstractExporter {
     }
 
     @Override
-    public void export(DependencyGraph<CoffeeIdentifier> graph) {
-        List<CoffeeIdentifier> identifiers;
+    public void export(ExportContext context) {
+        List<String> paths;
         try {
-            identifiers = GraphUtils.topologicalSort(graph);
+            paths = context.getFilePaths();
         }
         catch (CyclicDependencyException e) {
             throw new RuntimeException(e);
         }
 
-        List<CoffeeIdentifier> trimmed = trimDuplicateFiles(identifiers);
-
-        for (CoffeeIdentifier identifier : trimmed) {
-            try {
-                String path = identifier.getFile().getCanonicalPath();
-
-                if (multiLine) {
-                    out.println(path);
-                } else {
-                    out.print(path + ' ');
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
+        for (String path : paths) {
+            if (multiLine) {
+                out.println(path);
+            } else {
+                out.print(path + ' ');
             }
         }
     }
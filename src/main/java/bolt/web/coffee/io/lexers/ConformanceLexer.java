@@ -0,0 +1,129 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.io.lexers;
+
+import bolt.web.coffee.io.CoffeeToken;
+import bolt.web.coffee.io.Lexer;
+import bolt.web.coffee.util.FileHelper;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link Lexer} which runs two lexers over the same source and reports any place their token streams differ. The
+ * tokens from the reference lexer are always the ones returned, so a build run in this mode behaves as if it was only
+ * using the reference.
+ *
+ * <p>This is used to check the {@link JavaCoffeeScriptLexer} against the lexer inside the CoffeeScript compiler.</p>
+ *
+ * @author Matt Bolt
+ */
+public class ConformanceLexer implements Lexer {
+
+    private final Lexer reference;
+    private final Lexer candidate;
+    private final PrintStream report;
+
+    public ConformanceLexer(Lexer reference, Lexer candidate) {
+        this(reference, candidate, System.err);
+    }
+
+    public ConformanceLexer(Lexer reference, Lexer candidate, PrintStream report) {
+        this.reference = reference;
+        this.candidate = candidate;
+        this.report = report;
+    }
+
+    @Override
+    public List<CoffeeToken> tokenize(File coffeeFile) {
+        return tokenize(coffeeFile.getPath(), FileHelper.loadText(coffeeFile));
+    }
+
+    @Override
+    public List<CoffeeToken> tokenize(String coffeeString) {
+        return tokenize("<string>", coffeeString);
+    }
+
+    private List<CoffeeToken> tokenize(String sourceName, String coffeeString) {
+        List<CoffeeToken> expected = reference.tokenize(coffeeString);
+
+        List<String> differences;
+        try {
+            differences = compare(expected, candidate.tokenize(coffeeString));
+        }
+        catch (RuntimeException e) {
+            differences = new ArrayList<String>();
+            differences.add("lexer failed with: " + e.getMessage());
+        }
+
+        for (String difference : differences) {
+            report.println("[CoffeeGraph Lexer Conformance: " + sourceName + " " + difference + "]");
+        }
+
+        return expected;
+    }
+
+    /**
+     * Compares two token streams by type, value and location, returning a description of each difference found. Only
+     * the first difference in type or value is reported, since everything after it is usually shifted.
+     *
+     * @param expected The tokens from the reference lexer.
+     * @param actual The tokens from the lexer being checked.
+     *
+     * @return A {@code List} of differences, which is empty if the streams match.
+     */
+    public static List<String> compare(List<CoffeeToken> expected, List<CoffeeToken> actual) {
+        List<String> differences = new ArrayList<String>();
+
+        int count = Math.min(expected.size(), actual.size());
+        for (int i = 0; i < count; ++i) {
+            CoffeeToken e = expected.get(i);
+            CoffeeToken a = actual.get(i);
+
+            if (!e.getType().getType().equals(a.getType().getType()) || !e.getValue().equals(a.getValue())) {
+                differences.add("token " + i + " expected " + describe(e) + " but was " + describe(a));
+                return differences;
+            }
+
+            if (!e.getLineNumber().equals(a.getLineNumber())) {
+                differences.add("token " + i + " " + describe(e) + " expected at " + e.getLineNumber()
+                    + " but was at " + a.getLineNumber());
+            }
+        }
+
+        if (expected.size() != actual.size()) {
+            differences.add("expected " + expected.size() + " tokens but was " + actual.size());
+        }
+
+        return differences;
+    }
+
+    private static String describe(CoffeeToken token) {
+        return token.getType().getType() + " '" + token.getValue().replace("\n", "\\n") + "'";
+    }
+}
@@ -0,0 +1,98 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.io.lexers;
+
+import bolt.web.coffee.io.CoffeeToken;
+import bolt.web.coffee.io.Lexer;
+import bolt.web.coffee.io.StreamingLexer;
+import bolt.web.coffee.io.TokenBuffer;
+import bolt.web.coffee.io.TokenSink;
+import bolt.web.coffee.types.CoffeeScriptType;
+import bolt.web.coffee.types.CoffeeType;
+import bolt.web.coffee.types.UndefinedCoffeeType;
+import bolt.web.coffee.util.FileHelper;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * A {@link Lexer} implementation which tokenizes CoffeeScript in plain Java, without starting up the CoffeeScript
+ * compiler in Rhino. It emits the same token stream as {@link bolt.web.coffee.io.CoffeeScriptLexer}, which can be
+ * verified using the {@link ConformanceLexer}.
+ *
+ * <p>This implementation follows the lexer and rewriter from CoffeeScript 1.6.1, the version bundled with
+ * coffee-graph.</p>
+ *
+ * <p>The tokens are either returned in a {@link TokenBuffer} or streamed to a {@link TokenSink}. The rewriter needs
+ * the whole token list, so tokens are streamed once it's finished, releasing each one as it's passed on.</p>
+ *
+ * @author Matt Bolt
+ */
+public class JavaCoffeeScriptLexer implements StreamingLexer {
+
+    public JavaCoffeeScriptLexer() {
+
+    }
+
+    @Override
+    public List<CoffeeToken> tokenize(File coffeeFile) {
+        return tokenize(FileHelper.loadText(coffeeFile));
+    }
+
+    @Override
+    public List<CoffeeToken> tokenize(String coffeeString) {
+        List<LexerToken> lexerTokens = new TokenScanner(coffeeString).tokenize(true);
+        TokenBuffer tokens = new TokenBuffer(lexerTokens.size());
+        emit(lexerTokens, tokens);
+
+        return tokens;
+    }
+
+    @Override
+    public void tokenize(File coffeeFile, TokenSink sink) {
+        tokenize(FileHelper.loadText(coffeeFile), sink);
+    }
+
+    @Override
+    public void tokenize(String coffeeString, TokenSink sink) {
+        emit(new TokenScanner(coffeeString).tokenize(true), sink);
+    }
+
+    private static void emit(List<LexerToken> lexerTokens, TokenSink sink) {
+        for (int i = 0; i < lexerTokens.size(); ++i) {
+            LexerToken token = lexerTokens.set(i, null);
+
+            sink.token(typeFor(token.tag), token.value,
+                token.firstLine, token.firstColumn, token.lastLine, token.lastColumn);
+        }
+    }
+
+    private static CoffeeType typeFor(String tag) {
+        CoffeeType type = CoffeeScriptType.typeFor(tag);
+
+        return type == CoffeeScriptType.NoType ? UndefinedCoffeeType.typeFor(tag) : type;
+    }
+}
@@ -0,0 +1,83 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.io.lexers;
+
+/**
+ * A mutable token used while lexing and rewriting. This mirrors the {@code [tag, value, location]} arrays the
+ * CoffeeScript lexer builds, along with the flags it attaches to them ({@code spaced}, {@code newLine}, etc).
+ *
+ * @author Matt Bolt
+ */
+final class LexerToken {
+
+    String tag;
+    String value;
+
+    /**
+     * Set for identifiers that are reserved words, but are allowed since they're used as a property name.
+     */
+    boolean reserved;
+
+    boolean spaced;
+    boolean newLine;
+    boolean generated;
+    boolean explicit;
+    boolean fromThen;
+
+    boolean located;
+    int firstLine;
+    int firstColumn;
+    int lastLine;
+    int lastColumn;
+
+    LexerToken(String tag, String value) {
+        this.tag = tag;
+        this.value = value;
+    }
+
+    static LexerToken generated(String tag, String value) {
+        LexerToken token = new LexerToken(tag, value);
+        token.generated = true;
+        return token;
+    }
+
+    void locate(int firstLine, int firstColumn, int lastLine, int lastColumn) {
+        this.located = true;
+        this.firstLine = firstLine;
+        this.firstColumn = firstColumn;
+        this.lastLine = lastLine;
+        this.lastColumn = lastColumn;
+    }
+
+    boolean is(String tag) {
+        return tag.equals(this.tag);
+    }
+
+    @Override
+    public String toString() {
+        return "[" + tag + ", " + value + ", " + firstLine + ":" + firstColumn + "-" + lastLine + ":" + lastColumn + "]";
+    }
+}
@@ -0,0 +1,127 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.io.lexers;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A {@code List} backed by a gap buffer. The rewriter inserts and removes tokens close to where it's scanning, which
+ * costs a shift of the whole tail with an {@code ArrayList}, but only a move of the gap here.
+ *
+ * @author Matt Bolt
+ */
+final class TokenGapList extends AbstractList<LexerToken> implements RandomAccess {
+
+    private LexerToken[] elements;
+    private int gapStart;
+    private int gapEnd;
+
+    TokenGapList(List<LexerToken> tokens) {
+        elements = tokens.toArray(new LexerToken[tokens.size() + 16]);
+        gapStart = tokens.size();
+        gapEnd = elements.length;
+    }
+
+    @Override
+    public int size() {
+        return elements.length - (gapEnd - gapStart);
+    }
+
+    @Override
+    public LexerToken get(int index) {
+        checkIndex(index, size());
+        return elements[index < gapStart ? index : index + (gapEnd - gapStart)];
+    }
+
+    @Override
+    public LexerToken set(int index, LexerToken token) {
+        checkIndex(index, size());
+        int position = index < gapStart ? index : index + (gapEnd - gapStart);
+        LexerToken previous = elements[position];
+        elements[position] = token;
+        return previous;
+    }
+
+    @Override
+    public void add(int index, LexerToken token) {
+        checkIndex(index, size() + 1);
+        if (gapStart == gapEnd) {
+            grow();
+        }
+
+        moveGap(index);
+        elements[gapStart++] = token;
+        modCount++;
+    }
+
+    @Override
+    public LexerToken remove(int index) {
+        checkIndex(index, size());
+        moveGap(index);
+
+        LexerToken removed = elements[gapEnd];
+        elements[gapEnd++] = null;
+        modCount++;
+        return removed;
+    }
+
+    private void moveGap(int index) {
+        if (index < gapStart) {
+            int count = gapStart - index;
+            System.arraycopy(elements, index, elements, gapEnd - count, count);
+            Arrays.fill(elements, index, Math.min(gapStart, gapEnd - count), null);
+            gapStart -= count;
+            gapEnd -= count;
+        }
+        else if (index > gapStart) {
+            int count = index - gapStart;
+            System.arraycopy(elements, gapEnd, elements, gapStart, count);
+            Arrays.fill(elements, Math.max(gapEnd, gapStart + count), gapEnd + count, null);
+            gapStart += count;
+            gapEnd += count;
+        }
+    }
+
+    private void grow() {
+        int tail = elements.length - gapEnd;
+        LexerToken[] grown = new LexerToken[Math.max(16, elements.length * 2)];
+
+        System.arraycopy(elements, 0, grown, 0, gapStart);
+        System.arraycopy(elements, gapEnd, grown, grown.length - tail, tail);
+
+        gapEnd = grown.length - tail;
+        elements = grown;
+    }
+
+    private static void checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
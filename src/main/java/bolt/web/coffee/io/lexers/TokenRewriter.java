@@ -0,0 +1,638 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.io.lexers;
+
+import bolt.web.coffee.exceptions.CoffeeSyntaxException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A port of the CoffeeScript 1.6.1 {@code Rewriter}. The rewriter takes the raw token stream from the lexer and
+ * inserts the implicit parentheses, braces and indentation the grammar relies on. Each pass is kept in the same order
+ * and shape as the original so that the two can be compared line for line.
+ *
+ * @author Matt Bolt
+ */
+final class TokenRewriter {
+
+    private static final String[][] BALANCED_PAIRS = {
+        { "(", ")" },
+        { "[", "]" },
+        { "{", "}" },
+        { "INDENT", "OUTDENT" },
+        { "CALL_START", "CALL_END" },
+        { "PARAM_START", "PARAM_END" },
+        { "INDEX_START", "INDEX_END" }
+    };
+
+    static final Map<String, String> INVERSES = new HashMap<String, String>();
+    static final Set<String> EXPRESSION_START = new HashSet<String>();
+    static final Set<String> EXPRESSION_END = new HashSet<String>();
+
+    static {
+        for (String[] pair : BALANCED_PAIRS) {
+            EXPRESSION_START.add(pair[0]);
+            EXPRESSION_END.add(pair[1]);
+            INVERSES.put(pair[1], pair[0]);
+            INVERSES.put(pair[0], pair[1]);
+        }
+    }
+
+    private static final Set<String> EXPRESSION_CLOSE = union(
+        setOf("CATCH", "WHEN", "ELSE", "FINALLY"), EXPRESSION_END);
+
+    private static final Set<String> IMPLICIT_FUNC = setOf(
+        "IDENTIFIER", "SUPER", ")", "CALL_END", "]", "INDEX_END", "@", "THIS");
+
+    private static final Set<String> IMPLICIT_CALL = setOf(
+        "IDENTIFIER", "NUMBER", "STRING", "JS", "REGEX", "NEW", "PARAM_START", "CLASS", "IF", "TRY", "SWITCH", "THIS",
+        "BOOL", "NULL", "UNDEFINED", "UNARY", "SUPER", "@", "->", "=>", "[", "(", "{", "--", "++");
+
+    private static final Set<String> IMPLICIT_UNSPACED_CALL = setOf("+", "-");
+
+    private static final Set<String> IMPLICIT_END = setOf(
+        "POST_IF", "FOR", "WHILE", "UNTIL", "WHEN", "BY", "LOOP", "TERMINATOR");
+
+    private static final Set<String> SINGLE_LINERS = setOf("ELSE", "->", "=>", "TRY", "FINALLY", "THEN");
+
+    private static final Set<String> SINGLE_CLOSERS = setOf(
+        "TERMINATOR", "CATCH", "FINALLY", "ELSE", "OUTDENT", "LEADING_WHEN");
+
+    private static final Set<String> LINEBREAKS = setOf("TERMINATOR", "INDENT", "OUTDENT");
+
+    private static final Set<String> CONTROL_STARTS = setOf("IF", "TRY", "FINALLY", "CATCH", "CLASS", "SWITCH");
+
+    private static final Set<String> INDENT_KEEPS_CALL = setOf("=>", "->", "[", "(", ",", "{", "TRY", "ELSE", "=");
+
+    private static final Set<String> CHAIN_ACCESSORS = setOf(".", "?.", "::", "?::");
+
+    private static final Set<String> IMPLICIT_CALL_BLOCKERS = setOf(
+        "CLASS", "EXTENDS", "IF", "CATCH", "SWITCH", "LEADING_WHEN", "FOR", "WHILE", "UNTIL");
+
+    private static final Set<String> CATCH_FOLLOWERS = setOf("OUTDENT", "TERMINATOR", "FINALLY");
+
+    private static final Set<String> AT = setOf("@");
+    private static final Set<String> COLON = setOf(":");
+    private static final Set<String> INDENT = setOf("INDENT");
+
+    private List<LexerToken> tokens;
+
+    /**
+     * Rewrites the token stream in place and returns it.
+     */
+    List<LexerToken> rewrite(List<LexerToken> tokens) {
+        this.tokens = new TokenGapList(tokens);
+
+        removeLeadingNewlines();
+        removeMidExpressionNewlines();
+        closeOpenCalls();
+        closeOpenIndexes();
+        addImplicitIndentation();
+        tagPostfixConditionals();
+        addImplicitBracesAndParens();
+        addLocationDataToGeneratedTokens();
+
+        return this.tokens;
+    }
+
+    /**
+     * Each scanner returns the number of tokens to move forward, which may be zero or negative when tokens were
+     * inserted or removed behind the cursor.
+     */
+    private interface Scanner {
+        int scan(LexerToken token, int i);
+    }
+
+    /**
+     * A condition and action pair used by {@link TokenRewriter#detectEnd(int, EndDetector)}.
+     */
+    private interface EndDetector {
+        boolean isEnd(LexerToken token, int i);
+
+        void onEnd(LexerToken token, int i);
+    }
+
+    private void scanTokens(Scanner scanner) {
+        int i = 0;
+        while (i < tokens.size()) {
+            i += scanner.scan(tokens.get(i), i);
+        }
+    }
+
+    private void detectEnd(int i, EndDetector detector) {
+        int levels = 0;
+        while (i < tokens.size()) {
+            LexerToken token = tokens.get(i);
+            if (levels == 0 && detector.isEnd(token, i)) {
+                detector.onEnd(token, i);
+                return;
+            }
+            if (levels < 0) {
+                detector.onEnd(token, i - 1);
+                return;
+            }
+            if (EXPRESSION_START.contains(token.tag)) {
+                levels += 1;
+            }
+            else if (EXPRESSION_END.contains(token.tag)) {
+                levels -= 1;
+            }
+            i += 1;
+        }
+    }
+
+    private void removeLeadingNewlines() {
+        int count = 0;
+        while (count < tokens.size() && tokens.get(count).is("TERMINATOR")) {
+            count++;
+        }
+        if (count > 0) {
+            tokens.subList(0, count).clear();
+        }
+    }
+
+    private void removeMidExpressionNewlines() {
+        scanTokens(new Scanner() {
+            public int scan(LexerToken token, int i) {
+                if (token.is("TERMINATOR") && EXPRESSION_CLOSE.contains(tag(i + 1))) {
+                    tokens.remove(i);
+                    return 0;
+                }
+                return 1;
+            }
+        });
+    }
+
+    private void closeOpenCalls() {
+        final EndDetector detector = new EndDetector() {
+            public boolean isEnd(LexerToken token, int i) {
+                return token.is(")") || token.is("CALL_END") || (token.is("OUTDENT") && ")".equals(tag(i - 1)));
+            }
+
+            public void onEnd(LexerToken token, int i) {
+                tokens.get(token.is("OUTDENT") ? i - 1 : i).tag = "CALL_END";
+            }
+        };
+
+        scanTokens(new Scanner() {
+            public int scan(LexerToken token, int i) {
+                if (token.is("CALL_START")) {
+                    detectEnd(i + 1, detector);
+                }
+                return 1;
+            }
+        });
+    }
+
+    private void closeOpenIndexes() {
+        final EndDetector detector = new EndDetector() {
+            public boolean isEnd(LexerToken token, int i) {
+                return token.is("]") || token.is("INDEX_END");
+            }
+
+            public void onEnd(LexerToken token, int i) {
+                token.tag = "INDEX_END";
+            }
+        };
+
+        scanTokens(new Scanner() {
+            public int scan(LexerToken token, int i) {
+                if (token.is("INDEX_START")) {
+                    detectEnd(i + 1, detector);
+                }
+                return 1;
+            }
+        });
+    }
+
+    /**
+     * Matches the tag sequence starting at {@code i}, skipping over any here-comments. A {@code null} pattern entry
+     * matches any tag.
+     */
+    private boolean matchTags(int i, Set<?>... pattern) {
+        int fuzz = 0;
+        for (int j = 0; j < pattern.length; ++j) {
+            while ("HERECOMMENT".equals(tag(i + j + fuzz))) {
+                fuzz += 2;
+            }
+            if (null == pattern[j]) {
+                continue;
+            }
+            String tag = tag(i + j + fuzz);
+            if (null == tag || !pattern[j].contains(tag)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean looksObjectish(int j) {
+        return matchTags(j, AT, null, COLON) || matchTags(j, null, COLON);
+    }
+
+    private boolean findTagsBackwards(int i, Set<String> tags) {
+        List<String> backStack = new ArrayList<String>();
+        while (i >= 0 && (!backStack.isEmpty() || (!tags.contains(tag(i))
+                && (!EXPRESSION_START.contains(tag(i)) || tokens.get(i).generated)
+                && !LINEBREAKS.contains(tag(i)))))
+        {
+            if (EXPRESSION_END.contains(tag(i))) {
+                backStack.add(tag(i));
+            }
+            if (EXPRESSION_START.contains(tag(i)) && !backStack.isEmpty()) {
+                backStack.remove(backStack.size() - 1);
+            }
+            i -= 1;
+        }
+        return tags.contains(tag(i));
+    }
+
+    /**
+     * An entry on the implicit call/object stack. Entries created by the rewriter itself are marked as {@code ours}.
+     */
+    private static final class StackEntry {
+        final String tag;
+        final int index;
+        final boolean ours;
+        boolean sameLine;
+        final boolean startsLine;
+
+        StackEntry(String tag, int index) {
+            this(tag, index, false, false, false);
+        }
+
+        StackEntry(String tag, int index, boolean ours, boolean sameLine, boolean startsLine) {
+            this.tag = tag;
+            this.index = index;
+            this.ours = ours;
+            this.sameLine = sameLine;
+            this.startsLine = startsLine;
+        }
+    }
+
+    /**
+     * Inserts the implicit parentheses for calls without them, and the implicit braces for objects without them. This
+     * is the state machine from the original rewriter, with its closures lifted into methods on a cursor object.
+     */
+    private void addImplicitBracesAndParens() {
+        final List<StackEntry> stack = new ArrayList<StackEntry>();
+
+        scanTokens(new Scanner() {
+            private int i;
+
+            private StackEntry stackTop() {
+                return stack.isEmpty() ? null : stack.get(stack.size() - 1);
+            }
+
+            private StackEntry pop() {
+                return stack.isEmpty() ? null : stack.remove(stack.size() - 1);
+            }
+
+            private boolean inImplicit() {
+                StackEntry top = stackTop();
+                return null != top && top.ours;
+            }
+
+            private boolean inImplicitCall() {
+                return inImplicit() && "(".equals(stackTop().tag);
+            }
+
+            private boolean inImplicitObject() {
+                return inImplicit() && "{".equals(stackTop().tag);
+            }
+
+            private boolean inImplicitControl() {
+                // The original checks the function reference rather than calling it, so only the tag matters here.
+                StackEntry top = stackTop();
+                return null != top && "CONTROL".equals(top.tag);
+            }
+
+            private void startImplicitCall(int index) {
+                stack.add(new StackEntry("(", index, true, false, false));
+                tokens.add(index, LexerToken.generated("CALL_START", "("));
+            }
+
+            private void endImplicitCall() {
+                pop();
+                tokens.add(i, LexerToken.generated("CALL_END", ")"));
+                i += 1;
+            }
+
+            private void startImplicitObject(int index, boolean startsLine) {
+                stack.add(new StackEntry("{", index, true, true, startsLine));
+                tokens.add(index, LexerToken.generated("{", "{"));
+            }
+
+            private void endImplicitObject(int index) {
+                pop();
+                tokens.add(index, LexerToken.generated("}", "}"));
+                i += 1;
+            }
+
+            public int scan(LexerToken token, int index) {
+                i = index;
+                int startIdx = index;
+
+                String tag = token.tag;
+                String prevTag = i > 0 ? tokens.get(i - 1).tag : null;
+                String nextTag = i < tokens.size() - 1 ? tokens.get(i + 1).tag : null;
+
+                if (inImplicitCall() && CONTROL_STARTS.contains(tag)) {
+                    stack.add(new StackEntry("CONTROL", i, true, false, false));
+                    return i - startIdx + 1;
+                }
+
+                if ("INDENT".equals(tag) && inImplicit()) {
+                    if (!INDENT_KEEPS_CALL.contains(prevTag)) {
+                        while (inImplicitCall()) {
+                            endImplicitCall();
+                        }
+                    }
+                    if (inImplicitControl()) {
+                        pop();
+                    }
+                    stack.add(new StackEntry(tag, i));
+                    return i - startIdx + 1;
+                }
+
+                if (EXPRESSION_START.contains(tag)) {
+                    stack.add(new StackEntry(tag, i));
+                    return i - startIdx + 1;
+                }
+
+                if (EXPRESSION_END.contains(tag)) {
+                    while (inImplicit()) {
+                        if (inImplicitCall()) {
+                            endImplicitCall();
+                        }
+                        else if (inImplicitObject()) {
+                            endImplicitObject(i);
+                        }
+                        else {
+                            pop();
+                        }
+                    }
+                    pop();
+                }
+
+                if (((IMPLICIT_FUNC.contains(tag) && token.spaced) || ("?".equals(tag) && i > 0 && !tokens.get(i - 1).spaced))
+                    && (IMPLICIT_CALL.contains(nextTag) || (IMPLICIT_UNSPACED_CALL.contains(nextTag)
+                        && !tokens.get(i + 1).spaced && !tokens.get(i + 1).newLine)))
+                {
+                    if ("?".equals(tag)) {
+                        token.tag = "FUNC_EXIST";
+                    }
+                    startImplicitCall(i + 1);
+                    return i - startIdx + 2;
+                }
+
+                if (matchTags(i, IMPLICIT_FUNC, INDENT, null, COLON)
+                    && !findTagsBackwards(i, IMPLICIT_CALL_BLOCKERS))
+                {
+                    startImplicitCall(i + 1);
+                    stack.add(new StackEntry("INDENT", i + 2));
+                    return i - startIdx + 3;
+                }
+
+                if (":".equals(tag)) {
+                    int s = "@".equals(tag(i - 2)) ? i - 2 : i - 1;
+                    while ("HERECOMMENT".equals(tag(s - 2))) {
+                        s -= 2;
+                    }
+
+                    if (s < 0) {
+                        throw new CoffeeSyntaxException("unexpected : on line " + (token.firstLine + 1));
+                    }
+
+                    boolean startsLine = s == 0 || LINEBREAKS.contains(tag(s - 1)) || tokens.get(s - 1).newLine;
+
+                    StackEntry top = stackTop();
+                    if (null != top) {
+                        if (("{".equals(top.tag) || ("INDENT".equals(top.tag) && "{".equals(tag(top.index - 1))))
+                            && (startsLine || ",".equals(tag(s - 1)) || "{".equals(tag(s - 1))))
+                        {
+                            return i - startIdx + 1;
+                        }
+                    }
+
+                    startImplicitObject(s, startsLine);
+                    return i - startIdx + 2;
+                }
+
+                if ("OUTDENT".equals(prevTag) && inImplicitCall() && CHAIN_ACCESSORS.contains(tag)) {
+                    endImplicitCall();
+                    return i - startIdx + 1;
+                }
+
+                if (inImplicitObject() && LINEBREAKS.contains(tag)) {
+                    stackTop().sameLine = false;
+                }
+
+                if (IMPLICIT_END.contains(tag)) {
+                    while (inImplicit()) {
+                        StackEntry top = stackTop();
+                        if (inImplicitCall() && !",".equals(prevTag)) {
+                            endImplicitCall();
+                        }
+                        else if (inImplicitObject() && top.sameLine && !top.startsLine) {
+                            endImplicitObject(i);
+                        }
+                        else if (inImplicitObject() && "TERMINATOR".equals(tag) && !",".equals(prevTag)
+                            && !(top.startsLine && looksObjectish(i + 1)))
+                        {
+                            endImplicitObject(i);
+                        }
+                        else {
+                            break;
+                        }
+                    }
+                }
+
+                if (",".equals(tag) && !looksObjectish(i + 1) && inImplicitObject()
+                    && (!"TERMINATOR".equals(nextTag) || !looksObjectish(i + 2)))
+                {
+                    int offset = "OUTDENT".equals(nextTag) ? 1 : 0;
+                    while (inImplicitObject()) {
+                        endImplicitObject(i + offset);
+                    }
+                }
+
+                return i - startIdx + 1;
+            }
+        });
+    }
+
+    /**
+     * Generated tokens have no location of their own, so they take the end of the previous token.
+     */
+    private void addLocationDataToGeneratedTokens() {
+        scanTokens(new Scanner() {
+            public int scan(LexerToken token, int i) {
+                if (token.located || !(token.generated || token.explicit)) {
+                    return 1;
+                }
+
+                if (i > 0 && tokens.get(i - 1).located) {
+                    LexerToken previous = tokens.get(i - 1);
+                    token.locate(previous.lastLine, previous.lastColumn, previous.lastLine, previous.lastColumn);
+                }
+                else {
+                    token.locate(0, 0, 0, 0);
+                }
+                return 1;
+            }
+        });
+    }
+
+    /**
+     * Adds the indentation for single line blocks such as {@code if a then b} or {@code -> a}, which the grammar
+     * expects to be wrapped in an {@code INDENT}/{@code OUTDENT} pair.
+     */
+    private void addImplicitIndentation() {
+        final String[] starter = new String[1];
+        final LexerToken[] outdent = new LexerToken[1];
+
+        final EndDetector detector = new EndDetector() {
+            public boolean isEnd(LexerToken token, int i) {
+                return !";".equals(token.value) && SINGLE_CLOSERS.contains(token.tag)
+                    && !(token.is("ELSE") && !"IF".equals(starter[0]) && !"THEN".equals(starter[0]));
+            }
+
+            public void onEnd(LexerToken token, int i) {
+                tokens.add(",".equals(tag(i - 1)) ? i - 1 : i, outdent[0]);
+            }
+        };
+
+        scanTokens(new Scanner() {
+            public int scan(LexerToken token, int i) {
+                String tag = token.tag;
+
+                if ("TERMINATOR".equals(tag) && "THEN".equals(tag(i + 1))) {
+                    tokens.remove(i);
+                    return 0;
+                }
+
+                if ("ELSE".equals(tag) && !"OUTDENT".equals(tag(i - 1))) {
+                    tokens.addAll(i, indentation(false));
+                    return 2;
+                }
+
+                if ("CATCH".equals(tag) && CATCH_FOLLOWERS.contains(tag(i + 2))) {
+                    tokens.addAll(i + 2, indentation(false));
+                    return 4;
+                }
+
+                if (SINGLE_LINERS.contains(tag) && !"INDENT".equals(tag(i + 1))
+                    && !("ELSE".equals(tag) && "IF".equals(tag(i + 1))))
+                {
+                    starter[0] = tag;
+
+                    List<LexerToken> pair = indentation(true);
+                    LexerToken indent = pair.get(0);
+                    outdent[0] = pair.get(1);
+                    if ("THEN".equals(tag)) {
+                        indent.fromThen = true;
+                    }
+
+                    tokens.add(i + 1, indent);
+                    detectEnd(i + 2, detector);
+                    if ("THEN".equals(tag)) {
+                        tokens.remove(i);
+                    }
+                    return 1;
+                }
+
+                return 1;
+            }
+        });
+    }
+
+    /**
+     * Tags postfix conditionals as such, so the parser can tell {@code a if b} from a leading {@code if}.
+     */
+    private void tagPostfixConditionals() {
+        final LexerToken[] original = new LexerToken[1];
+
+        final EndDetector detector = new EndDetector() {
+            public boolean isEnd(LexerToken token, int i) {
+                return token.is("TERMINATOR") || token.is("INDENT");
+            }
+
+            public void onEnd(LexerToken token, int i) {
+                if (!token.is("INDENT") || (token.generated && !token.fromThen)) {
+                    original[0].tag = "POST_" + original[0].tag;
+                }
+            }
+        };
+
+        scanTokens(new Scanner() {
+            public int scan(LexerToken token, int i) {
+                if (!token.is("IF")) {
+                    return 1;
+                }
+
+                original[0] = token;
+                detectEnd(i + 1, detector);
+                return 1;
+            }
+        });
+    }
+
+    private static List<LexerToken> indentation(boolean implicit) {
+        LexerToken indent = new LexerToken("INDENT", "2");
+        LexerToken outdent = new LexerToken("OUTDENT", "2");
+
+        if (implicit) {
+            indent.generated = outdent.generated = true;
+        }
+        else {
+            indent.explicit = outdent.explicit = true;
+        }
+
+        return Arrays.asList(indent, outdent);
+    }
+
+    private String tag(int i) {
+        return i >= 0 && i < tokens.size() ? tokens.get(i).tag : null;
+    }
+
+    static Set<String> setOf(String... values) {
+        return Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(values)));
+    }
+
+    static Set<String> union(Set<String> first, Set<String> second) {
+        Set<String> result = new HashSet<String>(first);
+        result.addAll(second);
+        return Collections.unmodifiableSet(result);
+    }
+}
@@ -0,0 +1,1292 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.io.lexers;
+
+import bolt.web.coffee.exceptions.CoffeeSyntaxException;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static bolt.web.coffee.io.lexers.TokenRewriter.INVERSES;
+import static bolt.web.coffee.io.lexers.TokenRewriter.setOf;
+import static bolt.web.coffee.io.lexers.TokenRewriter.union;
+
+/**
+ * A port of the CoffeeScript 1.6.1 {@code Lexer}. It scans the source one token at a time, trying each kind of token
+ * in the same order as the original, and records the same location data.
+ *
+ * <p>The original works by repeatedly slicing the remaining source into a "chunk". Here the chunk is represented by
+ * an offset into the source, patterns are matched against a region of the source, and line/column positions are
+ * resolved against an index of newline positions, so tokenizing stays linear in the size of the file.</p>
+ *
+ * @author Matt Bolt
+ */
+final class TokenScanner {
+
+    /**
+     * Marks a length that the original leaves {@code undefined}, which resolves to the end of the chunk.
+     */
+    private static final int UNDEFINED = Integer.MIN_VALUE;
+
+    // JavaScript's \s is wider than java.util.regex's, so the character classes are spelled out.
+    private static final String BLANK = "\\t\\u000B\\f\\r \\u00A0\\u1680\\u180E\\u2000-\\u200A\\u2028\\u2029\\u202F\\u205F\\u3000\\uFEFF";
+    private static final String SPACE = "[\\n" + BLANK + "]";
+    private static final String HSPACE = "[" + BLANK + "]";
+    private static final String DOT = "[^\\n\\r\\u2028\\u2029]";
+
+    private static final Pattern NUMBER = Pattern.compile(
+        "0b[01]+|0o[0-7]+|0x[\\da-f]+|\\d*\\.?\\d+(?:e[+-]?\\d+)?", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern HEREDOC = Pattern.compile(
+        "(\"\"\"|''')([\\s\\S]*?)(?:\\n" + HSPACE + "*)?\\1");
+
+    private static final Pattern OPERATOR = Pattern.compile(
+        "(?:[-=]>|[-+*/%<>&|^!?=]=|>>>=?|([-+:])\\1|([&|<>])\\2=?|\\?(\\.|::)|\\.{2,3})");
+
+    // The original closes with (?:###)$, but Rhino only matches the first character of a group like that when it
+    // starts an alternative, so a single # at the very end of the source also closes the comment.
+    private static final Pattern HERECOMMENT = Pattern.compile(
+        "###([^#][\\s\\S]*?)(?:###" + HSPACE + "*|#\\z)");
+
+    private static final Pattern SIMPLESTR = Pattern.compile(
+        "'[^\\\\']*(?:\\\\" + DOT + "[^\\\\']*)*'");
+
+    private static final Pattern JSTOKEN = Pattern.compile(
+        "`[^\\\\`]*(?:\\\\" + DOT + "[^\\\\`]*)*`");
+
+    private static final Pattern REGEX = Pattern.compile(
+        "(/(?![\\n" + BLANK + "=])[^\\[/\\n\\\\]*(?:(?:\\\\[\\s\\S]|\\[[^\\]\\n\\\\]*(?:\\\\[\\s\\S][^\\]\\n\\\\]*)*\\])"
+            + "[^\\[/\\n\\\\]*)*/)([imgy]{0,4})(?!\\w)");
+
+    private static final Pattern HEREGEX = Pattern.compile("/{3}([\\s\\S]+?)/{3}([imgy]{0,4})(?!\\w)");
+
+    private static final Pattern HEREGEX_OMIT = Pattern.compile(SPACE + "+(?:#" + DOT + "*)?");
+
+    private static final Pattern HEREDOC_INDENT = Pattern.compile("\\n+(" + HSPACE + "*)");
+
+    private static final Set<String> JS_KEYWORDS = setOf(
+        "true", "false", "null", "this", "new", "delete", "typeof", "in", "instanceof", "return", "throw", "break",
+        "continue", "debugger", "if", "else", "switch", "for", "while", "do", "try", "catch", "finally", "class",
+        "extends", "super");
+
+    private static final Map<String, String> COFFEE_ALIAS_MAP = new HashMap<String, String>();
+
+    static {
+        COFFEE_ALIAS_MAP.put("and", "&&");
+        COFFEE_ALIAS_MAP.put("or", "||");
+        COFFEE_ALIAS_MAP.put("is", "==");
+        COFFEE_ALIAS_MAP.put("isnt", "!=");
+        COFFEE_ALIAS_MAP.put("not", "!");
+        COFFEE_ALIAS_MAP.put("yes", "true");
+        COFFEE_ALIAS_MAP.put("no", "false");
+        COFFEE_ALIAS_MAP.put("on", "true");
+        COFFEE_ALIAS_MAP.put("off", "false");
+    }
+
+    private static final Set<String> COFFEE_KEYWORDS = union(
+        setOf("undefined", "then", "unless", "until", "loop", "of", "by", "when"), COFFEE_ALIAS_MAP.keySet());
+
+    private static final Set<String> RESERVED = setOf(
+        "case", "default", "function", "var", "void", "with", "const", "let", "enum", "export", "import", "native",
+        "__hasProp", "__extends", "__slice", "__bind", "__indexOf", "implements", "interface", "package", "private",
+        "protected", "public", "static", "yield");
+
+    private static final Set<String> STRICT_PROSCRIBED = setOf("arguments", "eval");
+
+    private static final Set<String> JS_FORBIDDEN = union(union(JS_KEYWORDS, RESERVED), STRICT_PROSCRIBED);
+
+    private static final Set<String> COMPOUND_ASSIGN = setOf(
+        "-=", "+=", "/=", "*=", "%=", "||=", "&&=", "?=", "<<=", ">>=", ">>>=", "&=", "^=", "|=");
+
+    private static final Set<String> UNARY = setOf("!", "~", "NEW", "TYPEOF", "DELETE", "DO");
+    private static final Set<String> LOGIC = setOf("&&", "||", "&", "|", "^");
+    private static final Set<String> SHIFT = setOf("<<", ">>", ">>>");
+    private static final Set<String> COMPARE = setOf("==", "!=", "<", ">", "<=", ">=");
+    private static final Set<String> MATH = setOf("*", "/", "%");
+    private static final Set<String> RELATION = setOf("IN", "OF", "INSTANCEOF");
+
+    private static final Set<String> NOT_REGEX = setOf("NUMBER", "REGEX", "BOOL", "NULL", "UNDEFINED", "++", "--", "]");
+    private static final Set<String> NOT_SPACED_REGEX = union(NOT_REGEX,
+        setOf(")", "}", "THIS", "IDENTIFIER", "STRING"));
+
+    private static final Set<String> CALLABLE = setOf(
+        "IDENTIFIER", "STRING", "REGEX", ")", "]", "}", "?", "::", "@", "THIS", "SUPER");
+    private static final Set<String> INDEXABLE = union(CALLABLE, setOf("NUMBER", "BOOL", "NULL", "UNDEFINED"));
+
+    private static final Set<String> LINE_BREAK = setOf("INDENT", "OUTDENT", "TERMINATOR");
+
+    private static final Set<String> ACCESSORS = setOf(".", "?.", "::", "?::");
+
+    private static final Set<String> UNFINISHED = setOf(
+        "\\", ".", "?.", "?::", "UNARY", "MATH", "+", "-", "SHIFT", "RELATION", "COMPARE", "LOGIC", "THROW", "EXTENDS");
+
+    private final String code;
+    private final int length;
+    private final int[] newlines;
+    private final int newlineCount;
+
+    private int pos;
+    private int chunkLine;
+    private int chunkColumn;
+
+    private int indent;
+    private int indebt;
+    private int outdebt;
+    private final List<Integer> indents = new ArrayList<Integer>();
+    private final List<String> ends = new ArrayList<String>();
+    private final List<LexerToken> tokens = new ArrayList<LexerToken>();
+    private boolean seenFor;
+
+    private final Map<Pattern, Matcher> matchers = new IdentityHashMap<Pattern, Matcher>();
+
+    private int newlinesBeforeChunk;
+
+    // Results of the last call to locate()
+    private int locatedLine;
+    private int locatedColumn;
+
+    TokenScanner(String code) {
+        this(code, 0, 0);
+    }
+
+    private TokenScanner(String code, int line, int column) {
+        this.chunkLine = line;
+        this.chunkColumn = column;
+        this.code = clean(code);
+        this.length = this.code.length();
+
+        int[] positions = new int[16];
+        int count = 0;
+        for (int i = this.code.indexOf('\n'); i >= 0; i = this.code.indexOf('\n', i + 1)) {
+            if (count == positions.length) {
+                positions = Arrays.copyOf(positions, count * 2);
+            }
+            positions[count++] = i;
+        }
+        this.newlines = positions;
+        this.newlineCount = count;
+    }
+
+    /**
+     * Tokenizes the source, optionally running the {@link TokenRewriter} over the result.
+     */
+    List<LexerToken> tokenize(boolean rewrite) {
+        while (pos < length) {
+            int consumed = identifierToken();
+            if (0 == consumed) consumed = commentToken();
+            if (0 == consumed) consumed = whitespaceToken();
+            if (0 == consumed) consumed = lineToken();
+            if (0 == consumed) consumed = heredocToken();
+            if (0 == consumed) consumed = stringToken();
+            if (0 == consumed) consumed = numberToken();
+            if (0 == consumed) consumed = regexToken();
+            if (0 == consumed) consumed = jsToken();
+            if (0 == consumed) consumed = literalToken();
+
+            locate(consumed);
+            chunkLine = locatedLine;
+            chunkColumn = locatedColumn;
+            pos += consumed;
+        }
+
+        closeIndentation();
+
+        if (!ends.isEmpty()) {
+            error("missing " + ends.remove(ends.size() - 1));
+        }
+
+        return rewrite ? new TokenRewriter().rewrite(tokens) : tokens;
+    }
+
+    private String clean(String code) {
+        if (code.length() > 0 && code.charAt(0) == '﻿') {
+            code = code.substring(1);
+        }
+        if (code.indexOf('\r') >= 0) {
+            code = code.replace("\r", "");
+        }
+
+        int end = code.length();
+        while (end > 0 && isSpace(code.charAt(end - 1))) {
+            end--;
+        }
+        code = code.substring(0, end);
+
+        if (code.length() > 0 && isBlank(code.charAt(0))) {
+            code = "\n" + code;
+            chunkLine--;
+        }
+        return code;
+    }
+
+    private int identifierToken() {
+        char first = code.charAt(pos);
+        if (!isIdentifierPart(first) || (first >= '0' && first <= '9')) {
+            return 0;
+        }
+
+        int idEnd = pos + 1;
+        while (idEnd < length && isIdentifierPart(code.charAt(idEnd))) {
+            idEnd++;
+        }
+
+        String id = code.substring(pos, idEnd);
+        int idLength = id.length();
+
+        // An identifier directly followed by a colon is an object key, ([^\n\S]*:(?!:))? in the original
+        String colon = null;
+        int end = pos + idLength;
+        while (end < length && isBlank(code.charAt(end))) {
+            end++;
+        }
+        if (end < length && code.charAt(end) == ':' && (end + 1 >= length || code.charAt(end + 1) != ':')) {
+            colon = code.substring(pos + idLength, end + 1);
+        }
+        String input = null != colon ? id + colon : id;
+        LexerToken poppedToken = null;
+
+        if ("own".equals(id) && "FOR".equals(tag())) {
+            token("OWN", id);
+            return id.length();
+        }
+
+        LexerToken prev = last();
+        boolean forcedIdentifier = null != colon || (null != prev
+            && (ACCESSORS.contains(prev.tag) || (!prev.spaced && prev.is("@"))));
+
+        String tag = "IDENTIFIER";
+        if (!forcedIdentifier && (JS_KEYWORDS.contains(id) || COFFEE_KEYWORDS.contains(id))) {
+            tag = id.toUpperCase();
+
+            if ("WHEN".equals(tag) && LINE_BREAK.contains(tag())) {
+                tag = "LEADING_WHEN";
+            }
+            else if ("FOR".equals(tag)) {
+                seenFor = true;
+            }
+            else if ("UNLESS".equals(tag)) {
+                tag = "IF";
+            }
+            else if (UNARY.contains(tag)) {
+                tag = "UNARY";
+            }
+            else if (RELATION.contains(tag)) {
+                if (!"INSTANCEOF".equals(tag) && seenFor) {
+                    tag = "FOR" + tag;
+                    seenFor = false;
+                }
+                else {
+                    tag = "RELATION";
+                    if ("!".equals(value())) {
+                        poppedToken = tokens.remove(tokens.size() - 1);
+                        id = "!" + id;
+                    }
+                }
+            }
+        }
+
+        boolean reserved = false;
+        if (JS_FORBIDDEN.contains(id)) {
+            if (forcedIdentifier) {
+                tag = "IDENTIFIER";
+                reserved = true;
+            }
+            else if (RESERVED.contains(id)) {
+                error("reserved word \"" + id + "\"");
+            }
+        }
+
+        if (!forcedIdentifier) {
+            if (COFFEE_ALIAS_MAP.containsKey(id)) {
+                id = COFFEE_ALIAS_MAP.get(id);
+            }
+
+            if ("!".equals(id)) {
+                tag = "UNARY";
+            }
+            else if ("==".equals(id) || "!=".equals(id)) {
+                tag = "COMPARE";
+            }
+            else if ("&&".equals(id) || "||".equals(id)) {
+                tag = "LOGIC";
+            }
+            else if ("true".equals(id) || "false".equals(id)) {
+                tag = "BOOL";
+            }
+            else if ("break".equals(id) || "continue".equals(id)) {
+                tag = "STATEMENT";
+            }
+        }
+
+        LexerToken tagToken = token(tag, id, 0, idLength);
+        tagToken.reserved = reserved;
+        if (null != poppedToken) {
+            tagToken.firstLine = poppedToken.firstLine;
+            tagToken.firstColumn = poppedToken.firstColumn;
+        }
+
+        if (null != colon) {
+            int colonOffset = input.lastIndexOf(':');
+            token(":", ":", colonOffset, colon.length());
+        }
+
+        return input.length();
+    }
+
+    private int numberToken() {
+        char first = code.charAt(pos);
+        if (!(first >= '0' && first <= '9' || first == '.')) {
+            return 0;
+        }
+
+        Matcher match = match(NUMBER);
+        if (null == match) {
+            return 0;
+        }
+
+        String number = match.group();
+        if (number.startsWith("0B") || number.startsWith("0O") || number.startsWith("0X")) {
+            error("radix prefix '" + number + "' must be lowercase");
+        }
+        else if (number.indexOf('E') >= 0 && !number.startsWith("0x")) {
+            error("exponential notation '" + number + "' must be indicated with a lowercase 'e'");
+        }
+        else if (number.matches("0\\d*[89][\\s\\S]*")) {
+            error("decimal literal '" + number + "' must not be prefixed with '0'");
+        }
+        else if (number.matches("0\\d+[\\s\\S]*")) {
+            error("octal literal '" + number + "' must be prefixed with '0o'");
+        }
+
+        int lexedLength = number.length();
+        if (number.startsWith("0o")) {
+            number = "0x" + new BigInteger(number.substring(2), 8).toString(16);
+        }
+        if (number.startsWith("0b")) {
+            number = "0x" + new BigInteger(number.substring(2), 2).toString(16);
+        }
+
+        token("NUMBER", number, 0, lexedLength);
+        return lexedLength;
+    }
+
+    private int stringToken() {
+        String string;
+        char quote = code.charAt(pos);
+
+        if (quote == '\'') {
+            Matcher match = match(SIMPLESTR);
+            if (null == match) {
+                return 0;
+            }
+            string = match.group();
+            token("STRING", string.replace("\n", "\\\n"), 0, string.length());
+        }
+        else if (quote == '"') {
+            string = code.substring(pos, pos + balancedString(code, pos, '"'));
+            if (string.indexOf("#{", 1) > 0) {
+                interpolateString(string.substring(1, string.length() - 1), false, false, 1, string.length());
+            }
+            else {
+                token("STRING", escapeLines(string, false));
+            }
+        }
+        else {
+            return 0;
+        }
+
+        if (hasOctalEscape(string)) {
+            error("octal escape sequences " + string + " are not allowed");
+        }
+
+        return string.length();
+    }
+
+    private int heredocToken() {
+        if (!code.startsWith("\"\"\"", pos) && !code.startsWith("'''", pos)) {
+            return 0;
+        }
+
+        Matcher match = match(HEREDOC);
+        if (null == match) {
+            return 0;
+        }
+
+        String heredoc = match.group();
+        char quote = heredoc.charAt(0);
+        String doc = sanitizeHeredoc(match.group(2), false, null);
+
+        if (quote == '"' && doc.indexOf("#{") >= 0) {
+            interpolateString(doc, true, false, 3, heredoc.length());
+        }
+        else {
+            token("STRING", makeString(doc, quote, true), 0, heredoc.length());
+        }
+
+        return heredoc.length();
+    }
+
+    private int commentToken() {
+        Matcher match = code.startsWith("###", pos) ? match(HERECOMMENT) : null;
+        if (null != match) {
+            String comment = match.group();
+            String here = match.group(1);
+
+            StringBuilder indentation = new StringBuilder();
+            for (int i = 0; i < indent; ++i) {
+                indentation.append(' ');
+            }
+
+            token("HERECOMMENT", sanitizeHeredoc(here, true, indentation.toString()), 0, comment.length());
+            return comment.length();
+        }
+
+        // Line comments are matched by hand, a regular expression that repeats per line would recurse per line
+        int end = -1;
+        int i = pos;
+        while (true) {
+            while (i < length && isSpace(code.charAt(i))) {
+                i++;
+            }
+            if (i >= length || code.charAt(i) != '#' || startsHereComment(i)) {
+                break;
+            }
+            while (i < length && !isLineTerminator(code.charAt(i))) {
+                i++;
+            }
+            end = i;
+        }
+
+        return end < 0 ? 0 : end - pos;
+    }
+
+    private boolean startsHereComment(int i) {
+        return i + 3 < length && code.charAt(i + 1) == '#' && code.charAt(i + 2) == '#' && code.charAt(i + 3) != '#';
+    }
+
+    private int jsToken() {
+        if (code.charAt(pos) != '`') {
+            return 0;
+        }
+
+        Matcher match = match(JSTOKEN);
+        if (null == match) {
+            return 0;
+        }
+
+        String script = match.group();
+        token("JS", script.substring(1, script.length() - 1), 0, script.length());
+        return script.length();
+    }
+
+    private int regexToken() {
+        if (code.charAt(pos) != '/') {
+            return 0;
+        }
+
+        Matcher match = match(HEREGEX);
+        if (null != match) {
+            return heregexToken(match.group(), match.group(1), match.group(2));
+        }
+
+        LexerToken prev = last();
+        if (null != prev && (prev.spaced ? NOT_REGEX : NOT_SPACED_REGEX).contains(prev.tag)) {
+            return 0;
+        }
+
+        match = match(REGEX);
+        if (null == match) {
+            return 0;
+        }
+
+        String input = match.group();
+        String regex = match.group(1);
+        String flags = match.group(2);
+
+        if (regex.startsWith("/*")) {
+            error("regular expressions cannot begin with `*`");
+        }
+        if ("//".equals(regex)) {
+            regex = "/(?:)/";
+        }
+
+        token("REGEX", regex + flags, 0, input.length());
+        return input.length();
+    }
+
+    private int heregexToken(String heregex, String body, String flags) {
+        if (body.indexOf("#{") < 0) {
+            String re = HEREGEX_OMIT.matcher(body).replaceAll("").replace("/", "\\/");
+            if (re.startsWith("*")) {
+                error("regular expressions cannot begin with `*`");
+            }
+
+            token("REGEX", "/" + (re.length() > 0 ? re : "(?:)") + "/" + flags, 0, heregex.length());
+            return heregex.length();
+        }
+
+        token("IDENTIFIER", "RegExp", 0, 0);
+        token("CALL_START", "(", 0, 0);
+
+        List<LexerToken> pieces = new ArrayList<LexerToken>();
+        for (Piece piece : interpolateString(body, false, true, 0, body.length())) {
+            if (null != piece.tokens) {
+                pieces.addAll(piece.tokens);
+            }
+            else {
+                String value = HEREGEX_OMIT.matcher(piece.string.value).replaceAll("");
+                if (value.length() == 0) {
+                    continue;
+                }
+                value = value.replace("\\", "\\\\");
+                piece.string.tag = "STRING";
+                piece.string.value = makeString(value, '"', true);
+                pieces.add(piece.string);
+            }
+
+            LexerToken prev = last();
+            LexerToken plusToken = new LexerToken("+", "+");
+            if (prev.located) {
+                plusToken.locate(prev.firstLine, prev.firstColumn, prev.lastLine, prev.lastColumn);
+            }
+            pieces.add(plusToken);
+        }
+
+        if (!pieces.isEmpty()) {
+            pieces.remove(pieces.size() - 1);
+        }
+
+        if (pieces.isEmpty() || !pieces.get(0).is("STRING")) {
+            token("STRING", "\"\"", 0, 0);
+            token("+", "+", 0, 0);
+        }
+        tokens.addAll(pieces);
+
+        if (flags.length() > 0) {
+            int flagsOffset = heregex.lastIndexOf(flags);
+            token(",", ",", flagsOffset, 0);
+            token("STRING", "\"" + flags + "\"", flagsOffset, flags.length());
+        }
+
+        token(")", ")", heregex.length() - 1, 0);
+        return heregex.length();
+    }
+
+    private int lineToken() {
+        int end = pos;
+        for (int i = pos; i < length && code.charAt(i) == '\n'; ) {
+            i++;
+            while (i < length && isBlank(code.charAt(i))) {
+                i++;
+            }
+            end = i;
+        }
+        if (end == pos) {
+            return 0;
+        }
+
+        int indentLength = end - pos;
+        seenFor = false;
+
+        int size = end - 1 - code.lastIndexOf('\n', end - 1);
+        boolean noNewlines = unfinished();
+
+        if (size - indebt == indent) {
+            if (noNewlines) {
+                suppressNewlines();
+            }
+            else {
+                newlineToken(0);
+            }
+            return indentLength;
+        }
+
+        if (size > indent) {
+            if (noNewlines) {
+                indebt = size - indent;
+                suppressNewlines();
+                return indentLength;
+            }
+
+            int diff = size - indent + outdebt;
+            token("INDENT", String.valueOf(diff), 0, indentLength);
+            indents.add(diff);
+            ends.add("OUTDENT");
+            outdebt = indebt = 0;
+        }
+        else {
+            indebt = 0;
+            outdentToken(indent - size, noNewlines, indentLength);
+        }
+
+        indent = size;
+        return indentLength;
+    }
+
+    private void outdentToken(int moveOut, boolean noNewlines, int outdentLength) {
+        int dent = 0;
+        while (moveOut > 0) {
+            int len = indents.size() - 1;
+            if (len < 0) {
+                moveOut = 0;
+            }
+            else if (indents.get(len) == outdebt) {
+                moveOut -= outdebt;
+                outdebt = 0;
+            }
+            else if (indents.get(len) < outdebt) {
+                outdebt -= indents.get(len);
+                moveOut -= indents.get(len);
+            }
+            else {
+                dent = indents.remove(len) + outdebt;
+                moveOut -= dent;
+                outdebt = 0;
+                pair("OUTDENT");
+                token("OUTDENT", String.valueOf(dent), 0, outdentLength);
+            }
+        }
+
+        if (dent != 0) {
+            outdebt -= moveOut;
+        }
+
+        while (";".equals(value())) {
+            tokens.remove(tokens.size() - 1);
+        }
+
+        if (!("TERMINATOR".equals(tag()) || noNewlines)) {
+            token("TERMINATOR", "\n", outdentLength == UNDEFINED ? 0 : outdentLength, 0);
+        }
+    }
+
+    private int whitespaceToken() {
+        int end = pos;
+        while (end < length && isBlank(code.charAt(end))) {
+            end++;
+        }
+
+        boolean matched = end > pos;
+        if (!matched && code.charAt(pos) != '\n') {
+            return 0;
+        }
+
+        LexerToken prev = last();
+        if (null != prev) {
+            if (matched) {
+                prev.spaced = true;
+            }
+            else {
+                prev.newLine = true;
+            }
+        }
+
+        return end - pos;
+    }
+
+    private void newlineToken(int offset) {
+        while (";".equals(value())) {
+            tokens.remove(tokens.size() - 1);
+        }
+
+        if (!"TERMINATOR".equals(tag())) {
+            token("TERMINATOR", "\n", offset, 0);
+        }
+    }
+
+    private void suppressNewlines() {
+        if ("\\".equals(value())) {
+            tokens.remove(tokens.size() - 1);
+        }
+    }
+
+    private int literalToken() {
+        String value;
+        Matcher match = match(OPERATOR);
+        if (null != match) {
+            value = match.group();
+            if (value.startsWith("->") || value.startsWith("=>")) {
+                tagParameters();
+            }
+        }
+        else {
+            value = String.valueOf(code.charAt(pos));
+        }
+
+        String tag = value;
+        LexerToken prev = last();
+
+        if ("=".equals(value) && null != prev) {
+            if (!prev.reserved && JS_FORBIDDEN.contains(prev.value)) {
+                error("reserved word \"" + value() + "\" can't be assigned");
+            }
+            if ("||".equals(prev.value) || "&&".equals(prev.value)) {
+                prev.tag = "COMPOUND_ASSIGN";
+                prev.value += "=";
+                return value.length();
+            }
+        }
+
+        if (";".equals(value)) {
+            seenFor = false;
+            tag = "TERMINATOR";
+        }
+        else if (MATH.contains(value)) {
+            tag = "MATH";
+        }
+        else if (COMPARE.contains(value)) {
+            tag = "COMPARE";
+        }
+        else if (COMPOUND_ASSIGN.contains(value)) {
+            tag = "COMPOUND_ASSIGN";
+        }
+        else if (UNARY.contains(value)) {
+            tag = "UNARY";
+        }
+        else if (SHIFT.contains(value)) {
+            tag = "SHIFT";
+        }
+        else if (LOGIC.contains(value) || ("?".equals(value) && null != prev && prev.spaced)) {
+            tag = "LOGIC";
+        }
+        else if (null != prev && !prev.spaced) {
+            if ("(".equals(value) && CALLABLE.contains(prev.tag)) {
+                if (prev.is("?")) {
+                    prev.tag = "FUNC_EXIST";
+                }
+                tag = "CALL_START";
+            }
+            else if ("[".equals(value) && INDEXABLE.contains(prev.tag)) {
+                tag = "INDEX_START";
+                if (prev.is("?")) {
+                    prev.tag = "INDEX_SOAK";
+                }
+            }
+        }
+
+        if ("(".equals(value) || "{".equals(value) || "[".equals(value)) {
+            ends.add(INVERSES.get(value));
+        }
+        else if (")".equals(value) || "}".equals(value) || "]".equals(value)) {
+            pair(value);
+        }
+
+        token(tag, value);
+        return value.length();
+    }
+
+    private String sanitizeHeredoc(String doc, boolean herecomment, String indent) {
+        if (herecomment) {
+            if (doc.contains("*/")) {
+                error("block comment cannot contain \"*/\", starting");
+            }
+            if (doc.indexOf('\n') < 0) {
+                return doc;
+            }
+        }
+        else {
+            Matcher match = HEREDOC_INDENT.matcher(doc);
+            while (match.find()) {
+                String attempt = match.group(1);
+                if (null == indent || (attempt.length() > 0 && indent.length() > attempt.length())) {
+                    indent = attempt;
+                }
+            }
+        }
+
+        if (null != indent && indent.length() > 0) {
+            doc = doc.replace("\n" + indent, "\n");
+        }
+        if (!herecomment && doc.startsWith("\n")) {
+            doc = doc.substring(1);
+        }
+        return doc;
+    }
+
+    private void tagParameters() {
+        if (!")".equals(tag())) {
+            return;
+        }
+
+        int stack = 0;
+        int i = tokens.size();
+        tokens.get(--i).tag = "PARAM_END";
+
+        while (--i >= 0) {
+            LexerToken token = tokens.get(i);
+            if (token.is(")")) {
+                stack++;
+            }
+            else if (token.is("(") || token.is("CALL_START")) {
+                if (stack > 0) {
+                    stack--;
+                }
+                else {
+                    if (token.is("(")) {
+                        token.tag = "PARAM_START";
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    private void closeIndentation() {
+        outdentToken(indent, false, UNDEFINED);
+    }
+
+    /**
+     * Matches the string starting at {@code start} up to its closing delimiter, taking nested interpolations into
+     * account, and returns its length.
+     */
+    private int balancedString(String str, int start, char end) {
+        int continueCount = 0;
+        List<Character> stack = new ArrayList<Character>();
+        stack.add(end);
+
+        char prev = 0;
+        for (int i = start + 1; i < str.length(); ++i) {
+            if (continueCount > 0) {
+                --continueCount;
+                continue;
+            }
+
+            char letter = str.charAt(i);
+            if (letter == '\\') {
+                ++continueCount;
+                continue;
+            }
+            if (letter == end) {
+                stack.remove(stack.size() - 1);
+                if (stack.isEmpty()) {
+                    return i - start + 1;
+                }
+                end = stack.get(stack.size() - 1);
+                continue;
+            }
+
+            if (end == '}' && (letter == '"' || letter == '\'')) {
+                stack.add(end = letter);
+            }
+            else if (end == '}' && letter == '/') {
+                Matcher match = matchAt(HEREGEX, str, i);
+                if (null == match) {
+                    match = matchAt(REGEX, str, i);
+                }
+                if (null != match) {
+                    continueCount += match.group().length() - 1;
+                }
+            }
+            else if (end == '}' && letter == '{') {
+                stack.add(end = '}');
+            }
+            else if (end == '"' && prev == '#' && letter == '{') {
+                stack.add(end = '}');
+            }
+
+            prev = letter;
+        }
+
+        error("missing " + stack.remove(stack.size() - 1) + ", starting");
+        return 0;
+    }
+
+    /**
+     * One piece of an interpolated string: either a {@code NEOSTRING} token, or the tokens of an interpolation.
+     */
+    private static final class Piece {
+        final LexerToken string;
+        final List<LexerToken> tokens;
+
+        Piece(LexerToken string, List<LexerToken> tokens) {
+            this.string = string;
+            this.tokens = tokens;
+        }
+    }
+
+    private List<Piece> interpolateString(String str, boolean heredoc, boolean regex, int strOffset, int lexedLength) {
+        if (heredoc && str.length() > 0 && str.charAt(0) == '\n') {
+            str = str.substring(1);
+            strOffset++;
+        }
+
+        List<Piece> pieces = new ArrayList<Piece>();
+        int pi = 0;
+        int i = -1;
+
+        while (++i < str.length()) {
+            char letter = str.charAt(i);
+            if (letter == '\\') {
+                i += 1;
+                continue;
+            }
+            if (!(letter == '#' && i + 1 < str.length() && str.charAt(i + 1) == '{')) {
+                continue;
+            }
+
+            String expr = str.substring(i + 1, i + 1 + balancedString(str, i + 1, '}'));
+            if (pi < i) {
+                pieces.add(new Piece(makeToken("NEOSTRING", str.substring(pi, i), strOffset + pi), null));
+            }
+
+            String inner = expr.substring(1, expr.length() - 1);
+            if (inner.length() > 0) {
+                locate(strOffset + i + 1);
+                List<LexerToken> nested = new TokenScanner(inner, locatedLine, locatedColumn).tokenize(false);
+
+                nested.remove(nested.size() - 1);
+                if (!nested.isEmpty() && nested.get(0).is("TERMINATOR")) {
+                    nested.remove(0);
+                }
+
+                if (!nested.isEmpty()) {
+                    if (nested.size() > 1) {
+                        nested.add(0, makeToken("(", "(", strOffset + i + 1, 0));
+                        nested.add(makeToken(")", ")", strOffset + i + 1 + inner.length(), 0));
+                    }
+                    pieces.add(new Piece(null, nested));
+                }
+            }
+
+            i += expr.length();
+            pi = i + 1;
+        }
+
+        if (i > pi && pi < str.length()) {
+            pieces.add(new Piece(makeToken("NEOSTRING", str.substring(pi), strOffset + pi), null));
+        }
+
+        if (regex) {
+            return pieces;
+        }
+
+        if (pieces.isEmpty()) {
+            token("STRING", "\"\"", 0, lexedLength);
+            return pieces;
+        }
+
+        if (null == pieces.get(0).string) {
+            pieces.add(0, new Piece(makeToken("NEOSTRING", "", 0), null));
+        }
+
+        boolean interpolated = pieces.size() > 1;
+        if (interpolated) {
+            token("(", "(", 0, 0);
+        }
+
+        for (int j = 0; j < pieces.size(); ++j) {
+            Piece piece = pieces.get(j);
+
+            if (j > 0) {
+                LexerToken location = null != piece.tokens ? piece.tokens.get(0) : piece.string;
+                LexerToken plusToken = new LexerToken("+", "+");
+                plusToken.locate(location.firstLine, location.firstColumn, location.firstLine, location.firstColumn);
+                tokens.add(plusToken);
+            }
+
+            if (null != piece.tokens) {
+                tokens.addAll(piece.tokens);
+            }
+            else {
+                piece.string.tag = "STRING";
+                piece.string.value = makeString(piece.string.value, '"', heredoc);
+                tokens.add(piece.string);
+            }
+        }
+
+        if (interpolated) {
+            token(")", ")", lexedLength, 0);
+        }
+
+        return pieces;
+    }
+
+    private void pair(String tag) {
+        String wanted = ends.isEmpty() ? null : ends.get(ends.size() - 1);
+        if (!tag.equals(wanted)) {
+            if (!"OUTDENT".equals(wanted)) {
+                error("unmatched " + tag);
+            }
+
+            int size = indents.get(indents.size() - 1);
+            indent -= size;
+            outdentToken(size, true, UNDEFINED);
+            pair(tag);
+            return;
+        }
+
+        ends.remove(ends.size() - 1);
+    }
+
+    /**
+     * Resolves an offset into the current chunk to a line and column, storing the result in {@code locatedLine} and
+     * {@code locatedColumn}. As with the original, a negative offset counts back from the end of the chunk, and an
+     * {@code UNDEFINED} offset resolves to its end.
+     */
+    private void locate(int offset) {
+        if (offset == 0) {
+            locatedLine = chunkLine;
+            locatedColumn = chunkColumn;
+            return;
+        }
+
+        int end;
+        if (offset == UNDEFINED || offset >= length - pos) {
+            end = length;
+        }
+        else if (offset < 0) {
+            end = Math.max(pos, length + offset);
+        }
+        else {
+            end = pos + offset;
+        }
+
+        int from = chunkNewlines();
+        int to = from < newlineCount && newlines[from] >= end ? from : newlineIndex(end);
+
+        if (to > from) {
+            locatedLine = chunkLine + (to - from);
+            locatedColumn = end - newlines[to - 1] - 1;
+        }
+        else {
+            locatedLine = chunkLine;
+            locatedColumn = chunkColumn + (end - pos);
+        }
+    }
+
+    /**
+     * The number of newlines before the current chunk. The chunk only ever moves forward, so this is advanced from the
+     * previous count rather than searched for.
+     */
+    private int chunkNewlines() {
+        while (newlinesBeforeChunk < newlineCount && newlines[newlinesBeforeChunk] < pos) {
+            newlinesBeforeChunk++;
+        }
+        return newlinesBeforeChunk;
+    }
+
+    /**
+     * The number of newlines before {@code position}.
+     */
+    private int newlineIndex(int position) {
+        int index = Arrays.binarySearch(newlines, 0, newlineCount, position);
+        return index < 0 ? -(index + 1) : index;
+    }
+
+    private LexerToken makeToken(String tag, String value, int offset) {
+        return makeToken(tag, value, offset, value.length());
+    }
+
+    private LexerToken makeToken(String tag, String value, int offset, int length) {
+        LexerToken token = new LexerToken(tag, value);
+
+        locate(offset);
+        int firstLine = locatedLine;
+        int firstColumn = locatedColumn;
+
+        locate(length == UNDEFINED ? UNDEFINED : offset + (length - 1));
+        token.locate(firstLine, firstColumn, locatedLine, locatedColumn);
+
+        return token;
+    }
+
+    private LexerToken token(String tag, String value) {
+        return token(tag, value, 0, value.length());
+    }
+
+    private LexerToken token(String tag, String value, int offset, int length) {
+        LexerToken token = makeToken(tag, value, offset, length);
+        tokens.add(token);
+        return token;
+    }
+
+    private LexerToken last() {
+        return tokens.isEmpty() ? null : tokens.get(tokens.size() - 1);
+    }
+
+    private String tag() {
+        return tokens.isEmpty() ? null : last().tag;
+    }
+
+    private String value() {
+        return tokens.isEmpty() ? null : last().value;
+    }
+
+    private boolean unfinished() {
+        return continuesLine() || UNFINISHED.contains(tag());
+    }
+
+    /**
+     * Checks whether the next line starts with a comma or an accessor, {@code ^\s*(?:,|\??\.(?![.\d])|::)} in the
+     * original.
+     */
+    private boolean continuesLine() {
+        int i = pos;
+        while (i < length && isSpace(code.charAt(i))) {
+            i++;
+        }
+        if (i >= length) {
+            return false;
+        }
+
+        char c = code.charAt(i);
+        if (c == ',') {
+            return true;
+        }
+        if (c == '?' && i + 1 < length && code.charAt(i + 1) == '.') {
+            return !isDotOrDigit(i + 2);
+        }
+        if (c == '.') {
+            return !isDotOrDigit(i + 1);
+        }
+        return c == ':' && i + 1 < length && code.charAt(i + 1) == ':';
+    }
+
+    private boolean isDotOrDigit(int i) {
+        return i < length && (code.charAt(i) == '.' || Character.isDigit(code.charAt(i)) && code.charAt(i) <= '9');
+    }
+
+    private static String escapeLines(String str, boolean heredoc) {
+        return str.replace("\n", heredoc ? "\\n" : "");
+    }
+
+    private static String makeString(String body, char quote, boolean heredoc) {
+        if (body.length() == 0) {
+            return new StringBuilder().append(quote).append(quote).toString();
+        }
+
+        StringBuilder unescaped = new StringBuilder(body.length());
+        for (int i = 0; i < body.length(); ++i) {
+            char c = body.charAt(i);
+            if (c == '\\' && i + 1 < body.length()) {
+                char contents = body.charAt(++i);
+                if (contents != '\n' && contents != quote) {
+                    unescaped.append('\\');
+                }
+                unescaped.append(contents);
+            }
+            else {
+                unescaped.append(c);
+            }
+        }
+
+        String escaped = unescaped.toString().replace(String.valueOf(quote), "\\" + quote);
+        return quote + escapeLines(escaped, heredoc) + quote;
+    }
+
+    /**
+     * Checks for an octal escape such as {@code \0} followed by a digit, or {@code \1}.
+     */
+    private static boolean hasOctalEscape(String string) {
+        for (int i = 0; i < string.length(); ++i) {
+            if (string.charAt(i) != '\\') {
+                continue;
+            }
+            if (i + 1 >= string.length() || isLineTerminator(string.charAt(i + 1))) {
+                return false;
+            }
+
+            char next = string.charAt(i + 1);
+            if (next >= '1' && next <= '7') {
+                return true;
+            }
+            if (next == '0' && i + 2 < string.length() && string.charAt(i + 2) >= '0' && string.charAt(i + 2) <= '7') {
+                return true;
+            }
+            i++;
+        }
+        return false;
+    }
+
+    private Matcher match(Pattern pattern) {
+        Matcher matcher = matchers.get(pattern);
+        if (null == matcher) {
+            matchers.put(pattern, matcher = pattern.matcher(code));
+        }
+
+        matcher.region(pos, length);
+        return matcher.lookingAt() ? matcher : null;
+    }
+
+    private static Matcher matchAt(Pattern pattern, String str, int start) {
+        Matcher matcher = pattern.matcher(str);
+        matcher.region(start, str.length());
+        return matcher.lookingAt() ? matcher : null;
+    }
+
+    /**
+     * Matches {@code [$\w\x7f-\uffff]}, the characters allowed in an identifier.
+     */
+    private static boolean isIdentifierPart(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '$' || c == '_'
+            || c >= '\u007f';
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == ' ' || c == ' ';
+    }
+
+    private static boolean isSpace(char c) {
+        return c == '\n' || isBlank(c);
+    }
+
+    /**
+     * JavaScript whitespace, other than the newline.
+     */
+    private static boolean isBlank(char c) {
+        switch (c) {
+            case '\t':
+            case '\u000B':
+            case '\f':
+            case '\r':
+            case ' ':
+            case ' ':
+            case ' ':
+            case '᠎':
+            case ' ':
+            case ' ':
+            case ' ':
+            case ' ':
+            case '　':
+            case '﻿':
+                return true;
+            default:
+                return c >= ' ' && c <= ' ';
+        }
+    }
+
+    private void error(String message) {
+        throw new CoffeeSyntaxException(message + " on line " + (chunkLine + 1));
+    }
+}
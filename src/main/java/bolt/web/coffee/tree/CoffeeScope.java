@@ -26,15 +26,23 @@
 package bolt.web.coffee.tree;
 
 import bolt.web.coffee.io.CoffeeToken;
+import bolt.web.coffee.io.TokenBuffer;
 import bolt.web.coffee.types.CoffeeScriptLine;
 import bolt.web.coffee.types.CoffeeTokenType;
 import bolt.web.coffee.types.CoffeeType;
+import bolt.web.coffee.util.SymbolTable;
 
 import java.util.*;
 
 /**
  * This class represents lexical scope defined by a root, a file, or an indention. It maintains records of the tokens
  * contained within the scope as well as other scopes.
+ *
+ * <p>
+ * The tokens themselves live in the {@link TokenBuffer} of the file, which is shared by all of the file's scopes. A
+ * scope records the buffer index of each of its tokens, and most look-ups work on the position of a token within the
+ * scope, so walking a scope doesn't create any {@code CoffeeToken} instances. The look-ups which take and return a
+ * {@code CoffeeToken} are built on top of the positions.
  * 
  * @author Matt Bolt
  */
@@ -44,45 +52,128 @@ public class CoffeeScope {
 
     private final CoffeeToken identifier;
     private final int depth;
+    private final TokenBuffer buffer;
 
-    private final List<CoffeeToken> tokens = new ArrayList<CoffeeToken>();
-    private final Map<CoffeeToken, CoffeeScope> scopeIdentifiers = new HashMap<CoffeeToken, CoffeeScope>();
-    private final Map<CoffeeType, List<CoffeeToken>> byType = new HashMap<CoffeeType, List<CoffeeToken>>();
+    // The buffer index of the token at each position in the scope, which always increase with the position
+    private final Positions indexes = new Positions();
 
-    // Tracks re-assignment of variables
-    private final Set<String> assignments = new HashSet<String>();
+    // Most scopes are small, so everything else is only created once it's needed
+
+    // The position of the token that closes the CALL_START or INDEX_START at each position, or -1
+    private Positions closedBy;
+    private Positions openCalls;
+    private Positions openIndexes;
+
+    private Map<CoffeeToken, CoffeeScope> scopeIdentifiers;
+
+    // Tokens which were added from outside of the buffer, so look-ups by token return the same instances
+    private Map<CoffeeToken, Integer> addedPositions;
+    private Map<Integer, CoffeeToken> addedTokens;
+
+    // Tracks re-assignment of variables by SymbolTable id
+    private BitSet assignments;
 
     CoffeeScope() {
         this(ROOT, 0);
     }
 
     public CoffeeScope(CoffeeToken identifier, int depth) {
+        this(identifier, depth, new TokenBuffer());
+    }
+
+    public CoffeeScope(CoffeeToken identifier, int depth, TokenBuffer buffer) {
         this.identifier = identifier;
         this.depth = depth;
+        this.buffer = buffer;
     }
 
+    /**
+     * This method adds a token to the end of the scope. A token which isn't a view of the scope's buffer is copied into
+     * the buffer.
+     *
+     * @param token The {@code CoffeeToken} to add.
+     */
     public void add(CoffeeToken token) {
-        if (!byType.containsKey(token.getType())) {
-            byType.put(token.getType(), new ArrayList<CoffeeToken>());
+        int index = buffer.indexOf(token);
+        if (-1 != index) {
+            add(index);
+            return;
+        }
+
+        if (null == addedPositions) {
+            addedPositions = new IdentityHashMap<CoffeeToken, Integer>();
+            addedTokens = new HashMap<Integer, CoffeeToken>();
+        }
+
+        addedPositions.put(token, indexes.size());
+        addedTokens.put(indexes.size(), token);
+
+        add(buffer.append(token));
+    }
+
+    /**
+     * This method adds the token at an index of the scope's buffer to the end of the scope. Tokens must be added in the
+     * order they appear in the buffer.
+     *
+     * @param index The index of the token in the {@link TokenBuffer}.
+     */
+    public void add(int index) {
+        if (indexes.size() > 0 && index <= indexes.get(indexes.size() - 1)) {
+            throw new IllegalArgumentException("Tokens must be added to a scope in buffer order.");
+        }
+
+        int position = indexes.size();
+        indexes.add(index);
+
+        if (null != closedBy) {
+            closedBy.add(-1);
         }
 
-        byType.get(token.getType()).add(token);
-        tokens.add(token);
+        match(buffer.typeAt(index), position);
     }
 
     public void addAssignment(CoffeeToken token) {
-        if (assignments.contains(token.getValue())) {
+        addAssignment(token.getValue());
+    }
+
+    public void addAssignment(String value) {
+        addAssignment(SymbolTable.global().intern(value));
+    }
+
+    /**
+     * This method records the re-assignment of an identifier.
+     *
+     * @param symbol The {@link SymbolTable} id of the identifier.
+     */
+    public void addAssignment(int symbol) {
+        if (symbol < 0) {
             return;
         }
 
-        assignments.add(token.getValue());
+        if (null == assignments) {
+            assignments = new BitSet();
+        }
+
+        assignments.set(symbol);
     }
 
     public boolean hasAssignment(CoffeeToken token) {
-        return assignments.contains(token.getValue());
+        return hasAssignment(token.getValue());
+    }
+
+    public boolean hasAssignment(String value) {
+        return hasAssignment(SymbolTable.global().idOf(value));
+    }
+
+    public boolean hasAssignment(int symbol) {
+        return null != assignments && symbol >= 0 && assignments.get(symbol);
     }
 
     public void add(CoffeeScope scope) {
+        if (null == scopeIdentifiers) {
+            scopeIdentifiers = new LinkedHashMap<CoffeeToken, CoffeeScope>();
+        }
+
         scopeIdentifiers.put(scope.getIdentifier(), scope);
     }
 
@@ -90,16 +181,138 @@ public class CoffeeScope {
         return identifier;
     }
 
+    public TokenBuffer getBuffer() {
+        return buffer;
+    }
+
     public List<CoffeeScope> getScopes() {
+        if (null == scopeIdentifiers) {
+            return new ArrayList<CoffeeScope>();
+        }
+
         return new ArrayList<CoffeeScope>(scopeIdentifiers.values());
     }
 
+    /**
+     * @return The number of tokens in the scope.
+     */
+    public int size() {
+        return indexes.size();
+    }
+
+    /**
+     * This method returns the positions of each token of a type, in the order they appear in the scope.
+     *
+     * @param type The {@code CoffeeType} to find.
+     *
+     * @return The positions of the tokens within this scope.
+     */
+    public int[] positionsFor(CoffeeType type) {
+        Positions positions = new Positions();
+
+        for (int position = 0; position < indexes.size(); ++position) {
+            if (type == buffer.typeAt(indexes.get(position))) {
+                positions.add(position);
+            }
+        }
+
+        return positions.toArray();
+    }
+
+    /**
+     * @return The type of the token at the position, or {@code null} if the position is outside of the scope.
+     */
+    public CoffeeType typeAt(int position) {
+        return contains(position) ? buffer.typeAt(indexes.get(position)) : null;
+    }
+
+    /**
+     * @return The value of the token at the position, or {@code null} if the position is outside of the scope.
+     */
+    public String valueAt(int position) {
+        return contains(position) ? buffer.valueAt(indexes.get(position)) : null;
+    }
+
+    /**
+     * @return The {@link SymbolTable} id of the identifier at the position, or {@code -1} if the position is outside of
+     *         the scope or isn't an identifier.
+     */
+    public int symbolAt(int position) {
+        return contains(position) ? buffer.symbolAt(indexes.get(position)) : -1;
+    }
+
+    // The index of the token at a position in the scope's buffer
+    int indexAt(int position) {
+        return indexes.get(position);
+    }
+
+    /**
+     * @return The token at the position, or {@code null} if the position is outside of the scope.
+     */
+    public CoffeeToken tokenAt(int position) {
+        if (!contains(position)) {
+            return null;
+        }
+
+        if (null != addedTokens && addedTokens.containsKey(position)) {
+            return addedTokens.get(position);
+        }
+
+        return buffer.get(indexes.get(position));
+    }
+
+    /**
+     * @return The position of the token within this scope, or {@code -1} if the token isn't in this scope.
+     */
+    public int positionOf(CoffeeToken token) {
+        if (null != addedPositions && addedPositions.containsKey(token)) {
+            return addedPositions.get(token);
+        }
+
+        int index = buffer.indexOf(token);
+
+        return -1 == index ? -1 : indexes.search(index);
+    }
+
+    /**
+     * This method returns the position of the token that closes the {@code CALL_START} or {@code INDEX_START} token at
+     * a position. The pairs are matched as tokens are added, so a nested or later call's closing token is never
+     * mistaken for this one.
+     *
+     * @param position The position of the opening token.
+     *
+     * @return The position of the matching {@code CALL_END} or {@code INDEX_END} token within this scope, or {@code -1}
+     *         if the token isn't closed within this scope.
+     */
+    public int closingPositionFor(int position) {
+        return null != closedBy && contains(position) ? closedBy.get(position) : -1;
+    }
+
     public List<CoffeeToken> tokensFor(CoffeeType type) {
-        if (byType.containsKey(type)) {
-            return Collections.unmodifiableList(byType.get(type));
+        int[] positions = positionsFor(type);
+
+        List<CoffeeToken> tokens = new ArrayList<CoffeeToken>(positions.length);
+        for (int position : positions) {
+            tokens.add(tokenAt(position));
         }
 
-        return new ArrayList<CoffeeToken>();
+        return Collections.unmodifiableList(tokens);
+    }
+
+    /**
+     * This method returns the token that closes a {@code CALL_START} or {@code INDEX_START} token.
+     *
+     * @param token The opening {@code CoffeeToken}.
+     *
+     * @return The matching {@code CALL_END} or {@code INDEX_END} token within this scope, or {@code null} if the token
+     * isn't closed within this scope.
+     *
+     * @see #closingPositionFor(int)
+     */
+    public CoffeeToken closingFor(CoffeeToken token) {
+        int position = positionOf(token);
+
+        return -1 == position ? null : tokenAt(closingPositionFor(position));
     }
 
     public CoffeeToken before(CoffeeToken token) {
@@ -114,16 +327,112 @@ public class CoffeeScope {
         return depth;
     }
 
+    /**
+     * This method creates an immutable snapshot of the scope and every scope nested within it. Changes made to the scope
+     * afterwards aren't reflected in the snapshot.
+     *
+     * @return The {@code CompactScopes} for the scope, where the scope has the id {@code 0}.
+     */
+    public CompactScopes compact() {
+        return new CompactScopes(this);
+    }
+
+    private boolean contains(int position) {
+        return position >= 0 && position < indexes.size();
+    }
+
+    private void match(CoffeeType type, int position) {
+        if (CoffeeTokenType.CallStart == type) {
+            if (null == openCalls) {
+                openCalls = new Positions();
+            }
+
+            openCalls.add(position);
+        }
+        else if (CoffeeTokenType.CallEnd == type && null != openCalls && openCalls.size() > 0) {
+            close(openCalls.pop(), position);
+        }
+        else if (CoffeeTokenType.IndexStart == type) {
+            if (null == openIndexes) {
+                openIndexes = new Positions();
+            }
+
+            openIndexes.add(position);
+        }
+        else if (CoffeeTokenType.IndexEnd == type && null != openIndexes && openIndexes.size() > 0) {
+            close(openIndexes.pop(), position);
+        }
+    }
+
+    private void close(int opening, int closing) {
+        if (null == closedBy) {
+            closedBy = new Positions();
+
+            for (int i = 0; i < indexes.size(); ++i) {
+                closedBy.add(-1);
+            }
+        }
+
+        closedBy.set(opening, closing);
+    }
+
     private CoffeeToken tokenOffsetBy(CoffeeToken token, int amount) {
-        int index = tokens.indexOf(token);
-        int offset = index + amount;
+        int position = positionOf(token);
 
-        // null return for invalid range or non-existent token for scope
-        if (offset < 0 || offset >= tokens.size()) {
+        // null return for non-existent token for scope
+        if (-1 == position) {
             return null;
         }
 
-        return tokens.get(offset);
+        // null return for invalid range
+        return tokenAt(position + amount);
     }
 
+    /**
+     * A growable list of {@code int} values, used for positions and buffer indexes without boxing each one.
+     */
+    private static final class Positions {
+
+        private int[] values = new int[8];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+
+            values[size++] = value;
+        }
+
+        int get(int i) {
+            return values[i];
+        }
+
+        void set(int i, int value) {
+            values[i] = value;
+        }
+
+        int pop() {
+            return values[--size];
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * Finds a value in a list whose values always increase.
+         *
+         * @return The index of the value, or {@code -1} if it isn't in the list.
+         */
+        int search(int value) {
+            int found = Arrays.binarySearch(values, 0, size, value);
+
+            return found < 0 ? -1 : found;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
 }
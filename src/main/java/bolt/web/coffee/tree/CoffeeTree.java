@@ -26,10 +26,13 @@
 package bolt.web.coffee.tree;
 
 import bolt.web.coffee.io.CoffeeToken;
+import bolt.web.coffee.io.TokenBuffer;
+import bolt.web.coffee.io.TokenSink;
 import bolt.web.coffee.types.CoffeeTokenType;
+import bolt.web.coffee.types.CoffeeType;
 
 import java.io.File;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
@@ -47,7 +50,7 @@ import java.util.Stack;
 public class CoffeeTree {
 
     private final CoffeeScope global = new CoffeeScope();
-    private final Map<File, CoffeeScope> byFile = new HashMap<File, CoffeeScope>();
+    private final Map<File, CoffeeScope> byFile = new LinkedHashMap<File, CoffeeScope>();
     private final Stack<CoffeeScope> scopes = new Stack<CoffeeScope>();
 
     private CoffeeScope currentFileScope;
@@ -69,6 +72,70 @@ public class CoffeeTree {
      * @param file The .coffee {@code File} instance to generate scope for.
      */
     public void add(File file) {
+        addFile(file, new TokenBuffer());
+    }
+
+    /**
+     * This method adds a coffee {@code File} instance to the tree along with all of its tokens, as with
+     * {@link #add(java.io.File)} followed by {@link #add(bolt.web.coffee.io.CoffeeToken)} for each token. The file's
+     * scopes refer to the tokens in the buffer by index, rather than copying them.
+     *
+     * @param file The .coffee {@code File} instance to generate scope for.
+     *
+     * @param tokens The {@code TokenBuffer} containing the file's tokens.
+     */
+    public void add(File file, TokenBuffer tokens) {
+        addFile(file, tokens);
+
+        for (int i = 0; i < tokens.size(); ++i) {
+            addIndex(tokens, i);
+        }
+    }
+
+    /**
+     * This method adds a coffee {@code File} instance to the tree, and returns a {@code TokenSink} which adds each token
+     * it's passed to the file, building the file's scopes as the tokens arrive. This is the same as
+     * {@link #add(java.io.File, bolt.web.coffee.io.TokenBuffer)} without first collecting the tokens. The sink may only
+     * be used until the next file is added.
+     *
+     * @param file The .coffee {@code File} instance to generate scope for.
+     *
+     * @return The {@code TokenSink} for the file's tokens.
+     */
+    public TokenSink sinkFor(File file) {
+        final TokenBuffer tokens = new TokenBuffer();
+        addFile(file, tokens);
+
+        return new TokenSink() {
+            @Override
+            public void token(CoffeeType type, String value, int firstLine, int firstColumn, int lastLine,
+                              int lastColumn)
+            {
+                addIndex(tokens, tokens.append(type, value, firstLine, firstColumn, lastLine, lastColumn));
+            }
+        };
+    }
+
+    private void addIndex(TokenBuffer tokens, int index) {
+        CoffeeType type = tokens.typeAt(index);
+
+        if (type == CoffeeTokenType.Indent) {
+            scopes.push(new CoffeeScope(tokens.get(index), scopes.size(), tokens));
+        }
+        else if (type == CoffeeTokenType.Outdent) {
+            CoffeeScope scope = scopes.pop();
+            getCurrentScope().add(scope);
+        }
+        else if (getCurrentScope().getBuffer() == tokens) {
+            getCurrentScope().add(index);
+        }
+        else {
+            // An unbalanced outdent left the file's scope, so the token is copied like any other
+            getCurrentScope().add(tokens.get(index));
+        }
+    }
+
+    private void addFile(File file, TokenBuffer tokens) {
         if (null != currentFileScope) {
             if (currentFileScope != scopes.pop()) {
                 throw new RuntimeException("Tree scopes became unbalanced - file scope added to non-global scope");
@@ -79,7 +146,9 @@ public class CoffeeTree {
             throw new RuntimeException("File scopes can only be added to the global scope instance!");
         }
 
-        currentFileScope = new CoffeeScope(new CoffeeToken(CoffeeTokenType.Identifier, file.getName()), scopes.size());
+        CoffeeToken identifier = new CoffeeToken(CoffeeTokenType.Identifier, file.getName());
+
+        currentFileScope = new CoffeeScope(identifier, scopes.size(), tokens);
         byFile.put(file, currentFileScope);
         scopes.push(currentFileScope);
     }
@@ -92,7 +161,7 @@ public class CoffeeTree {
      */
     public void add(CoffeeToken token) {
         if (token.getType() == CoffeeTokenType.Indent) {
-            scopes.push(new CoffeeScope(token, scopes.size()));
+            scopes.push(new CoffeeScope(token, scopes.size(), getCurrentScope().getBuffer()));
             return;
         }
 
@@ -105,6 +174,20 @@ public class CoffeeTree {
         getCurrentScope().add(token);
     }
 
+    /**
+     * This method adds the file scopes of another tree to this tree, in the order they were added to the other tree.
+     * This allows each file to be parsed into its own tree independently, then merged once parsing is complete.
+     *
+     * @param tree The {@code CoffeeTree} containing the file scopes to add.
+     */
+    public void merge(CoffeeTree tree) {
+        if (null != currentFileScope) {
+            throw new RuntimeException("Trees can only be merged into a tree without files added directly!");
+        }
+
+        byFile.putAll(tree.byFile);
+    }
+
     /**
      * This method returns the {@link CoffeeScope} associated with the {@code File} instance.
      *
@@ -119,7 +202,7 @@ public class CoffeeTree {
     /**
      * This method returns all of the {@code File} instances added to the tree.
      *
-     * @return A {@code Set} of {@code File} instances added to the tree.
+     * @return A {@code Set} of {@code File} instances added to the tree, in the order they were added.
      */
     public Set<File> getFiles() {
         return byFile.keySet();
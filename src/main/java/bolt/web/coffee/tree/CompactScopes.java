@@ -0,0 +1,309 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.tree;
+
+import bolt.web.coffee.io.TokenBuffer;
+import bolt.web.coffee.types.CoffeeType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable, compact form of a file's {@link CoffeeScope} and all of the scopes nested within it. Each scope is
+ * numbered in the order it was opened, starting with {@code 0} for the file scope, and the tokens of every scope are
+ * laid out in one flat array in that same order. The tokens of scope {@code s}, not counting those of the scopes nested
+ * within it, occupy the positions {@code startOf(s)} until {@code endOf(s)}.
+ *
+ * <p>
+ * The scopes are linked by their {@code int} ids rather than by reference: {@link #parentOf(int)},
+ * {@link #firstChildOf(int)} and {@link #nextSiblingOf(int)} return {@code -1} when there is no such scope. Since the
+ * scopes are numbered in the order they were opened, every scope nested within {@code s} has a larger id, so visiting
+ * the scopes in id order is the same as a depth first walk of the tree without any recursion.
+ *
+ * <p>
+ * The tokens themselves aren't copied. Each position records the index of its token in the scope's
+ * {@link TokenBuffer}, and the types, values and symbols are read from the buffer, so the buffers must not be appended
+ * to while the instance is in use. The positions of each token type are also indexed per scope, so
+ * {@link #countOf(int, CoffeeType)} and {@link #positionOf(int, CoffeeType, int)} find the identifiers of a scope
+ * without scanning it. Nothing is modified after construction, so an instance can be shared between threads.
+ *
+ * @author Matt Bolt
+ */
+public final class CompactScopes {
+
+    private final int[] parents;
+    private final int[] firstChildren;
+    private final int[] nextSiblings;
+    private final int[] depths;
+    private final int[] starts;
+    private final TokenBuffer[] buffers;
+
+    // The buffer index of the token at each position
+    private final int[] indexes;
+    private final int[] closedBy;
+
+    private final Map<CoffeeType, TypeIndex> byType;
+
+    CompactScopes(CoffeeScope root) {
+        List<CoffeeScope> scopes = new ArrayList<CoffeeScope>();
+        List<Integer> parentIds = new ArrayList<Integer>();
+        collect(root, -1, scopes, parentIds);
+
+        int scopeCount = scopes.size();
+        int size = 0;
+        for (CoffeeScope scope : scopes) {
+            size += scope.size();
+        }
+
+        this.parents = new int[scopeCount];
+        this.firstChildren = new int[scopeCount];
+        this.nextSiblings = new int[scopeCount];
+        this.depths = new int[scopeCount];
+        this.starts = new int[scopeCount + 1];
+        this.buffers = new TokenBuffer[scopeCount];
+
+        this.indexes = new int[size];
+        this.closedBy = new int[size];
+
+        int[] lastChildren = new int[scopeCount];
+        Map<CoffeeType, Integer> typeCounts = new HashMap<CoffeeType, Integer>();
+
+        for (int s = 0, position = 0; s < scopeCount; ++s) {
+            CoffeeScope scope = scopes.get(s);
+            int parent = parentIds.get(s);
+
+            parents[s] = parent;
+            firstChildren[s] = -1;
+            nextSiblings[s] = -1;
+            lastChildren[s] = -1;
+            depths[s] = scope.getDepth();
+            starts[s] = position;
+            buffers[s] = scope.getBuffer();
+
+            if (-1 != parent) {
+                if (-1 == lastChildren[parent]) {
+                    firstChildren[parent] = s;
+                }
+                else {
+                    nextSiblings[lastChildren[parent]] = s;
+                }
+
+                lastChildren[parent] = s;
+            }
+
+            for (int i = 0; i < scope.size(); ++i, ++position) {
+                indexes[position] = scope.indexAt(i);
+
+                int closing = scope.closingPositionFor(i);
+                closedBy[position] = -1 == closing ? -1 : starts[s] + closing;
+
+                CoffeeType type = buffers[s].typeAt(indexes[position]);
+                Integer count = typeCounts.get(type);
+                typeCounts.put(type, null == count ? 1 : count + 1);
+            }
+        }
+
+        starts[scopeCount] = size;
+
+        this.byType = Collections.unmodifiableMap(index(typeCounts));
+    }
+
+    // Numbers the scopes in the order they were opened
+    private static void collect(CoffeeScope scope, int parent, List<CoffeeScope> scopes, List<Integer> parentIds) {
+        int id = scopes.size();
+
+        scopes.add(scope);
+        parentIds.add(parent);
+
+        for (CoffeeScope child : scope.getScopes()) {
+            collect(child, id, scopes, parentIds);
+        }
+    }
+
+    private Map<CoffeeType, TypeIndex> index(Map<CoffeeType, Integer> typeCounts) {
+        Map<CoffeeType, TypeIndex> typeIndexes = new HashMap<CoffeeType, TypeIndex>(typeCounts.size() * 2);
+
+        for (Map.Entry<CoffeeType, Integer> entry : typeCounts.entrySet()) {
+            typeIndexes.put(entry.getKey(), new TypeIndex(entry.getValue(), starts.length));
+        }
+
+        // The positions are visited in order, and the scopes are contiguous, so each scope's positions of a type are
+        // also contiguous within the type's positions. A type's offsets are filled in up to a scope when the first of
+        // its positions in that scope is found, which leaves an empty range for the scopes before it without the type.
+        for (int s = 0; s < starts.length - 1; ++s) {
+            for (int position = starts[s]; position < starts[s + 1]; ++position) {
+                TypeIndex typeIndex = typeIndexes.get(buffers[s].typeAt(indexes[position]));
+                typeIndex.offsetsUntil(s);
+                typeIndex.positions[typeIndex.size++] = position;
+            }
+        }
+
+        for (TypeIndex typeIndex : typeIndexes.values()) {
+            typeIndex.offsetsUntil(starts.length - 1);
+        }
+
+        return typeIndexes;
+    }
+
+    /**
+     * @return The number of scopes, including the file scope.
+     */
+    public int getScopeCount() {
+        return parents.length;
+    }
+
+    /**
+     * @return The id of the scope the scope is nested in, or {@code -1} for the file scope.
+     */
+    public int parentOf(int scope) {
+        return parents[scope];
+    }
+
+    /**
+     * @return The id of the first scope nested in the scope, or {@code -1} if there are none.
+     */
+    public int firstChildOf(int scope) {
+        return firstChildren[scope];
+    }
+
+    /**
+     * @return The id of the next scope nested in the same parent as the scope, or {@code -1} if there are none.
+     */
+    public int nextSiblingOf(int scope) {
+        return nextSiblings[scope];
+    }
+
+    public int depthOf(int scope) {
+        return depths[scope];
+    }
+
+    /**
+     * @return The position of the first token of the scope.
+     */
+    public int startOf(int scope) {
+        return starts[scope];
+    }
+
+    /**
+     * @return The position after the last token of the scope.
+     */
+    public int endOf(int scope) {
+        return starts[scope + 1];
+    }
+
+    /**
+     * @return The number of tokens in all of the scopes.
+     */
+    public int size() {
+        return indexes.length;
+    }
+
+    /**
+     * @return The number of tokens of the type in the scope, not counting the scopes nested within it.
+     */
+    public int countOf(int scope, CoffeeType type) {
+        TypeIndex typeIndex = byType.get(type);
+
+        return null == typeIndex ? 0 : typeIndex.offsets[scope + 1] - typeIndex.offsets[scope];
+    }
+
+    /**
+     * @param index The index of the token amongst those of the type in the scope, less than
+     *        {@link #countOf(int, CoffeeType)}.
+     *
+     * @return The position of the token.
+     */
+    public int positionOf(int scope, CoffeeType type, int index) {
+        TypeIndex typeIndex = byType.get(type);
+        if (null == typeIndex || index < 0 || index >= countOf(scope, type)) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Scope: " + scope + ", Type: " + type);
+        }
+
+        return typeIndex.positions[typeIndex.offsets[scope] + index];
+    }
+
+    /**
+     * @return The type of the token at the position, or {@code null} if the position is outside of the scope.
+     */
+    public CoffeeType typeAt(int scope, int position) {
+        return contains(scope, position) ? buffers[scope].typeAt(indexes[position]) : null;
+    }
+
+    /**
+     * @return The value of the token at the position, or {@code null} if the position is outside of the scope.
+     */
+    public String valueAt(int scope, int position) {
+        return contains(scope, position) ? buffers[scope].valueAt(indexes[position]) : null;
+    }
+
+    /**
+     * @return The {@link bolt.web.coffee.util.SymbolTable} id of the identifier at the position, or {@code -1} if the
+     *         position is outside of the scope or isn't an identifier.
+     */
+    public int symbolAt(int scope, int position) {
+        return contains(scope, position) ? buffers[scope].symbolAt(indexes[position]) : -1;
+    }
+
+    /**
+     * @return The position of the token in the same scope which closes the CALL_START or INDEX_START at the position,
+     *         or {@code -1} if there is none.
+     */
+    public int closingPositionFor(int scope, int position) {
+        return contains(scope, position) ? closedBy[position] : -1;
+    }
+
+    private boolean contains(int scope, int position) {
+        return position >= starts[scope] && position < starts[scope + 1];
+    }
+
+    /**
+     * The positions of one token type, in order, along with where each scope's positions begin.
+     */
+    private static final class TypeIndex {
+
+        private final int[] positions;
+        private final int[] offsets;
+        private int size;
+
+        // The number of scopes whose offset has been filled in
+        private int filled;
+
+        private TypeIndex(int count, int scopes) {
+            this.positions = new int[count];
+            this.offsets = new int[scopes];
+        }
+
+        // Every scope up to and including the scope starts at the current size
+        private void offsetsUntil(int scope) {
+            while (filled <= scope) {
+                offsets[filled++] = size;
+            }
+        }
+    }
+}
@@ -47,6 +47,18 @@ public class CoffeeScriptLine {
         this.lastColumn = lastColumn;
     }
 
+    /**
+     * Creates a {@code CoffeeScriptLine} from the location values directly, for lexers which don't run through the
+     * CoffeeScript compiler.
+     */
+    public static CoffeeScriptLine lineFor(int firstLine, int firstColumn, int lastLine, int lastColumn) {
+        if (0 == firstLine && 0 == firstColumn && 0 == lastLine && 0 == lastColumn) {
+            return Zero;
+        }
+
+        return new CoffeeScriptLine(firstLine, firstColumn, lastLine, lastColumn);
+    }
+
     public int getFirstLine() {
         return firstLine;
     }
@@ -63,6 +75,33 @@ public class CoffeeScriptLine {
         return lastColumn;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CoffeeScriptLine)) return false;
+
+        CoffeeScriptLine that = (CoffeeScriptLine) o;
+
+        return firstLine == that.firstLine
+            && firstColumn == that.firstColumn
+            && lastLine == that.lastLine
+            && lastColumn == that.lastColumn;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = firstLine;
+        result = 31 * result + firstColumn;
+        result = 31 * result + lastLine;
+        result = 31 * result + lastColumn;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return firstLine + ":" + firstColumn + "-" + lastLine + ":" + lastColumn;
+    }
+
     /**
      * This method will return {@code true} if the {@code Object} can be appropriately parsed into a line number.
      *
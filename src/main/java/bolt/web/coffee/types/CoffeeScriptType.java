@@ -25,10 +25,18 @@
 
 package bolt.web.coffee.types;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * The base enum for token and symbol enumerations. Use the static {@code typeFor(String type)} to look up the
- * {@code CoffeeType} instances by type. It first attempts to look up a token type using the {@code CoffeeTokenType},
- * then by {@code CoffeeSymbolType}.
+ * {@code CoffeeType} instances by type. A type which is both a {@code CoffeeTokenType} and a {@code CoffeeSymbolType}
+ * resolves to the token type, as they're more common in coffee-script code.
+ *
+ * <p>
+ * The look-up table is built once when the class is initialized and never modified, so it's safe to use from any
+ * thread, and a type which isn't defined is simply a miss rather than an exception.
  * 
  * @author Matt Bolt
  */
@@ -39,24 +47,34 @@ public enum CoffeeScriptType implements CoffeeType {
         throw new RuntimeException("Not allowed to access type argument for 'NoType'");
     }
 
-    public static CoffeeType typeFor(String type) {
-        if (null == type) {
-            return CoffeeScriptType.NoType;
-        }
+    private static final Map<String, CoffeeType> byType;
 
-        // Attempt to grab the token type first, as they're more common in coffee-script code.
-        try {
-            return CoffeeTokenType.typeFor(type);
+    static {
+        Map<String, CoffeeType> types = new HashMap<String, CoffeeType>();
+
+        // Token types are added last so they take precedence over symbols with the same type
+        for (CoffeeSymbolType symbolType : CoffeeSymbolType.values()) {
+            types.put(symbolType.getType(), symbolType);
         }
-        catch (IllegalArgumentException tokenException) {
-            // If this fails, then we should attempt to lookup the type in the symbol types.
-            try {
-                return CoffeeSymbolType.typeFor(type);
-            }
-            catch (IllegalArgumentException symbolException) {
-                // On this failure, we don't have a defined type, so return the NoType
-                return CoffeeScriptType.NoType;
-            }
+
+        for (CoffeeTokenType tokenType : CoffeeTokenType.values()) {
+            types.put(tokenType.getType(), tokenType);
         }
+
+        byType = Collections.unmodifiableMap(types);
+    }
+
+    /**
+     * This method looks up the {@code CoffeeType} for a type string.
+     *
+     * @param type The {@code String} type value to lookup.
+     *
+     * @return The {@code CoffeeTokenType} or {@code CoffeeSymbolType} for the type, or {@code NoType} if the type
+     *         isn't defined.
+     */
+    public static CoffeeType typeFor(String type) {
+        CoffeeType coffeeType = null == type ? null : byType.get(type);
+
+        return null == coffeeType ? CoffeeScriptType.NoType : coffeeType;
     }
 }
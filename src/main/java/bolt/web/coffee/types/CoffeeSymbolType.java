@@ -25,10 +25,6 @@
 
 package bolt.web.coffee.types;
 
-import java.util.HashMap;
-import java.util.Map;
-
-
 /**
  * This enumeration contains types of symbols which are emitted from the tokenizer. From what I can tell, these are
  * the one-to-one symbols. In other words, while they may be defined as a "type" in the lexer, their purpose is more
@@ -79,35 +75,4 @@ public enum CoffeeSymbolType implements CoffeeType {
     public String getType() {
         return type;
     }
-
-    private static final Map<String, CoffeeSymbolType> byTypeValue = new HashMap<String, CoffeeSymbolType>();
-
-    /**
-     * This method performs a lookup of the {@code CoffeeSymbolType} using the {@code type} argument provided. Note
-     * that this is *not* the same as {@code valueOf()} - This method looks up the {@code CoffeeSymbolType} based on the
-     * internal type string.
-     *
-     * <p>This method also lazily initializes a {@code Map} for fast look-ups.</p>
-     *
-     * @param symbol The {@code String} type value to lookup the {@code CoffeeSymbolType} for.
-     *
-     * @return
-     */
-    static CoffeeType typeFor(String symbol) {
-        if (byTypeValue.isEmpty()) {
-            for (CoffeeSymbolType symbolType : CoffeeSymbolType.values()) {
-                byTypeValue.put(symbolType.getType(), symbolType);
-            }
-        }
-
-        if (null == symbol) {
-            throw new NullPointerException();
-        }
-
-        if (!byTypeValue.containsKey(symbol)) {
-            throw new IllegalArgumentException(symbol);
-        }
-
-        return byTypeValue.get(symbol);
-    }
 }
@@ -25,9 +25,6 @@
 
 package bolt.web.coffee.types;
 
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  * This enumeration contains token types emitted from the coffee script lexer.
  *
@@ -96,35 +93,4 @@ public enum CoffeeTokenType implements CoffeeType {
         return type;
     }
 
-    private static final Map<String, CoffeeTokenType> byTypeValue = new HashMap<String, CoffeeTokenType>();
-
-    /**
-     * This method performs a lookup of the {@code CoffeeTokenType} using the {@code type} argument provided. Note that
-     * this is *not* the same as {@code valueOf()} - This method looks up the {@code CoffeeTokenType} based on the
-     * internal type string.
-     *
-     * <p>This method also lazily initializes a {@code Map} for fast look-ups.</p>
-     *
-     * @param type The {@code String} type value to lookup the {@code CoffeeTokenType} for.
-     *
-     * @return
-     */
-    static CoffeeType typeFor(java.lang.String type) {
-        if (byTypeValue.isEmpty()) {
-            for (CoffeeTokenType tokenType : CoffeeTokenType.values()) {
-                byTypeValue.put(tokenType.getType(), tokenType);
-            }
-        }
-
-        if (null == type) {
-            throw new NullPointerException();
-        }
-
-        if (!byTypeValue.containsKey(type)) {
-            throw new IllegalArgumentException(type);
-        }
-
-        return byTypeValue.get(type);
-    }
-
 }
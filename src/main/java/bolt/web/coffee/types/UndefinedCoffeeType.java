@@ -25,9 +25,13 @@
 
 package bolt.web.coffee.types;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
  * This is a dummy object that we'll use to represent a coffee-script token type that is not defined. For the most part,
- * we don't care about the semantics behind each type, so we can use this to fill in the undefined gaps.
+ * we don't care about the semantics behind each type, so we can use this to fill in the undefined gaps. Use
+ * {@link #typeFor(String)} to share a single instance per type rather than creating one for every token.
  * 
  * @author Matt Bolt
  */
@@ -35,6 +39,30 @@ public class UndefinedCoffeeType implements CoffeeType {
 
     // TODO: Have this class log a warning, or some report to let the user know the type was ignored
 
+    private static final ConcurrentMap<String, UndefinedCoffeeType> byType =
+        new ConcurrentHashMap<String, UndefinedCoffeeType>();
+
+    /**
+     * This method returns the shared {@code UndefinedCoffeeType} for a type string.
+     *
+     * @param type The {@code String} type which isn't defined.
+     *
+     * @return The {@code UndefinedCoffeeType} instance for the type.
+     */
+    public static UndefinedCoffeeType typeFor(String type) {
+        UndefinedCoffeeType undefinedType = byType.get(type);
+        if (null == undefinedType) {
+            UndefinedCoffeeType created = new UndefinedCoffeeType(type);
+
+            undefinedType = byType.putIfAbsent(type, created);
+            if (null == undefinedType) {
+                undefinedType = created;
+            }
+        }
+
+        return undefinedType;
+    }
+
     private final String type;
 
     public UndefinedCoffeeType(String type) {
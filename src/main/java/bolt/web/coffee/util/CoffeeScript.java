@@ -25,14 +25,15 @@
 
 package bolt.web.coffee.util;
 
+import bolt.web.coffee.CoffeeGraphVersion;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.NativeArray;
 import org.mozilla.javascript.NativeObject;
-import org.mozilla.javascript.Scriptable;
 
-import java.io.*;
+import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.List;
 
 /**
  * This class uses Mozilla's Rhino javascript engine to wrap the coffee-script JS compiler. The latest coffee-script
@@ -40,6 +41,12 @@ import java.net.URL;
  * for specifying a custom coffee-script js compiler via command line.
  *
  * <p>
+ * The compiler itself is loaded once per source into a shared {@link CoffeeScriptEnginePool}, so creating multiple
+ * {@code CoffeeScript} instances is cheap, and a single instance may be used from multiple threads. The pool is only
+ * looked up the first time the compiler is actually used, and the version of the bundled compiler is recorded by the
+ * build in {@link CoffeeGraphVersion}, so neither creating an instance nor asking for its version starts rhino.
+ *
+ * <p>
  * Special thanks to David Yeung, the author of JCoffeeScript, for the rhino leveraging inspiration. You saved me many
  * hours and failed attempts at reproducing the coffee-script grammar. JCoffeeScript can be found on github here:
  * <a href="https://github.com/yeungda/jcoffeescript">JCoffeeScript GitHub</a>
@@ -50,145 +57,117 @@ public class CoffeeScript {
 
     public static final String COFFEE_JS = "https://raw.github.com/jashkenas/coffee-script/master/extras/coffee-script.js";
 
-    private static final String COMPILE = "CoffeeScript.compile(coffeeFile, { bare: %s });";
-    private static final String TOKENIZE = "CoffeeScript.tokens(coffeeFile, { bare: true });";
-    private static final String PARSE = "CoffeeScript.nodes(coffeeFile, { bare: true });";
-    private static final String VERSION = "CoffeeScript.VERSION";
+    private static final String BUNDLED_COFFEE_JS = "CoffeeScript.js";
 
-    private final Scriptable javascript;
+    private final URL url;
+    private volatile CoffeeScriptEnginePool engines;
 
     public CoffeeScript() {
-        this.javascript = initialize("CoffeeScript.js");
+        this.url = null;
     }
 
     public CoffeeScript(String url)  {
         try {
-            this.javascript = initialize(new URL(url));
+            this.url = new URL(url);
         } catch (MalformedURLException e) {
             throw new Error(e);
         }
     }
 
-    private Scriptable initialize(String classpathResource) {
-        ClassLoader loader = getClass().getClassLoader();
-        InputStream stream = loader.getResourceAsStream(classpathResource);
-
-        return initialize(stream);
-    }
-
-    private Scriptable initialize(URL url) {
-        try {
-            InputStream stream = url.openStream();
-
-            return initialize(stream);
-        } catch (IOException e) {
-            throw new Error(e);
-        }
-    }
-
-    private Scriptable initialize(InputStream stream) {
-        StringWriter writer = new StringWriter();
-
-        try {
-            BufferedReader reader = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
-            try {
-                String line = reader.readLine();
-                while (line != null) {
-                    writer.append(line).append('\n');
-                    line = reader.readLine();
-                }
-            } catch (Exception e) {
-                throw new Error(e);
-            } finally {
-                reader.close();
-                writer.close();
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        Scriptable coffeeScriptable = null;
-        String sourceText = writer.toString();
-
-        Context context = Context.enter();
-        context.setOptimizationLevel(-1);
-        try {
-            coffeeScriptable = context.initStandardObjects();
-            context.evaluateString(coffeeScriptable, sourceText, "CoffeeScript", 0, null);
-        } finally {
-            Context.exit();
-        }
-
-        return coffeeScriptable;
+    public CoffeeScript(CoffeeScriptEnginePool engines) {
+        this.url = null;
+        this.engines = engines;
     }
 
     public NativeArray tokenize(File coffeeFile) {
         return tokenize(FileHelper.loadText(coffeeFile));
     }
 
-    public NativeArray tokenize(String coffeeSource) {
-        Context context = Context.enter();
-        Scriptable lexScope = context.newObject(javascript);
-        lexScope.setParentScope(javascript);
-        lexScope.put("coffeeFile", lexScope, coffeeSource);
+    public NativeArray tokenize(final String coffeeSource) {
+        return engines().withEngine(new CoffeeScriptEnginePool.Task<NativeArray>() {
+            @Override
+            public NativeArray run(Context context, CoffeeScriptEngine engine) {
+                return engine.tokens(context, coffeeSource);
+            }
+        });
+    }
 
-        try {
-            return (NativeArray) context.evaluateString(lexScope, TOKENIZE, "CoffeeScript", 0, null);
-        } finally {
-            Context.exit();
-        }
+    /**
+     * This method tokenizes each of the coffee-script sources while entering rhino and holding an engine only once,
+     * which saves the setup of each call when there are many small files.
+     *
+     * @param coffeeSources The coffee-script sources to tokenize.
+     *
+     * @return The {@link CoffeeScriptTokens} for each source, in the same order.
+     */
+    public List<CoffeeScriptTokens> tokenizeAll(final List<String> coffeeSources) {
+        return engines().withEngine(new CoffeeScriptEnginePool.Task<List<CoffeeScriptTokens>>() {
+            @Override
+            public List<CoffeeScriptTokens> run(Context context, CoffeeScriptEngine engine) {
+                return engine.tokens(context, coffeeSources);
+            }
+        });
     }
 
     public String compile(File coffeeFile, boolean bare) {
         return compile(FileHelper.loadText(coffeeFile), bare);
     }
 
-    public String compile(String coffeeSource, boolean bare) {
-        Context context = Context.enter();
-        Scriptable compileScope = context.newObject(javascript);
-        compileScope.setParentScope(javascript);
-        compileScope.put("coffeeFile", compileScope, coffeeSource);
-
-        String compileCommand = String.format(COMPILE, String.valueOf(bare));
-
-        try {
-            return (String) context.evaluateString(compileScope, compileCommand, "CoffeeScript", 0, null);
-        } finally {
-            Context.exit();
-        }
+    public String compile(final String coffeeSource, final boolean bare) {
+        return engines().withEngine(new CoffeeScriptEnginePool.Task<String>() {
+            @Override
+            public String run(Context context, CoffeeScriptEngine engine) {
+                return engine.compile(context, coffeeSource, bare);
+            }
+        });
     }
 
     public NativeObject parse(File coffeeFile) {
         return parse(FileHelper.loadText(coffeeFile));
     }
 
-    public NativeObject parse(String coffeeSource) {
-        Context context = Context.enter();
-        Scriptable parseScope = context.newObject(javascript);
-        parseScope.setParentScope(javascript);
-        parseScope.put("coffeeFile", parseScope, coffeeSource);
-
-        try {
-            return (NativeObject) context.evaluateString(parseScope, PARSE, "CoffeeScript", 0, null);
-        } finally {
-            Context.exit();
-        }
+    public NativeObject parse(final String coffeeSource) {
+        return engines().withEngine(new CoffeeScriptEnginePool.Task<NativeObject>() {
+            @Override
+            public NativeObject run(Context context, CoffeeScriptEngine engine) {
+                return engine.nodes(context, coffeeSource);
+            }
+        });
     }
 
     /**
-     * This method returns the current version of the CoffeeScript compiler used.
+     * This method returns the current version of the CoffeeScript compiler used. The version of the bundled compiler is
+     * known without loading it, while a compiler from any other source is loaded to ask for its version.
      *
      * @return A {@code String} representation of the CoffeeScript version.
      */
     public String getVersion() {
-        Context context = Context.enter();
-        Scriptable parseScope = context.newObject(javascript);
-        parseScope.setParentScope(javascript);
+        if (null == url && null == engines) {
+            return CoffeeGraphVersion.CoffeeScriptVersion;
+        }
 
-        try {
-            return (String) context.evaluateString(parseScope, VERSION, "CoffeeScript", 0, null);
-        } finally {
-            Context.exit();
+        return engines().withEngine(new CoffeeScriptEnginePool.Task<String>() {
+            @Override
+            public String run(Context context, CoffeeScriptEngine engine) {
+                return engine.getVersion();
+            }
+        });
+    }
+
+    /**
+     * Looks up the shared pool for the compiler source the first time the compiler is used.
+     */
+    private CoffeeScriptEnginePool engines() {
+        CoffeeScriptEnginePool pool = engines;
+
+        if (null == pool) {
+            pool = null == url
+                ? CoffeeScriptEnginePool.forClasspath(BUNDLED_COFFEE_JS)
+                : CoffeeScriptEnginePool.forUrl(url);
+
+            engines = pool;
         }
+
+        return pool;
     }
 }
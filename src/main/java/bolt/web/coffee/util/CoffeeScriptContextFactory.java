@@ -0,0 +1,66 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.util;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+
+/**
+ * This {@code ContextFactory} creates the rhino {@code Context} instances used to execute the coffee-script compiler.
+ * Each thread that enters a context through this factory receives its own {@code Context}, configured with the same
+ * optimization level, so compiler engines can be shared between threads without re-configuring rhino per call.
+ *
+ * @author Matt Bolt
+ */
+public class CoffeeScriptContextFactory extends ContextFactory {
+
+    /**
+     * Rhino's interpreted mode. The coffee-script compiler source has functions that are too large to be compiled into
+     * JVM bytecode at runtime, so this is the default.
+     */
+    public static final int INTERPRETED = -1;
+
+    private final int optimizationLevel;
+
+    public CoffeeScriptContextFactory() {
+        this(INTERPRETED);
+    }
+
+    public CoffeeScriptContextFactory(int optimizationLevel) {
+        this.optimizationLevel = optimizationLevel;
+    }
+
+    @Override
+    protected Context makeContext() {
+        Context context = super.makeContext();
+        context.setOptimizationLevel(optimizationLevel);
+        return context;
+    }
+
+    public int getOptimizationLevel() {
+        return optimizationLevel;
+    }
+}
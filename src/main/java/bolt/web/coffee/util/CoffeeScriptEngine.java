@@ -0,0 +1,138 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.util;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.NativeArray;
+import org.mozilla.javascript.NativeObject;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class represents a single, fully initialized instance of the coffee-script compiler living in its own sealed
+ * top-level rhino scope. The compiler keeps its lexer and parser state in module level variables, so an engine must
+ * only be used by one thread at a time. Use a {@link CoffeeScriptEnginePool} to share engines between threads.
+ *
+ * @author Matt Bolt
+ */
+public class CoffeeScriptEngine {
+
+    private final Scriptable scope;
+    private final Scriptable coffeeScript;
+
+    CoffeeScriptEngine(Scriptable scope) {
+        this.scope = scope;
+        this.coffeeScript = (Scriptable) ScriptableObject.getProperty(scope, "CoffeeScript");
+    }
+
+    /**
+     * This method executes {@code CoffeeScript.tokens()} on the coffee-script source.
+     *
+     * @param context The {@code Context} entered by the current thread.
+     *
+     * @param coffeeSource The coffee-script source to tokenize.
+     *
+     * @return A {@code NativeArray} containing the coffee-script tokens.
+     */
+    public NativeArray tokens(Context context, String coffeeSource) {
+        return (NativeArray) call(context, "tokens", coffeeSource, optionsFor(context, true));
+    }
+
+    /**
+     * This method executes {@code CoffeeScript.tokens()} on each of the coffee-script sources, sharing one set of
+     * options between them.
+     *
+     * @param context The {@code Context} entered by the current thread.
+     *
+     * @param coffeeSources The coffee-script sources to tokenize.
+     *
+     * @return The {@link CoffeeScriptTokens} for each source, in the same order.
+     */
+    public List<CoffeeScriptTokens> tokens(Context context, List<String> coffeeSources) {
+        Function tokens = (Function) ScriptableObject.getProperty(coffeeScript, "tokens");
+        Scriptable options = optionsFor(context, true);
+
+        List<CoffeeScriptTokens> results = new ArrayList<CoffeeScriptTokens>(coffeeSources.size());
+        for (String coffeeSource : coffeeSources) {
+            Object result = tokens.call(context, scope, coffeeScript, new Object[] { coffeeSource, options });
+            results.add(new CoffeeScriptTokens((NativeArray) result));
+        }
+
+        return results;
+    }
+
+    /**
+     * This method executes {@code CoffeeScript.compile()} on the coffee-script source.
+     *
+     * @param context The {@code Context} entered by the current thread.
+     *
+     * @param coffeeSource The coffee-script source to compile.
+     *
+     * @param bare {@code true} if the compiled javascript should omit the security wrapper.
+     *
+     * @return The compiled javascript.
+     */
+    public String compile(Context context, String coffeeSource, boolean bare) {
+        return Context.toString(call(context, "compile", coffeeSource, optionsFor(context, bare)));
+    }
+
+    /**
+     * This method executes {@code CoffeeScript.nodes()} on the coffee-script source.
+     *
+     * @param context The {@code Context} entered by the current thread.
+     *
+     * @param coffeeSource The coffee-script source to parse.
+     *
+     * @return The root node of the coffee-script syntax tree.
+     */
+    public NativeObject nodes(Context context, String coffeeSource) {
+        return (NativeObject) call(context, "nodes", coffeeSource, optionsFor(context, true));
+    }
+
+    /**
+     * @return The {@code CoffeeScript.VERSION} of the compiler loaded into this engine.
+     */
+    public String getVersion() {
+        return Context.toString(ScriptableObject.getProperty(coffeeScript, "VERSION"));
+    }
+
+    private Object call(Context context, String functionName, Object... arguments) {
+        Function function = (Function) ScriptableObject.getProperty(coffeeScript, functionName);
+
+        return function.call(context, scope, coffeeScript, arguments);
+    }
+
+    private Scriptable optionsFor(Context context, boolean bare) {
+        Scriptable options = context.newObject(scope);
+        options.put("bare", options, bare);
+
+        return options;
+    }
+}
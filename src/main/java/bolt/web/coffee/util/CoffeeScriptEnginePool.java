@@ -0,0 +1,297 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.util;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.ScriptableObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * This class manages a pool of {@link CoffeeScriptEngine} instances which all share a single sealed top-level scope
+ * containing the javascript standard objects. The coffee-script compiler source is read and compiled by rhino exactly once per
+ * pool, and each engine simply executes the compiled script into its own top-level scope, using the shared scope as its
+ * prototype.
+ *
+ * <p>
+ * Engines are created on demand (one at a time) and handed out to one thread at a time, so the pool grows to the
+ * number of threads concurrently using coffee-script. Each thread enters its own {@code Context} through the pool's
+ * {@link CoffeeScriptContextFactory}. Use {@link #withEngine(Task)} to run a {@link Task} with an entered context and
+ * an engine, both of which are always released again, even if creating the engine fails.
+ *
+ * @author Matt Bolt
+ */
+public class CoffeeScriptEnginePool {
+
+    private static final Map<String, CoffeeScriptEnginePool> pools = new HashMap<String, CoffeeScriptEnginePool>();
+
+    /**
+     * This method returns the shared pool for the coffee-script compiler located on the classpath, loading it the
+     * first time it is requested.
+     *
+     * @param classpathResource The classpath location of the coffee-script compiler.
+     *
+     * @return The {@code CoffeeScriptEnginePool} for the compiler.
+     */
+    public static CoffeeScriptEnginePool forClasspath(String classpathResource) {
+        synchronized (pools) {
+            String key = "classpath:" + classpathResource;
+
+            if (!pools.containsKey(key)) {
+                pools.put(key, loadClasspath(classpathResource));
+            }
+
+            return pools.get(key);
+        }
+    }
+
+    /**
+     * This method returns the shared pool for the coffee-script compiler located at the {@code URL}, loading it the
+     * first time it is requested.
+     *
+     * @param url The {@code URL} of the coffee-script compiler.
+     *
+     * @return The {@code CoffeeScriptEnginePool} for the compiler.
+     */
+    public static CoffeeScriptEnginePool forUrl(URL url) {
+        synchronized (pools) {
+            String key = url.toExternalForm();
+
+            if (!pools.containsKey(key)) {
+                try {
+                    pools.put(key, new CoffeeScriptEnginePool(key, loadSource(url.openStream())));
+                } catch (IOException e) {
+                    throw new Error(e);
+                }
+            }
+
+            return pools.get(key);
+        }
+    }
+
+    /**
+     * Prefers the compiler compiled to bytecode by the {@link CoffeeScriptPrecompiler} during the build, and falls back
+     * to interpreting the compiler source.
+     */
+    private static CoffeeScriptEnginePool loadClasspath(String classpathResource) {
+        ClassLoader loader = CoffeeScriptEnginePool.class.getClassLoader();
+        CoffeeScriptContextFactory contextFactory = new CoffeeScriptContextFactory();
+
+        Context context = contextFactory.enterContext();
+        try {
+            List<Script> precompiled = CoffeeScriptPrecompiler.loadPrecompiled(context, loader, classpathResource);
+            if (null != precompiled) {
+                return new CoffeeScriptEnginePool(contextFactory, precompiled);
+            }
+        } finally {
+            Context.exit();
+        }
+
+        InputStream stream = loader.getResourceAsStream(classpathResource);
+        if (null == stream) {
+            throw new Error("Could not locate the coffee-script compiler: " + classpathResource);
+        }
+
+        return new CoffeeScriptEnginePool(contextFactory, classpathResource, loadSource(stream));
+    }
+
+    private final CoffeeScriptContextFactory contextFactory;
+    private final ScriptableObject sharedScope;
+    private final List<Script> compiler;
+
+    private final Queue<CoffeeScriptEngine> idle = new ConcurrentLinkedQueue<CoffeeScriptEngine>();
+
+    public CoffeeScriptEnginePool(String sourceName, String sourceText) {
+        this(new CoffeeScriptContextFactory(), sourceName, sourceText);
+    }
+
+    public CoffeeScriptEnginePool(CoffeeScriptContextFactory contextFactory, String sourceName, String sourceText) {
+        this.contextFactory = contextFactory;
+
+        Context context = contextFactory.enterContext();
+        try {
+            sharedScope = createSharedScope(context);
+            compiler = Collections.singletonList(context.compileString(sourceText, sourceName, 1, null));
+        } finally {
+            Context.exit();
+        }
+    }
+
+    /**
+     * Creates a pool for a compiler which has already been compiled into one or more {@code Script} instances, which
+     * are executed in order to initialize each engine.
+     *
+     * @param contextFactory The {@link CoffeeScriptContextFactory} used to enter contexts.
+     *
+     * @param compiler The compiler {@code Script} instances, in execution order.
+     */
+    public CoffeeScriptEnginePool(CoffeeScriptContextFactory contextFactory, List<Script> compiler) {
+        this.contextFactory = contextFactory;
+        this.compiler = new ArrayList<Script>(compiler);
+
+        Context context = contextFactory.enterContext();
+        try {
+            sharedScope = createSharedScope(context);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    /**
+     * This method associates a {@code Context} with the current thread. Every call must be paired with
+     * {@code Context.exit()}.
+     *
+     * @return The {@code Context} for the current thread.
+     */
+    public Context enter() {
+        return contextFactory.enterContext();
+    }
+
+    /**
+     * This method hands out an idle {@link CoffeeScriptEngine}, creating a new engine if all of the existing engines are
+     * in use. The engine must be returned using {@link #release(CoffeeScriptEngine)}.
+     *
+     * @return A {@code CoffeeScriptEngine} for exclusive use by the current thread.
+     */
+    public CoffeeScriptEngine acquire() {
+        CoffeeScriptEngine engine = idle.poll();
+        if (null != engine) {
+            return engine;
+        }
+
+        return newEngine();
+    }
+
+    /**
+     * This method returns an engine to the pool.
+     *
+     * @param engine The {@link CoffeeScriptEngine} acquired from this pool.
+     */
+    public void release(CoffeeScriptEngine engine) {
+        idle.offer(engine);
+    }
+
+    /**
+     * This method enters a {@code Context} and acquires an engine for the current thread, runs the task, then releases
+     * the engine and exits the context. The context is exited even if acquiring the engine fails, so a long-running
+     * process never leaves a thread associated with a context.
+     *
+     * @param task The {@link Task} to run.
+     *
+     * @return The result of the task.
+     */
+    public <T> T withEngine(Task<T> task) {
+        Context context = enter();
+
+        try {
+            CoffeeScriptEngine engine = acquire();
+
+            try {
+                return task.run(context, engine);
+            } finally {
+                release(engine);
+            }
+        } finally {
+            Context.exit();
+        }
+    }
+
+    public CoffeeScriptContextFactory getContextFactory() {
+        return contextFactory;
+    }
+
+    private synchronized CoffeeScriptEngine newEngine() {
+        Context context = contextFactory.enterContext();
+        try {
+            ScriptableObject engineScope = (ScriptableObject) context.newObject(sharedScope);
+            engineScope.setPrototype(sharedScope);
+            engineScope.setParentScope(null);
+
+            for (Script script : compiler) {
+                script.exec(context, engineScope);
+            }
+            engineScope.sealObject();
+
+            return new CoffeeScriptEngine(engineScope);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    private static ScriptableObject createSharedScope(Context context) {
+        ScriptableObject scope = context.initStandardObjects();
+
+        // The compiler assigns Error.stackTraceLimit while loading, so define it before any engine exists. Engines then
+        // only ever overwrite the value, and never add properties to the shared standard objects.
+        context.evaluateString(scope, "Error.stackTraceLimit = Infinity;", "CoffeeGraph", 0, null);
+        scope.sealObject();
+
+        return scope;
+    }
+
+    private static String loadSource(InputStream stream) {
+        StringWriter writer = new StringWriter();
+
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
+            try {
+                String line = reader.readLine();
+                while (line != null) {
+                    writer.append(line).append('\n');
+                    line = reader.readLine();
+                }
+            } finally {
+                reader.close();
+                writer.close();
+            }
+        } catch (IOException e) {
+            throw new Error(e);
+        }
+
+        return writer.toString();
+    }
+
+    /**
+     * A unit of work run by {@link #withEngine(Task)} with an entered {@code Context} and an engine.
+     */
+    public interface Task<T> {
+
+        T run(Context context, CoffeeScriptEngine engine);
+    }
+}
@@ -0,0 +1,400 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.util;
+
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.EvaluatorException;
+import org.mozilla.javascript.Parser;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.ast.*;
+import org.mozilla.javascript.optimizer.ClassCompiler;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class compiles the coffee-script compiler into JVM bytecode ahead of time, and is executed as part of the maven
+ * build after the resources have been copied to the output directory. Loading the compiled classes replaces parsing the
+ * compiler source and executing it in rhino's interpreted mode.
+ *
+ * <p>
+ * The compiler is far too large to be compiled as a single script: each javascript function becomes a single JVM
+ * method, which cannot exceed 64K of bytecode. The coffee-script build wraps each of its modules in a function
+ * registered as {@code require["./module"] = new function() { ... }}, so we split the source at those registrations and
+ * compile each module as its own script. A module which still doesn't fit (the parser, with its generated tables) has
+ * its large constant literals moved into separate chunks. Any chunk that can't be compiled is kept as source, and will
+ * be run in interpreted mode when it's loaded.
+ *
+ * <p>
+ * The output is an index resource named after the compiler resource with a {@code .chunks} suffix, listing each script
+ * in the order it must be executed. If the index is missing, or fails to load, the compiler source is interpreted as a
+ * whole.
+ *
+ * @author Matt Bolt
+ */
+public final class CoffeeScriptPrecompiler {
+
+    public static final String INDEX_SUFFIX = ".chunks";
+
+    private static final String PACKAGE = "bolt.web.coffee.util.compiled";
+    private static final String CLASS_ENTRY = "class ";
+    private static final String SOURCE_ENTRY = "source ";
+
+    // Literals smaller than this are left alone when splitting a chunk which is too large to compile
+    private static final int HOIST_THRESHOLD = 4096;
+
+    // Replaces the module registry which is local to the compiler's wrapper function
+    private static final String PRELUDE = "var require = function(name) { return require[name]; };";
+    private static final String EPILOGUE = "this.CoffeeScript = require[\"./coffee-script\"];";
+
+    /**
+     * Build entry point.
+     *
+     * @param arguments The output directory containing the compiler resource, and optionally the resource name.
+     */
+    public static void main(String[] arguments) throws IOException {
+        File outputDirectory = new File(arguments[0]);
+        String resource = arguments.length > 1 ? arguments[1] : "CoffeeScript.js";
+
+        new CoffeeScriptPrecompiler(9).precompile(outputDirectory, resource);
+    }
+
+    /**
+     * This method loads the precompiled compiler scripts for the resource in execution order. Modules that could not
+     * be compiled are compiled by the {@code Context} instead.
+     *
+     * @param context The {@code Context} entered by the current thread.
+     *
+     * @param loader The {@code ClassLoader} containing the compiled scripts.
+     *
+     * @param resource The classpath resource name of the compiler source.
+     *
+     * @return The {@code Script} instances to execute, or {@code null} if there is no precompiled compiler available.
+     */
+    public static List<Script> loadPrecompiled(Context context, ClassLoader loader, String resource) {
+        InputStream index = loader.getResourceAsStream(resource + INDEX_SUFFIX);
+        if (null == index) {
+            return null;
+        }
+
+        List<Script> scripts = new ArrayList<Script>();
+
+        try {
+            for (String entry : readLines(index)) {
+                if (entry.startsWith(CLASS_ENTRY)) {
+                    Class<?> scriptClass = loader.loadClass(entry.substring(CLASS_ENTRY.length()));
+                    scripts.add((Script) scriptClass.newInstance());
+                }
+                else if (entry.startsWith(SOURCE_ENTRY)) {
+                    String chunk = entry.substring(SOURCE_ENTRY.length());
+                    String source = join(readLines(loader.getResourceAsStream(chunk)));
+
+                    scripts.add(context.compileString(source, resource, 1, null));
+                }
+            }
+        }
+        catch (Exception e) {
+            // Anything short of a complete compiler is useless, so fall back to the interpreted source
+            return null;
+        }
+
+        return scripts;
+    }
+
+    private final int optimizationLevel;
+
+    public CoffeeScriptPrecompiler(int optimizationLevel) {
+        this.optimizationLevel = optimizationLevel;
+    }
+
+    /**
+     * This method splits the compiler resource into modules, compiles each module into the output directory, and writes
+     * the chunk index.
+     *
+     * @param outputDirectory The classes output directory, which already contains the compiler resource.
+     *
+     * @param resource The resource name of the compiler source.
+     */
+    public void precompile(File outputDirectory, String resource) throws IOException {
+        File sourceFile = new File(outputDirectory, resource);
+        String source = FileHelper.loadText(sourceFile);
+
+        List<String> chunks = split(source, resource);
+        if (chunks.isEmpty()) {
+            System.out.println("[CoffeeGraph] Unrecognized compiler layout in " + resource + ", leaving it interpreted.");
+            return;
+        }
+
+        CompilerEnvirons environment = new CompilerEnvirons();
+        environment.setOptimizationLevel(optimizationLevel);
+        environment.setGeneratingSource(false);
+
+        List<String> index = new ArrayList<String>();
+        String baseName = PACKAGE + "." + FileHelper.stripFileType(sourceFile.getName()) + "Chunk";
+
+        for (int i = 0; i < chunks.size(); ++i) {
+            if (compile(environment, outputDirectory, resource, chunks.get(i), baseName + i, index)) {
+                continue;
+            }
+
+            // The module is still too large, so move its data literals into chunks of their own and try again. The
+            // data is interpreted, but the module's functions are compiled.
+            List<String> hoisted = hoistLiterals(chunks.get(i), resource, i);
+            String module = hoisted.remove(hoisted.size() - 1);
+
+            for (int j = 0; j < hoisted.size(); ++j) {
+                addSource(outputDirectory, resource + ".chunk" + i + "-data" + j + ".js", hoisted.get(j), index);
+            }
+
+            if (hoisted.isEmpty() || !compile(environment, outputDirectory, resource, module, baseName + i, index)) {
+                // Too large to be compiled -- ship the chunk as source, it'll be interpreted at runtime
+                addSource(outputDirectory, resource + ".chunk" + i + ".js", module, index);
+                System.out.println("[CoffeeGraph] Chunk " + i + " of " + resource + " will be interpreted.");
+            }
+        }
+
+        writeText(new File(outputDirectory, resource + INDEX_SUFFIX), join(index));
+    }
+
+    /**
+     * This method splits the compiler source into a prelude, one chunk per module registration, an epilogue which
+     * exports the compiler, and any statements that follow the compiler's wrapper function.
+     *
+     * @return The chunks in execution order, or an empty {@code List} if no modules could be found.
+     */
+    private List<String> split(String source, String sourceName) {
+        CompilerEnvirons environment = new CompilerEnvirons();
+        AstRoot root = new Parser(environment).parse(source, sourceName, 1);
+
+        final List<AstNode> modules = new ArrayList<AstNode>();
+        root.visit(new NodeVisitor() {
+            @Override
+            public boolean visit(AstNode node) {
+                if (isModuleRegistration(node)) {
+                    modules.add(node);
+                    return false;
+                }
+                return true;
+            }
+        });
+
+        List<String> chunks = new ArrayList<String>();
+        if (modules.isEmpty() || null == root.getFirstChild()) {
+            return chunks;
+        }
+
+        chunks.add(PRELUDE);
+        for (AstNode module : modules) {
+            chunks.add(sourceOf(source, module) + ";");
+        }
+        chunks.add(EPILOGUE);
+
+        // Anything after the compiler's wrapper function
+        AstNode wrapper = (AstNode) root.getFirstChild();
+        int trailingStart = wrapper.getAbsolutePosition() + wrapper.getLength();
+        String trailing = source.substring(trailingStart).trim();
+        if (!trailing.isEmpty()) {
+            chunks.add(trailing);
+        }
+
+        return chunks;
+    }
+
+    /**
+     * This method compiles a single chunk, writing the class files to the output directory.
+     *
+     * @return {@code true} if the chunk was compiled and added to the index.
+     */
+    private boolean compile(CompilerEnvirons environment, File outputDirectory, String resource, String chunk,
+                            String className, List<String> index) throws IOException
+    {
+        Object[] classes;
+        try {
+            classes = new ClassCompiler(environment).compileToClassFiles(chunk, resource, 1, className);
+        }
+        catch (EvaluatorException e) {
+            return false;
+        }
+
+        for (int i = 0; i < classes.length; i += 2) {
+            writeClass(outputDirectory, (String) classes[i], (byte[]) classes[i + 1]);
+        }
+
+        index.add(CLASS_ENTRY + className);
+        return true;
+    }
+
+    private void addSource(File outputDirectory, String chunkResource, String chunk, List<String> index)
+        throws IOException
+    {
+        writeText(new File(outputDirectory, chunkResource), chunk);
+        index.add(SOURCE_ENTRY + chunkResource);
+    }
+
+    /**
+     * This method moves each large array or object literal containing nothing but constants (like the parser tables)
+     * out of the chunk, and into a chunk which registers it as {@code require["data:chunk-n"]}. The literal in the
+     * original chunk is replaced with the registry look-up. Since the data is evaluated exactly once when the module is
+     * loaded, sharing the literal instead of re-creating it doesn't change the behavior.
+     *
+     * @return The data chunks in execution order, followed by the rewritten chunk.
+     */
+    private List<String> hoistLiterals(String chunk, String sourceName, int chunkIndex) {
+        AstRoot root = new Parser(new CompilerEnvirons()).parse(chunk, sourceName, 1);
+
+        final List<AstNode> literals = new ArrayList<AstNode>();
+        root.visit(new NodeVisitor() {
+            @Override
+            public boolean visit(AstNode node) {
+                if (node instanceof ObjectProperty && isHoistable(((ObjectProperty) node).getRight())) {
+                    literals.add(((ObjectProperty) node).getRight());
+                    return false;
+                }
+                return true;
+            }
+        });
+
+        List<String> chunks = new ArrayList<String>();
+        StringBuilder module = new StringBuilder(chunk);
+
+        // Replace from the end of the chunk, so that the positions of the remaining literals are still valid
+        for (int i = literals.size() - 1; i >= 0; --i) {
+            AstNode literal = literals.get(i);
+            String registration = "require[\"data:" + chunkIndex + "-" + i + "\"]";
+            int start = literal.getAbsolutePosition();
+
+            chunks.add(0, registration + " = " + sourceOf(chunk, literal) + ";");
+            module.replace(start, start + literal.getLength(), registration);
+        }
+
+        chunks.add(module.toString());
+        return chunks;
+    }
+
+    private static boolean isHoistable(AstNode node) {
+        if (!(node instanceof ArrayLiteral || node instanceof ObjectLiteral) || node.getLength() < HOIST_THRESHOLD) {
+            return false;
+        }
+
+        return isConstant(node);
+    }
+
+    private static boolean isConstant(AstNode node) {
+        if (node instanceof ArrayLiteral) {
+            for (AstNode element : ((ArrayLiteral) node).getElements()) {
+                if (!isConstant(element)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        if (node instanceof ObjectLiteral) {
+            for (ObjectProperty property : ((ObjectLiteral) node).getElements()) {
+                if (property.isGetter() || property.isSetter() || !isConstant(property.getRight())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        if (node instanceof UnaryExpression) {
+            return isConstant(((UnaryExpression) node).getOperand());
+        }
+
+        return node instanceof NumberLiteral
+            || node instanceof StringLiteral
+            || node instanceof KeywordLiteral
+            || node instanceof EmptyExpression;
+    }
+
+    private static boolean isModuleRegistration(AstNode node) {
+        if (!(node instanceof Assignment) || !(((Assignment) node).getLeft() instanceof ElementGet)) {
+            return false;
+        }
+
+        ElementGet target = (ElementGet) ((Assignment) node).getLeft();
+
+        return target.getTarget() instanceof Name
+            && "require".equals(((Name) target.getTarget()).getIdentifier())
+            && target.getElement() instanceof StringLiteral;
+    }
+
+    private static String sourceOf(String source, AstNode node) {
+        int start = node.getAbsolutePosition();
+        return source.substring(start, start + node.getLength());
+    }
+
+    private static void writeClass(File outputDirectory, String className, byte[] bytes) throws IOException {
+        File classFile = new File(outputDirectory, className.replace('.', File.separatorChar) + ".class");
+        if (!classFile.getParentFile().exists() && !classFile.getParentFile().mkdirs()) {
+            throw new IOException("Could not create directory for: " + classFile);
+        }
+
+        OutputStream out = new FileOutputStream(classFile);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writeText(File file, String text) throws IOException {
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            out.write(text);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static List<String> readLines(InputStream stream) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
+
+        try {
+            String line = reader.readLine();
+            while (null != line) {
+                lines.add(line);
+                line = reader.readLine();
+            }
+        } finally {
+            reader.close();
+        }
+
+        return lines;
+    }
+
+    private static String join(List<String> lines) {
+        StringBuilder builder = new StringBuilder();
+        for (String line : lines) {
+            builder.append(line).append('\n');
+        }
+        return builder.toString();
+    }
+}
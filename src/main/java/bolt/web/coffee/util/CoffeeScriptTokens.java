@@ -0,0 +1,188 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.util;
+
+import org.mozilla.javascript.NativeArray;
+import org.mozilla.javascript.NativeObject;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * This class reads the token array returned by {@code CoffeeScript.tokens()} for one source. It works as a cursor:
+ * each call to {@link #next()} moves to the next token, whose tag, value and location can then be read as plain Java
+ * values.
+ *
+ * <pre>
+ * while (tokens.next()) {
+ *     String tag = tokens.getTag();
+ *     String value = tokens.getValue();
+ * }
+ * </pre>
+ *
+ * <p>
+ * The rhino arrays and location objects are read in place by index and property name, rather than being copied into
+ * Java collections and probed for each location property first.
+ *
+ * @author Matt Bolt
+ */
+public class CoffeeScriptTokens {
+
+    private static final String FIRST_LINE = "first_line";
+    private static final String FIRST_COLUMN = "first_column";
+    private static final String LAST_LINE = "last_line";
+    private static final String LAST_COLUMN = "last_column";
+
+    private final NativeArray tokens;
+    private final int length;
+
+    private int index = -1;
+
+    private String tag;
+    private String value;
+    private int firstLine;
+    private int firstColumn;
+    private int lastLine;
+    private int lastColumn;
+
+    CoffeeScriptTokens(NativeArray tokens) {
+        this.tokens = tokens;
+        this.length = (int) tokens.getLength();
+    }
+
+    /**
+     * @return The number of tokens.
+     */
+    public int size() {
+        return length;
+    }
+
+    /**
+     * Moves to the next token.
+     *
+     * @return {@code true} if there was another token, {@code false} at the end of the stream.
+     */
+    public boolean next() {
+        if (index + 1 >= length) {
+            return false;
+        }
+
+        NativeArray token = (NativeArray) tokens.get(++index, tokens);
+        int entries = (int) token.getLength();
+
+        tag = (String) token.get(0, token);
+
+        Object next = entries > 1 ? token.get(1, token) : "";
+        if (readLocation(next)) {
+            value = null;
+            return true;
+        }
+
+        value = valueFrom(next);
+        if (!readLocation(entries > 2 ? token.get(2, token) : null)) {
+            firstLine = firstColumn = lastLine = lastColumn = 0;
+        }
+
+        return true;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    /**
+     * @return The value of the current token, or {@code null} if the compiler gave the token a location in place of a
+     *         value, in which case the tag stands for the value.
+     */
+    public String getValue() {
+        return value;
+    }
+
+    public int getFirstLine() {
+        return firstLine;
+    }
+
+    public int getFirstColumn() {
+        return firstColumn;
+    }
+
+    public int getLastLine() {
+        return lastLine;
+    }
+
+    public int getLastColumn() {
+        return lastColumn;
+    }
+
+    /**
+     * Reads the location properties if the entry is a location object.
+     *
+     * @return {@code true} if the entry had all four location properties.
+     */
+    private boolean readLocation(Object entry) {
+        if (!(entry instanceof NativeObject)) {
+            return false;
+        }
+
+        Scriptable location = (Scriptable) entry;
+        Object first = location.get(FIRST_LINE, location);
+        Object firstCol = location.get(FIRST_COLUMN, location);
+        Object last = location.get(LAST_LINE, location);
+        Object lastCol = location.get(LAST_COLUMN, location);
+
+        if (Scriptable.NOT_FOUND == first || Scriptable.NOT_FOUND == firstCol
+            || Scriptable.NOT_FOUND == last || Scriptable.NOT_FOUND == lastCol) {
+            return false;
+        }
+
+        firstLine = toInt(first);
+        firstColumn = toInt(firstCol);
+        lastLine = toInt(last);
+        lastColumn = toInt(lastCol);
+
+        return true;
+    }
+
+    /**
+     * Converts a token value to a {@code String}. Most values are strings already, but indentation values are numbers,
+     * which may come back as either an {@code Integer} or a {@code Double}, and the rewriter marks the implicit object
+     * braces with a nested array.
+     */
+    private static String valueFrom(Object value) {
+        if (value instanceof Number) {
+            return String.valueOf(((Number) value).intValue());
+        }
+
+        if (value instanceof NativeArray) {
+            NativeArray array = (NativeArray) value;
+            return 0 == array.getLength() ? "" : valueFrom(array.get(0, array));
+        }
+
+        return value.toString();
+    }
+
+    private static int toInt(Object value) {
+        return value instanceof Number ? ((Number) value).intValue() : 0;
+    }
+}
@@ -0,0 +1,242 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * This class is an on-disk cache of the JavaScript compiled from coffee-script source, which is either the joined
+ * source files or a single file. Entries are keyed by a SHA-1 hash of the source, the CoffeeScript version and the
+ * {@code bare} flag, so an edited file or a different compiler simply misses the cache, and nothing ever needs to be
+ * invalidated.
+ *
+ * <p>
+ * Reading an entry updates its modification time. {@link #trim()} uses those times to evict the least recently used
+ * entries until the cache fits within its size cap. Entries are written to a temporary file and renamed into place,
+ * so concurrent compilations, or a build that's interrupted, never leave a partial entry behind.
+ *
+ * @author Matt Bolt
+ */
+public class CompiledScriptCache {
+
+    /**
+     * The default size cap of the cache, in bytes.
+     */
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final String EXTENSION = ".js";
+    private static final String ENCODING = "UTF-8";
+
+    private final File directory;
+    private final long maxBytes;
+
+    public CompiledScriptCache(File directory) {
+        this(directory, DEFAULT_MAX_BYTES);
+    }
+
+    public CompiledScriptCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * This method creates the key for a compiled coffee-script source.
+     *
+     * @param coffeeSource The coffee-script source.
+     *
+     * @param version The version of the CoffeeScript compiler.
+     *
+     * @param bare {@code true} if the source is compiled without the security wrapper.
+     *
+     * @return A hexadecimal {@code String} key.
+     */
+    public String keyFor(String coffeeSource, String version, boolean bare) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update((version + '\0' + bare + '\0').getBytes(ENCODING));
+            digest.update(coffeeSource.getBytes(ENCODING));
+
+            StringBuilder key = new StringBuilder();
+            for (byte b : digest.digest()) {
+                key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return key.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * This method returns the cached JavaScript for a key.
+     *
+     * @param key The key created by {@link #keyFor(String, String, boolean)}.
+     *
+     * @return The compiled JavaScript, or {@code null} if the key isn't cached.
+     */
+    public String get(String key) {
+        File entry = entryFor(key);
+        if (!entry.isFile()) {
+            return null;
+        }
+
+        try {
+            String javaScript = read(entry);
+            entry.setLastModified(System.currentTimeMillis());
+            return javaScript;
+        }
+        catch (IOException e) {
+            // The entry may have been evicted by another build, treat it as a miss
+            return null;
+        }
+    }
+
+    /**
+     * This method caches the compiled JavaScript for a key. Failing to write the cache is not an error, the
+     * JavaScript will just be compiled again next time.
+     *
+     * @param key The key created by {@link #keyFor(String, String, boolean)}.
+     *
+     * @param javaScript The compiled JavaScript.
+     */
+    public void put(String key, String javaScript) {
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+            return;
+        }
+
+        File temporary = null;
+        try {
+            temporary = File.createTempFile(key, ".tmp", directory);
+            write(temporary, javaScript);
+
+            File entry = entryFor(key);
+            if (!temporary.renameTo(entry)) {
+                entry.delete();
+                temporary.renameTo(entry);
+            }
+        }
+        catch (IOException e) {
+            // An entry which can't be written is just compiled again next time
+        }
+        finally {
+            if (null != temporary) {
+                temporary.delete();
+            }
+        }
+    }
+
+    /**
+     * This method evicts the least recently used entries until the total size of the cache is within its cap.
+     */
+    public void trim() {
+        File[] entries = directory.listFiles();
+        if (null == entries) {
+            return;
+        }
+
+        long total = 0;
+        for (File entry : entries) {
+            if (entry.getName().endsWith(EXTENSION)) {
+                total += entry.length();
+            }
+        }
+
+        if (total <= maxBytes) {
+            return;
+        }
+
+        Arrays.sort(entries, new Comparator<File>() {
+            @Override
+            public int compare(File first, File second) {
+                long difference = first.lastModified() - second.lastModified();
+                return difference < 0 ? -1 : difference > 0 ? 1 : 0;
+            }
+        });
+
+        for (int i = 0; i < entries.length && total > maxBytes; ++i) {
+            if (entries[i].getName().endsWith(EXTENSION)) {
+                long length = entries[i].length();
+                if (entries[i].delete()) {
+                    total -= length;
+                }
+            }
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    private File entryFor(String key) {
+        return new File(directory, key + EXTENSION);
+    }
+
+    private static String read(File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+
+        try {
+            Reader reader = new InputStreamReader(input, ENCODING);
+            StringBuilder builder = new StringBuilder((int) file.length());
+            char[] buffer = new char[8192];
+
+            for (int read = reader.read(buffer); read != -1; read = reader.read(buffer)) {
+                builder.append(buffer, 0, read);
+            }
+
+            return builder.toString();
+        }
+        finally {
+            input.close();
+        }
+    }
+
+    private static void write(File file, String text) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), ENCODING);
+
+        try {
+            writer.write(text);
+        }
+        finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.util;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class interns identifier names and assigns each one a dense {@code int} id, starting at {@code 0}. The ids are
+ * shared by every file, so the dependency analysis can compare and collect identifiers using {@code int} ids and
+ * {@link java.util.BitSet}s rather than hashing the same {@code String}s over and over.
+ *
+ * <p>
+ * The lexers intern identifiers concurrently, so interning and look-ups are thread safe. Ids are never reused, and
+ * only live as long as the table, so they should never be written anywhere. Persist the names instead.
+ *
+ * <p>
+ * Names are never removed, so the table holds every distinct identifier name lexed since it was created, at roughly
+ * the size of the name plus a map entry each. A single build is bounded by the names in its sources. A watch keeps its
+ * analyses, and their ids, between builds, so it also holds any names which were edited away during the session. The
+ * daemon runs unrelated commands, so it calls {@link #reset()} after each one rather than accumulating the names of
+ * every project it has built.
+ *
+ * @author Matt Bolt
+ */
+public final class SymbolTable {
+
+    private static volatile SymbolTable global = new SymbolTable();
+
+    /**
+     * @return The {@code SymbolTable} shared by the lexers and the dependency analysis.
+     */
+    public static SymbolTable global() {
+        return global;
+    }
+
+    /**
+     * This method replaces the global table with an empty one, releasing every name interned so far. It must only be
+     * called between builds, since the ids held by any lexed tokens or analysis no longer refer to the same names.
+     */
+    public static void reset() {
+        global = new SymbolTable();
+    }
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+    private volatile String[] names = new String[256];
+    private int size;
+
+    SymbolTable() {
+
+    }
+
+    /**
+     * This method returns the id of a name, assigning it the next id if it hasn't been seen before.
+     *
+     * @param name The identifier name.
+     *
+     * @return The id of the name.
+     */
+    public int intern(String name) {
+        Integer id = ids.get(name);
+        if (null != id) {
+            return id;
+        }
+
+        synchronized (this) {
+            id = ids.get(name);
+            if (null == id) {
+                if (size == names.length) {
+                    names = Arrays.copyOf(names, size * 2);
+                }
+
+                id = size++;
+                names[id] = name;
+                ids.put(name, id);
+            }
+
+            return id;
+        }
+    }
+
+    /**
+     * This method returns the id of a name without interning it.
+     *
+     * @param name The identifier name.
+     *
+     * @return The id of the name, or {@code -1} if it hasn't been interned.
+     */
+    public int idOf(String name) {
+        Integer id = null == name ? null : ids.get(name);
+
+        return null == id ? -1 : id;
+    }
+
+    /**
+     * @param id An id returned by {@link #intern(String)}.
+     *
+     * @return The name with the id.
+     */
+    public String nameOf(int id) {
+        return names[id];
+    }
+}
@@ -27,8 +27,8 @@ package bolt.web.coffee;
 
 import bolt.web.coffee.dependency.CoffeeIdentifier;
 import bolt.web.coffee.dependency.graph.CyclicDependencyException;
-import bolt.web.coffee.dependency.graph.DependencyGraph;
 import bolt.web.coffee.dependency.graph.GraphUtils;
+import bolt.web.coffee.io.ExportContext;
 import bolt.web.coffee.io.exporters.AbstractExporter;
 
 import java.util.List;
@@ -52,22 +52,20 @@ public class AssertingExporter extends AbstractExporter {
     }
 
     @Override
-    public void export(DependencyGraph<CoffeeIdentifier> graph) {
-        List<CoffeeIdentifier> identifiers;
+    public void export(ExportContext context) {
+        List<CoffeeIdentifier> trimmed;
 
         try {
             if (printTree) {
-                GraphUtils.printDependencies(graph);
+                GraphUtils.printDependencies(context.getGraph(), context.getSortedIdentifiers());
             }
 
-            identifiers = GraphUtils.topologicalSort(graph);
+            trimmed = context.getFileOrder();
         }
         catch (CyclicDependencyException e) {
             throw new RuntimeException(e);
         }
 
-        List<CoffeeIdentifier> trimmed = trimDuplicateFiles(identifiers);
-
         try {
             assertOrder.assertOrder(trimmed);
         }
@@ -28,9 +28,14 @@ package bolt.web.coffee;
 import bolt.web.coffee.dependency.CoffeeIdentifier;
 
 import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 
+import static org.junit.Assert.fail;
+
 public abstract class BaseTestCase {
 
     protected File classPathFile(String name) throws Exception {
@@ -48,4 +53,33 @@ public abstract class BaseTestCase {
     protected static CoffeeScriptDependencyBuilder buildDependencies() {
         return new CoffeeScriptDependencyBuilder();
     }
+
+    protected static File createTempDirectory() throws IOException {
+        File directory = File.createTempFile("coffee-graph", "");
+        if (!directory.delete() || !directory.mkdir()) {
+            fail("Could not create temporary directory: " + directory);
+        }
+        return directory;
+    }
+
+    protected static File write(File file, String contents) throws IOException {
+        Writer writer = new FileWriter(file);
+        try {
+            writer.write(contents);
+        }
+        finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    protected static void delete(File file) {
+        File[] children = file.listFiles();
+        if (null != children) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
 }
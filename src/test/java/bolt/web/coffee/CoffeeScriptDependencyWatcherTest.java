@@ -0,0 +1,129 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a
+//  copy of this software and associated documentation files (the "Software"),
+//  to deal in the Software without restriction, including without limitation
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+//  and/or sell copies of the Software, and to permit persons to whom the
+//  Software is furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in
+//  all copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+//  THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee;
+
+import bolt.web.coffee.dependency.graph.CyclicDependencyException;
+import bolt.web.coffee.io.CoffeeScriptLexer;
+import bolt.web.coffee.io.CoffeeScriptMinParser;
+import bolt.web.coffee.io.ExportContext;
+import bolt.web.coffee.io.Exporter;
+import bolt.web.coffee.io.Lexer;
+import bolt.web.coffee.io.lexers.JavaCoffeeScriptLexer;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests exporting again as the watched files change.
+ *
+ * @author Matt Bolt
+ */
+public class CoffeeScriptDependencyWatcherTest extends BaseTestCase {
+
+    private static final long EXPORT_SECONDS = 10;
+
+    @Test
+    public void javaLexerSyntaxErrorTest() throws Exception {
+        watchSyntaxError(new JavaCoffeeScriptLexer());
+    }
+
+    @Test
+    public void rhinoLexerSyntaxErrorTest() throws Exception {
+        watchSyntaxError(new CoffeeScriptLexer());
+    }
+
+    /**
+     * Saving a file with a syntax error reports the error, and the file keeps its last good analysis until it's fixed,
+     * rather than ending the watch.
+     */
+    private static void watchSyntaxError(Lexer lexer) throws Exception {
+        final File directory = createTempDirectory();
+        final BlockingQueue<List<String>> exports = new LinkedBlockingQueue<List<String>>();
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+
+        final CoffeeScriptDependencyBuilder builder = buildDependencies()
+            .withTokensFrom(lexer)
+            .parsedWith(new CoffeeScriptMinParser())
+            .exportedBy(new Exporter() {
+                @Override
+                public void export(ExportContext context) {
+                    try {
+                        exports.add(toFileNames(context.getFileOrder()));
+                    }
+                    catch (CyclicDependencyException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+
+        write(new File(directory, "A.coffee"), "class @A\n");
+        File b = write(new File(directory, "B.coffee"), "class @B extends A\n");
+
+        Thread watcher = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    builder.watch(Arrays.asList(directory));
+                }
+                catch (Throwable e) {
+                    failures.add(e);
+                }
+            }
+        };
+        watcher.start();
+
+        List<String> order = Arrays.asList("A.coffee", "B.coffee");
+
+        try {
+            assertEquals(order, exports.poll(EXPORT_SECONDS, TimeUnit.SECONDS));
+
+            write(b, "class @B extends A\n  foo: -> (1\n");
+            assertEquals(order, exports.poll(EXPORT_SECONDS, TimeUnit.SECONDS));
+            assertTrue(watcher.isAlive());
+
+            write(b, "class @B extends A\n  foo: -> 1\n");
+            assertEquals(order, exports.poll(EXPORT_SECONDS, TimeUnit.SECONDS));
+            assertTrue(watcher.isAlive());
+        }
+        finally {
+            watcher.interrupt();
+            watcher.join(TimeUnit.SECONDS.toMillis(EXPORT_SECONDS));
+            delete(directory);
+        }
+
+        assertTrue(failures.toString(), failures.isEmpty());
+    }
+}
@@ -0,0 +1,67 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.command;
+
+import bolt.web.coffee.io.CoffeeGraphOptions;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests parsing the command line options, including commands forwarded to the daemon from another directory.
+ *
+ * @author Matt Bolt
+ */
+public class CoffeeGraphCommandParserTest {
+
+    @Test
+    public void workingDirectoryTest() throws Exception {
+        File directory = new File("client").getCanonicalFile();
+        File absolute = new File("src").getCanonicalFile();
+
+        CoffeeGraphOptions options = new CoffeeGraphCommandParser(
+            new String[] { "-p", "-j", "4", "--cache-dir", "cache", "src/a.coffee", absolute.getPath() },
+            directory).parse();
+
+        assertEquals(4, options.getJobs());
+        assertEquals(new File(directory, "cache"), options.getCacheDirectory());
+        assertEquals(new File(directory, "src/a.coffee"), options.getSourceFiles().get(0));
+        assertEquals(absolute, options.getSourceFiles().get(1));
+        assertEquals(new File(directory, "lib/coffee-graph.js"), options.getOutputFile());
+    }
+
+    @Test
+    public void currentDirectoryTest() throws Exception {
+        CoffeeGraphOptions options = new CoffeeGraphCommandParser(new String[] { "-p", "src" }).parse();
+
+        assertEquals(new File("src").getCanonicalFile(), options.getSourceFiles().get(0));
+        assertEquals(new File("lib/coffee-graph.js"), options.getOutputFile());
+        assertNull(options.getCacheDirectory());
+    }
+}
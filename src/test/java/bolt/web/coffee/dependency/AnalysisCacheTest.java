@@ -0,0 +1,192 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.dependency;
+
+import bolt.web.coffee.BaseTestCase;
+import bolt.web.coffee.dependency.graph.DependencyGraph;
+import bolt.web.coffee.io.CoffeeScriptMinParser;
+import bolt.web.coffee.io.CoffeeToken;
+import bolt.web.coffee.io.Lexer;
+import bolt.web.coffee.io.lexers.JavaCoffeeScriptLexer;
+import bolt.web.coffee.tree.CoffeeTree;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the on-disk {@code AnalysisCache}.
+ *
+ * @author Matt Bolt
+ */
+public class AnalysisCacheTest extends BaseTestCase {
+
+    @Test
+    public void cachedGraphTest() throws Exception {
+        File directory = createTempDirectory();
+
+        try {
+            File base = write(new File(directory, "Base.coffee"),
+                "class @Base\n" +
+                "  @helper: (value) -> value\n");
+            File model = write(new File(directory, "Model.coffee"),
+                "class @Model extends Base\n" +
+                "  method: (a) -> Base.helper a\n");
+            File other = write(new File(directory, "Other.coffee"),
+                "Base = 1\n" +
+                "@other = Base.helper 2\n");
+
+            List<File> files = Arrays.asList(base, model, other);
+            File cacheDirectory = new File(directory, "cache");
+            CountingLexer lexer = new CountingLexer();
+
+            DependencyGraph<CoffeeIdentifier> expected = graphFor(new AnalysisCache(cacheDirectory), lexer, files);
+            assertEquals(3, lexer.files.size());
+
+            // A new cache instance reads the entries written by the first build, without lexing
+            lexer.files.clear();
+            DependencyGraph<CoffeeIdentifier> cached = graphFor(new AnalysisCache(cacheDirectory), lexer, files);
+
+            assertTrue(lexer.files.isEmpty());
+            assertEquals(expected.getCompactGraph().getNodes(), cached.getCompactGraph().getNodes());
+            assertEquals(expected.getEdges(), cached.getEdges());
+            assertTrue(cached.outgoingFor(new CoffeeIdentifier("Model", model, 1))
+                .contains(new CoffeeIdentifier("Base", base, 1)));
+            assertTrue(cached.outgoingFor(new CoffeeIdentifier("other", other, 1)).isEmpty());
+        }
+        finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void staleEntryTest() throws Exception {
+        File directory = createTempDirectory();
+
+        try {
+            File source = write(new File(directory, "Source.coffee"), "@value = 1\n");
+            File cacheDirectory = new File(directory, "cache");
+
+            AnalysisCache cache = new AnalysisCache(cacheDirectory, "1");
+            assertNull(cache.get(source));
+            cache.put(analyze(source));
+
+            assertNotNull(cache.get(source));
+
+            // A different version ignores the entry
+            assertNull(new AnalysisCache(cacheDirectory, "2").get(source));
+
+            // Touching the file without changing it still hits the cache
+            source.setLastModified(source.lastModified() - 60000);
+            assertNotNull(cache.get(source));
+
+            // Changing the contents misses
+            write(source, "@other = 2\n");
+            source.setLastModified(source.lastModified() - 120000);
+            assertNull(cache.get(source));
+
+            cache.put(analyze(source));
+            assertEquals(Arrays.asList("other"), new ArrayList<String>(cache.get(source).getIdentifiers()));
+        }
+        finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void changedEntryTest() throws Exception {
+        File directory = createTempDirectory();
+
+        try {
+            File source = write(new File(directory, "Source.coffee"), "@value = 1\n");
+            long lastModified = source.lastModified();
+
+            AnalysisCache cache = new AnalysisCache(new File(directory, "cache"), "1");
+            assertNull(cache.get(source));
+            cache.put(analyze(source));
+
+            // A save that keeps the size and modification time looks unchanged, unless the file is known to have changed
+            write(source, "@other = 2\n");
+            source.setLastModified(lastModified);
+            assertEquals(Arrays.asList("value"), new ArrayList<String>(cache.get(source).getIdentifiers()));
+            assertNull(cache.get(source, true));
+
+            cache.put(analyze(source));
+            assertEquals(Arrays.asList("other"), new ArrayList<String>(cache.get(source).getIdentifiers()));
+
+            // A file which is known to have changed, but whose contents are the same, still hits the cache
+            assertNotNull(cache.get(source, true));
+        }
+        finally {
+            delete(directory);
+        }
+    }
+
+    private static DependencyGraph<CoffeeIdentifier> graphFor(AnalysisCache cache, Lexer lexer, List<File> files) {
+        CoffeeScriptDependencies dependencies = new CoffeeScriptDependencies();
+        List<FileAnalysis> analyses = new ArrayList<FileAnalysis>();
+
+        for (File file : files) {
+            FileAnalysis analysis = cache.get(file);
+            if (null == analysis) {
+                CoffeeTree tree = new CoffeeScriptMinParser().parse(lexer, Arrays.asList(file));
+                analysis = dependencies.analyze(file, tree.scopeFor(file));
+                cache.put(analysis);
+            }
+            analyses.add(analysis);
+        }
+
+        return dependencies.generateGraph(analyses);
+    }
+
+    private static FileAnalysis analyze(File file) {
+        CoffeeTree tree = new CoffeeScriptMinParser().parse(new JavaCoffeeScriptLexer(), Arrays.asList(file));
+        return new CoffeeScriptDependencies().analyze(file, tree.scopeFor(file));
+    }
+
+    private static class CountingLexer implements Lexer {
+        private final Lexer lexer = new JavaCoffeeScriptLexer();
+        private final List<File> files = new ArrayList<File>();
+
+        @Override
+        public List<CoffeeToken> tokenize(File coffeeFile) {
+            files.add(coffeeFile);
+            return lexer.tokenize(coffeeFile);
+        }
+
+        @Override
+        public List<CoffeeToken> tokenize(String coffeeString) {
+            return lexer.tokenize(coffeeString);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.dependency;
+
+import bolt.web.coffee.BaseTestCase;
+import bolt.web.coffee.dependency.graph.DependencyGraph;
+import bolt.web.coffee.io.CoffeeScriptMinParser;
+import bolt.web.coffee.io.lexers.JavaCoffeeScriptLexer;
+import bolt.web.coffee.tree.CoffeeTree;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the dependency graph generated from a {@code CoffeeTree}.
+ *
+ * @author Matt Bolt
+ */
+public class CoffeeScriptDependenciesTest extends BaseTestCase {
+
+    private static final int Identifiers = 250;
+
+    /**
+     * The generated model declares a top level identifier per line. Finding references once per identifier rather
+     * than once per file makes the look-ups quadratic, so quadrupling the identifiers would multiply them by sixteen.
+     */
+    @Test
+    public void largeFileTest() throws Exception {
+        long small = lookupsFor(Identifiers);
+        long large = lookupsFor(4 * Identifiers);
+
+        assertTrue(small > 0);
+        assertTrue("Expected at most " + 4 * small + " look-ups, was " + large, large <= 4 * small);
+    }
+
+    private static long lookupsFor(int identifiers) throws Exception {
+        File directory = createTempDirectory();
+
+        try {
+            File base = write(new File(directory, "Base.coffee"),
+                "class @Base\n" +
+                "  @helper: (value) -> value\n");
+
+            StringBuilder model = new StringBuilder("class @Model extends Base\n");
+            for (int i = 0; i < identifiers; ++i) {
+                model.append("  method").append(i).append(": (a) -> Base.helper a\n");
+            }
+            for (int i = 0; i < identifiers; ++i) {
+                model.append("@value").append(i).append(" = Base.helper ").append(i).append("\n");
+            }
+            File modelFile = write(new File(directory, "Model.coffee"), model.toString());
+
+            List<File> files = Arrays.asList(base, modelFile);
+            CoffeeTree tree = new CoffeeScriptMinParser().parse(new JavaCoffeeScriptLexer(), files);
+            CountingDependencyManager manager = new CountingDependencyManager();
+            DependencyGraph<CoffeeIdentifier> graph = new CoffeeScriptDependencies(manager).generateGraph(tree);
+
+            CoffeeIdentifier model0 = new CoffeeIdentifier("Model", modelFile, 1);
+            CoffeeIdentifier baseId = new CoffeeIdentifier("Base", base, 1);
+
+            assertTrue(graph.outgoingFor(model0).contains(baseId));
+            assertTrue(graph.outgoingFor(baseId).isEmpty());
+
+            return manager.lookups;
+        }
+        finally {
+            delete(directory);
+        }
+    }
+
+    /**
+     * Counts every look-up of a global identifier, whether it's resolved or only checked.
+     */
+    private static class CountingDependencyManager extends DependencyManager<CoffeeIdentifier> {
+        private long lookups;
+
+        @Override
+        public CoffeeIdentifier resolve(int symbol) {
+            ++lookups;
+            return super.resolve(symbol);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.dependency;
+
+import bolt.web.coffee.dependency.graph.DependencyGraph;
+import bolt.web.coffee.dependency.graph.Edge;
+import bolt.web.coffee.io.CoffeeToken;
+import bolt.web.coffee.io.lexers.JavaCoffeeScriptLexer;
+import bolt.web.coffee.tree.CoffeeTree;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that patching an {@code IncrementalDependencies} graph matches generating the graph again from every file.
+ *
+ * @author Matt Bolt
+ */
+public class IncrementalDependenciesTest {
+
+    private final File a = new File("A.coffee");
+    private final File b = new File("B.coffee");
+    private final File c = new File("C.coffee");
+    private final File d = new File("D.coffee");
+
+    private final Map<File, FileAnalysis> current = new LinkedHashMap<File, FileAnalysis>();
+
+    @Test
+    public void patchedGraphTest() {
+        IncrementalDependencies incremental = new IncrementalDependencies(Arrays.asList(
+            analyze(a, "class @A\n  run: -> B.helper 1\n"),
+            analyze(b, "class @B\n  @helper: (value) -> value\n"),
+            analyze(c, "B = 1\n@c = B.helper 2\n")));
+
+        assertGraphsMatch(incremental);
+        assertTrue(incremental.getGraph().outgoingFor(id("A", a)).contains(id("B", b)));
+
+        // B no longer declares the global A depends on
+        incremental.update(Arrays.asList(analyze(b, "class @Bee\n  @helper: (value) -> value\n")),
+            Collections.<File>emptyList());
+
+        assertGraphsMatch(incremental);
+        assertFalse(incremental.getGraph().outgoingFor(id("A", a)).contains(id("B", b)));
+
+        // A new file declares it again
+        incremental.update(Arrays.asList(analyze(d, "class @B\n  @helper: (value) -> value\n")),
+            Collections.<File>emptyList());
+
+        assertGraphsMatch(incremental);
+        assertTrue(incremental.getGraph().outgoingFor(id("A", a)).contains(id("B", d)));
+
+        // Editing the declaring file without changing the global keeps the edges into it
+        incremental.update(Arrays.asList(analyze(d, "class @B\n  @helper: (value) -> value + 1\n")),
+            Collections.<File>emptyList());
+
+        assertGraphsMatch(incremental);
+        assertTrue(incremental.getGraph().outgoingFor(id("A", a)).contains(id("B", d)));
+
+        // Removing it drops its nodes and the edges into them
+        incremental.update(new ArrayList<FileAnalysis>(), Arrays.asList(d));
+
+        assertGraphsMatch(incremental);
+        assertFalse(incremental.getFiles().contains(d));
+        assertFalse(incremental.getGraph().outgoingFor(id("A", a)).contains(id("B", d)));
+    }
+
+    private FileAnalysis analyze(File file, String source) {
+        CoffeeTree tree = new CoffeeTree();
+        tree.add(file);
+
+        for (CoffeeToken token : new JavaCoffeeScriptLexer().tokenize(source)) {
+            tree.add(token);
+        }
+
+        FileAnalysis analysis = new CoffeeScriptDependencies().analyze(file, tree.scopeFor(file));
+        current.put(file, analysis);
+        return analysis;
+    }
+
+    private void assertGraphsMatch(IncrementalDependencies incremental) {
+        for (File file : new ArrayList<File>(current.keySet())) {
+            if (!incremental.getFiles().contains(file)) {
+                current.remove(file);
+            }
+        }
+
+        DependencyGraph<CoffeeIdentifier> expected =
+            new CoffeeScriptDependencies().generateGraph(new ArrayList<FileAnalysis>(current.values()));
+        DependencyGraph<CoffeeIdentifier> patched = incremental.getGraph();
+
+        assertEquals(expected.getEdges(), patched.getEdges());
+        assertEquals(
+            expected.getCompactGraph().getNodes().size(),
+            patched.getCompactGraph().getNodes().size());
+
+        for (CoffeeIdentifier node : expected.getCompactGraph().getNodes()) {
+            assertTrue(patched.getCompactGraph().idOf(node) >= 0);
+        }
+
+        // The maintained order places each identifier after its dependencies
+        List<CoffeeIdentifier> sorted = incremental.getSortedIdentifiers();
+        assertEquals(expected.getCompactGraph().getNodes().size(), sorted.size());
+
+        for (Edge<CoffeeIdentifier> edge : patched.getEdges()) {
+            assertTrue(sorted.indexOf(edge.getTo()) < sorted.indexOf(edge.getFrom()));
+        }
+    }
+
+    private static CoffeeIdentifier id(String name, File file) {
+        return new CoffeeIdentifier(name, file, 1);
+    }
+}
@@ -0,0 +1,97 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.dependency.graph;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the frozen {@code DependencyGraph} view against the mutable graph it was frozen from.
+ *
+ * @author Matt Bolt
+ */
+public class DependencyGraphTest {
+
+    @Test
+    public void frozenViewTest() {
+        DependencyGraph<String> graph = newGraph();
+        DependencyGraph<String> frozen = graph.freeze();
+
+        assertTrue(frozen.isFrozen());
+        assertFalse(graph.isFrozen());
+
+        for (String node : Arrays.asList("a", "b", "c", "d", "e", "missing")) {
+            assertEquals(node, graph.outgoingFor(node), frozen.outgoingFor(node));
+            assertEquals(node, graph.incomingFor(node), frozen.incomingFor(node));
+        }
+
+        assertEquals(graph.getRoots(), frozen.getRoots());
+        assertEquals(graph.getEdges(), frozen.getEdges());
+
+        CompactGraph<String> compact = frozen.getCompactGraph();
+        assertEquals(5, compact.size());
+        assertEquals(4, compact.edgeCount());
+        assertEquals(-1, compact.idOf("missing"));
+        assertEquals(2, compact.outDegree(compact.idOf("a")));
+        assertEquals(2, compact.inDegree(compact.idOf("c")));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void frozenIsReadOnlyTest() {
+        newGraph().freeze().add("a", "e");
+    }
+
+    @Test
+    public void copyOfFrozenIsMutableTest() {
+        DependencyGraph<String> copy = newGraph().freeze().copy();
+
+        assertFalse(copy.isFrozen());
+
+        copy.remove("a", "b");
+        copy.add("e", "a");
+
+        assertEquals(Collections.singleton("c"), copy.outgoingFor("a"));
+        assertEquals(Collections.singleton("a"), copy.outgoingFor("e"));
+        assertEquals(Collections.singleton("e"), copy.getRoots());
+    }
+
+    // a -> b, a -> c, b -> c, c -> d, with e isolated
+    private static DependencyGraph<String> newGraph() {
+        DependencyGraph<String> graph = new DependencyGraph<String>();
+        graph.add("a", "b");
+        graph.add("a", "c");
+        graph.add("b", "c");
+        graph.add("c", "d");
+        graph.add("e");
+        return graph;
+    }
+}
@@ -0,0 +1,129 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.dependency.graph;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the {@code DynamicTopologicalOrder} against the edges of the graph it orders.
+ *
+ * @author Matt Bolt
+ */
+public class DynamicTopologicalOrderTest {
+
+    @Test
+    public void cycleRejectedTest() throws Exception {
+        DynamicTopologicalOrder<String> order = new DynamicTopologicalOrder<String>();
+        order.add("a", "b");
+        order.add("b", "c");
+        order.add("d", "a");
+
+        try {
+            order.add("c", "a");
+            fail("The cycle was not detected");
+        }
+        catch (CyclicDependencyException e) {
+            assertEquals("Cyclic Dependencies for: c->a, a->b, b->c", e.getMessage());
+        }
+
+        assertFalse(order.getGraph().outgoingFor("c").contains("a"));
+        assertOrdered(order);
+    }
+
+    @Test
+    public void randomEditsTest() throws Exception {
+        Random random = new Random(35);
+        int size = 200;
+
+        DynamicTopologicalOrder<Integer> order = new DynamicTopologicalOrder<Integer>();
+        for (int i = 0; i < size; ++i) {
+            order.add(i);
+        }
+
+        for (int i = 0; i < 5000; ++i) {
+            int from = random.nextInt(size);
+            int to = random.nextInt(size);
+
+            if (random.nextInt(4) == 0) {
+                order.remove(from, to);
+                continue;
+            }
+
+            try {
+                order.add(from, to);
+                assertTrue(order.getGraph().outgoingFor(from).contains(to));
+            }
+            catch (CyclicDependencyException e) {
+                // Only an edge that closes a cycle is rejected
+                DependencyGraph<Integer> cyclic = order.getGraph().copy();
+                cyclic.add(from, to);
+                assertFalse(GraphUtils.findCycles(cyclic).isEmpty());
+            }
+        }
+
+        assertOrdered(order);
+    }
+
+    @Test
+    public void removedNodesTest() throws Exception {
+        DependencyGraph<String> graph = new DependencyGraph<String>();
+        graph.add("a", "b");
+        graph.add("b", "c");
+        graph.add("c", "d");
+
+        DynamicTopologicalOrder<String> order = new DynamicTopologicalOrder<String>(graph);
+        order.remove("b");
+        order.remove("c");
+        order.add("d", "a");
+
+        assertFalse(order.contains("b"));
+        assertEquals(2, order.getOrder().size());
+        assertOrdered(order);
+    }
+
+    private static <T> void assertOrdered(DynamicTopologicalOrder<T> order) {
+        List<T> nodes = order.getOrder();
+        Map<T, Integer> indexes = new HashMap<T, Integer>();
+        for (int i = 0; i < nodes.size(); ++i) {
+            indexes.put(nodes.get(i), i);
+        }
+
+        for (Edge<T> edge : new ArrayList<Edge<T>>(order.getGraph().getEdges())) {
+            assertTrue(edge.toString(), indexes.get(edge.getTo()) < indexes.get(edge.getFrom()));
+        }
+    }
+}
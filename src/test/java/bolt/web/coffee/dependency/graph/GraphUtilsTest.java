@@ -0,0 +1,130 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.dependency.graph;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the topological sort in {@code GraphUtils}.
+ *
+ * @author Matt Bolt
+ */
+public class GraphUtilsTest {
+
+    @Test
+    public void topologicalSortTest() throws Exception {
+        DependencyGraph<String> graph = new DependencyGraph<String>();
+        graph.add("a", "b");
+        graph.add("a", "c");
+        graph.add("b", "c");
+        graph.add("c", "d");
+        graph.add("e");
+
+        assertSorted(GraphUtils.topologicalSort(graph));
+        assertSorted(GraphUtils.topologicalSort(graph.freeze()));
+
+        // The graph is left as it was
+        assertEquals(4, graph.getEdges().size());
+    }
+
+    @Test
+    public void cyclicSortTest() {
+        DependencyGraph<String> graph = new DependencyGraph<String>();
+        graph.add("root", "a");
+        graph.add("a", "b");
+        graph.add("b", "a");
+        graph.add("b", "leaf");
+
+        try {
+            GraphUtils.topologicalSort(graph.freeze());
+        }
+        catch (CyclicDependencyException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("a->b"));
+            assertTrue(e.getMessage(), e.getMessage().contains("b->a"));
+            assertTrue(e.getMessage(), !e.getMessage().contains("root->a"));
+            assertTrue(e.getMessage(), !e.getMessage().contains("b->leaf"));
+            return;
+        }
+
+        fail("Did not catch Cyclic Dependency");
+    }
+
+    @Test
+    public void shortestCycleTest() {
+        DependencyGraph<String> graph = new DependencyGraph<String>();
+
+        // A long loop through 0..999 where each node also links back to the one before, plus a separate self loop
+        for (int i = 0; i < 1000; ++i) {
+            graph.add(String.valueOf(i), String.valueOf((i + 1) % 1000));
+            graph.add(String.valueOf((i + 1) % 1000), String.valueOf(i));
+        }
+        graph.add("self", "self");
+        graph.add("self", "0");
+
+        List<List<String>> components = GraphUtils.stronglyConnectedComponents(graph);
+        assertEquals(2, components.size());
+
+        List<List<String>> cycles = GraphUtils.findCycles(graph);
+        assertEquals(2, cycles.size());
+
+        for (List<String> cycle : cycles) {
+            if (cycle.contains("self")) {
+                assertEquals(1, cycle.size());
+            }
+            else {
+                assertEquals(2, cycle.size());
+            }
+        }
+    }
+
+    @Test
+    public void deepGraphTest() {
+        DependencyGraph<Integer> graph = new DependencyGraph<Integer>();
+
+        for (int i = 0; i < 200000; ++i) {
+            graph.add(i, i + 1);
+        }
+        graph.add(200000, 199999);
+
+        List<List<Integer>> cycles = GraphUtils.findCycles(graph);
+        assertEquals(1, cycles.size());
+        assertEquals(2, cycles.get(0).size());
+    }
+
+    private static void assertSorted(List<String> order) {
+        assertEquals(5, order.size());
+        assertTrue(order.indexOf("d") < order.indexOf("c"));
+        assertTrue(order.indexOf("c") < order.indexOf("b"));
+        assertTrue(order.indexOf("b") < order.indexOf("a"));
+        assertTrue(order.contains("e"));
+    }
+}
@@ -0,0 +1,72 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.io;
+
+import bolt.web.coffee.dependency.CoffeeIdentifier;
+import bolt.web.coffee.dependency.graph.DependencyGraph;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the ordering shared between exporters by an {@code ExportContext}.
+ *
+ * @author Matt Bolt
+ */
+public class ExportContextTest {
+
+    @Test
+    public void fileOrderTest() throws Exception {
+        File foo = new File("Foo.coffee");
+        File bar = new File("Bar.coffee");
+
+        CoffeeIdentifier fooClass = new CoffeeIdentifier("Foo", foo, 1);
+        CoffeeIdentifier fooName = new CoffeeIdentifier("name", foo, 1);
+        CoffeeIdentifier barClass = new CoffeeIdentifier("Bar", bar, 1);
+
+        DependencyGraph<CoffeeIdentifier> graph = new DependencyGraph<CoffeeIdentifier>();
+        graph.add(barClass, fooClass);
+        graph.add(fooName);
+
+        ExportContext context = new ExportContext(graph);
+
+        assertTrue(context.getGraph().isFrozen());
+        assertEquals(3, context.getSortedIdentifiers().size());
+        assertTrue(context.getSortedIdentifiers() == context.getSortedIdentifiers());
+
+        List<String> paths = context.getFilePaths();
+        assertEquals(2, paths.size());
+        assertEquals(foo.getCanonicalPath(), paths.get(0));
+        assertEquals(bar.getCanonicalPath(), paths.get(1));
+
+        assertEquals(foo, context.getFileOrder().get(0).getFile());
+        assertEquals(bar, context.getFileOrder().get(1).getFile());
+    }
+}
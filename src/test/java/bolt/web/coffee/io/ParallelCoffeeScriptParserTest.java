@@ -0,0 +1,99 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.io;
+
+import bolt.web.coffee.BaseTestCase;
+import bolt.web.coffee.exceptions.CoffeeSyntaxException;
+import bolt.web.coffee.io.lexers.JavaCoffeeScriptLexer;
+import bolt.web.coffee.tree.CoffeeTree;
+import bolt.web.coffee.types.CoffeeTokenType;
+import bolt.web.coffee.util.FileHelper;
+import bolt.web.coffee.util.FileType;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that the {@code ParallelCoffeeScriptParser} builds the same tree as the serial parser.
+ *
+ * @author Matt Bolt
+ */
+public class ParallelCoffeeScriptParserTest extends BaseTestCase {
+
+    @Test
+    public void sameTreeTest() throws Exception {
+        List<File> files = FileHelper.collectFiles(
+            Collections.singletonList(classPathFile("/functions.coffee").getParentFile()), FileType.Coffee);
+
+        Lexer lexer = new JavaCoffeeScriptLexer();
+        CoffeeTree serial = new CoffeeScriptMinParser().parse(lexer, files);
+        CoffeeTree parallel = new ParallelCoffeeScriptParser(4).parse(lexer, files);
+
+        assertEquals(new ArrayList<File>(serial.getFiles()), new ArrayList<File>(parallel.getFiles()));
+        assertEquals(files, new ArrayList<File>(parallel.getFiles()));
+
+        for (File file : files) {
+            assertEquals(file.getName(),
+                values(serial, file, CoffeeTokenType.Identifier), values(parallel, file, CoffeeTokenType.Identifier));
+            assertEquals(file.getName(),
+                serial.scopeFor(file).getScopes().size(), parallel.scopeFor(file).getScopes().size());
+        }
+    }
+
+    @Test(expected = CoffeeSyntaxException.class)
+    public void syntaxErrorTest() throws Exception {
+        File broken = File.createTempFile("coffee-graph", ".coffee");
+        broken.deleteOnExit();
+        Writer writer = new FileWriter(broken);
+        try {
+            writer.write("a = (b\n)\n)");
+        }
+        finally {
+            writer.close();
+        }
+
+        List<File> files = new ArrayList<File>();
+        files.add(classPathFile("/functions.coffee"));
+        files.add(broken);
+
+        new ParallelCoffeeScriptParser(2).parse(new JavaCoffeeScriptLexer(), files);
+    }
+
+    private static List<String> values(CoffeeTree tree, File file, CoffeeTokenType type) {
+        List<String> values = new ArrayList<String>();
+        for (CoffeeToken token : tree.scopeFor(file).tokensFor(type)) {
+            values.add(token.getValue());
+        }
+        return values;
+    }
+}
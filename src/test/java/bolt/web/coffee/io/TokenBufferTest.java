@@ -0,0 +1,91 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.io;
+
+import bolt.web.coffee.types.CoffeeScriptLine;
+import bolt.web.coffee.types.CoffeeSymbolType;
+import bolt.web.coffee.types.CoffeeTokenType;
+import bolt.web.coffee.util.SymbolTable;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the primitive storage and token views of a {@code TokenBuffer}.
+ *
+ * @author Matt Bolt
+ */
+public class TokenBufferTest {
+
+    @Test
+    public void storageTest() {
+        TokenBuffer buffer = new TokenBuffer(1);
+
+        int foo = buffer.append(CoffeeTokenType.Identifier, "foo", 0, 0, 0, 2);
+        int assign = buffer.append(CoffeeSymbolType.Assignment, "=", 0, 4, 0, 4);
+        int bar = buffer.append(CoffeeTokenType.Identifier, "foo", 70000, 3, 70000, 100000);
+
+        assertEquals(3, buffer.size());
+        assertEquals(CoffeeSymbolType.Assignment, buffer.typeAt(assign));
+        assertEquals("foo", buffer.valueAt(bar));
+        assertEquals(buffer.valueIdAt(foo), buffer.valueIdAt(bar));
+        assertFalse(buffer.valueIdAt(foo) == buffer.valueIdAt(assign));
+        assertEquals(CoffeeScriptLine.lineFor(70000, 3, 70000, 100000), buffer.lineAt(bar));
+
+        // Only identifiers are interned as symbols
+        assertEquals(SymbolTable.global().idOf("foo"), buffer.symbolAt(foo));
+        assertEquals(buffer.symbolAt(foo), buffer.symbolAt(bar));
+        assertEquals(-1, buffer.symbolAt(assign));
+
+        TokenBuffer unlocated = new TokenBuffer();
+        unlocated.append(CoffeeTokenType.Identifier, "a", 0, 0, 0, 0);
+        assertEquals(CoffeeScriptLine.Zero, unlocated.lineAt(0));
+    }
+
+    @Test
+    public void viewTest() {
+        TokenBuffer buffer = new TokenBuffer();
+        buffer.add(new CoffeeToken(CoffeeTokenType.Identifier, "foo", CoffeeScriptLine.lineFor(1, 2, 1, 4)));
+
+        CoffeeToken view = buffer.get(0);
+        assertEquals(CoffeeTokenType.Identifier, view.getType());
+        assertEquals("foo", view.getValue());
+        assertEquals(CoffeeScriptLine.lineFor(1, 2, 1, 4), view.getLineNumber());
+
+        // Views of the same index are equal, while separately created tokens are only equal to themselves
+        assertEquals(view, buffer.get(0));
+        assertEquals(view.hashCode(), buffer.get(0).hashCode());
+        assertEquals(0, buffer.indexOf(view));
+        assertEquals(-1, new TokenBuffer().indexOf(view));
+
+        CoffeeToken token = new CoffeeToken(CoffeeTokenType.Identifier, "foo");
+        assertFalse(token.equals(new CoffeeToken(CoffeeTokenType.Identifier, "foo")));
+        assertTrue(token.equals(token));
+        assertEquals(-1, buffer.indexOf(token));
+    }
+}
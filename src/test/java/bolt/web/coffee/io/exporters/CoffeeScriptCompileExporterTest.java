@@ -0,0 +1,189 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.io.exporters;
+
+import bolt.web.coffee.BaseTestCase;
+import bolt.web.coffee.io.CoffeeScriptMinParser;
+import bolt.web.coffee.io.lexers.JavaCoffeeScriptLexer;
+import bolt.web.coffee.util.CompiledScriptCache;
+import bolt.web.coffee.util.FileHelper;
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+import java.io.File;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests compiling the ordered files with the {@code CoffeeScriptCompileExporter}.
+ *
+ * @author Matt Bolt
+ */
+public class CoffeeScriptCompileExporterTest extends BaseTestCase {
+
+    @Test
+    public void compileEachFileTest() throws Exception {
+        File output = File.createTempFile("coffee-graph", ".js");
+        output.deleteOnExit();
+
+        compile(classPathFile("/simple-test"), new CoffeeScriptCompileExporter(output, false, 2, true));
+
+        String js = FileHelper.loadText(output);
+        assertTrue(js.contains("(function() {"));
+        assertTrue(js.contains("}).call(this);"));
+
+        // Bar creates a Foo when it's defined, so this only runs if Foo was written first
+        Context context = Context.enter();
+        try {
+            Scriptable scope = context.initStandardObjects();
+            context.evaluateString(scope, js, output.getName(), 1, null);
+
+            assertTrue(ScriptableObject.getProperty(scope, "Foo") instanceof Scriptable);
+            assertTrue(ScriptableObject.getProperty(scope, "Bar") instanceof Scriptable);
+            assertEquals("something", ScriptableObject.getProperty(scope, "something"));
+        }
+        finally {
+            Context.exit();
+        }
+    }
+
+    /**
+     * A function in B.coffee assigns to a top-level variable of A.coffee. Compiling with more than one job must still
+     * join the files, otherwise the assignment would declare a new local variable in the function.
+     */
+    @Test
+    public void sharedScopeTest() throws Exception {
+        File directory = createTempDirectory();
+
+        write(new File(directory, "A.coffee"), "class @Counter\ncount = 0\n");
+        write(new File(directory, "B.coffee"), "c = new Counter()\nincrement = -> count = count + 1\n");
+        File output = new File(directory, "out.js");
+
+        try {
+            compile(directory, new CoffeeScriptCompileExporter(output, true, 1, false));
+            String joined = FileHelper.loadText(output);
+
+            compile(directory, new CoffeeScriptCompileExporter(output, true, 2, false));
+            assertEquals(joined, FileHelper.loadText(output));
+
+            Context context = Context.enter();
+            try {
+                Scriptable scope = context.initStandardObjects();
+                context.evaluateString(scope, joined, output.getName(), 1, null);
+
+                Object count = context.evaluateString(scope, "increment(); increment(); count", "count", 1, null);
+                assertEquals(2, (int) Context.toNumber(count));
+            }
+            finally {
+                Context.exit();
+            }
+        }
+        finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void cachedCompileTest() throws Exception {
+        File directory = createTempDirectory();
+        File output = new File(directory, "out.js");
+        File cacheDirectory = new File(directory, "cache");
+        File source = classPathFile("/simple-test");
+
+        try {
+            CompiledScriptCache cache = new CompiledScriptCache(cacheDirectory);
+
+            compile(source, new CoffeeScriptCompileExporter(output, false));
+            String uncached = FileHelper.loadText(output);
+
+            // The joined files are cached as one entry, and the cache doesn't change the JavaScript generated
+            compile(source, new CoffeeScriptCompileExporter(output, false, 1, false, cache));
+            assertEquals(uncached, FileHelper.loadText(output));
+            assertEquals(1, cacheDirectory.listFiles().length);
+
+            compile(source, new CoffeeScriptCompileExporter(output, false, 1, false, cache));
+            assertEquals(uncached, FileHelper.loadText(output));
+
+            // With separate scopes, each file is cached on its own
+            compile(source, new CoffeeScriptCompileExporter(output, false, 2, true, cache));
+            String separate = FileHelper.loadText(output);
+            assertEquals(3, cacheDirectory.listFiles().length);
+
+            compile(source, new CoffeeScriptCompileExporter(output, false, 2, true, cache));
+            assertEquals(separate, FileHelper.loadText(output));
+
+            // Cache hits are written as they are, without compiling the source again
+            for (File entry : cacheDirectory.listFiles()) {
+                write(entry, "// cached " + entry.getName() + "\n");
+            }
+
+            compile(source, new CoffeeScriptCompileExporter(output, false, 1, false, cache));
+            assertEquals(1, FileHelper.loadText(output).split("// cached ").length - 1);
+
+            compile(source, new CoffeeScriptCompileExporter(output, false, 2, true, cache));
+            assertEquals(2, FileHelper.loadText(output).split("// cached ").length - 1);
+        }
+        finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void compileErrorTest() throws Exception {
+        File directory = createTempDirectory();
+
+        write(new File(directory, "Good.coffee"), "class @Good\n");
+        write(new File(directory, "Bad.coffee"), "class @Bad extends Good\n  x: (1 +)\n");
+        File output = new File(directory, "out.js");
+
+        try {
+            compile(directory, new CoffeeScriptCompileExporter(output, true, 2, true));
+        }
+        catch (RuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Bad.coffee"));
+            assertTrue(e.getMessage(), e.getMessage().contains("line 2"));
+            return;
+        }
+        finally {
+            delete(directory);
+        }
+
+        fail("Did not fail to compile Bad.coffee");
+    }
+
+    private static void compile(File source, CoffeeScriptCompileExporter exporter) throws Exception {
+        buildDependencies()
+            .withTokensFrom(new JavaCoffeeScriptLexer())
+            .parsedWith(new CoffeeScriptMinParser())
+            .exportedBy(exporter)
+            .build(Collections.singletonList(source));
+    }
+}
@@ -0,0 +1,133 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.io.lexers;
+
+import bolt.web.coffee.BaseTestCase;
+import bolt.web.coffee.exceptions.CoffeeSyntaxException;
+import bolt.web.coffee.io.CoffeeScriptLexer;
+import bolt.web.coffee.io.CoffeeToken;
+import bolt.web.coffee.io.StreamingLexer;
+import bolt.web.coffee.io.TokenBuffer;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the {@link JavaCoffeeScriptLexer} produces the same tokens as the lexer inside the CoffeeScript compiler.
+ *
+ * @author Matt Bolt
+ */
+public class LexerConformanceTest extends BaseTestCase {
+
+    private static final String[] Snippets = {
+        "a = b: 1, c: 2\nd = e ? f",
+        "class Foo extends Bar\n  constructor: (@x, y...) ->\n    super x\n  @baz: => @x?.y?[0]",
+        "s = \"hello #{name + \"!#{1 + 2}\"} there\"\nt = '''\n  multi\n  line\n'''",
+        "r = /ab+c/gi\nh = ///\n  a #{b} c # comment\n///",
+        "###\nblock comment\n###\nx = 0x1F + 1e3 + .5\n`raw js`",
+        "for own k, v of obj when v isnt null\n  console.log k unless not v\nelse if a then b",
+        "f a, (b) ->\n  c\n, d\nx = [\n  1\n  2\n]",
+        "switch x\n  when 1, 2 then y\n  else z\ntry a catch e then b finally c",
+        "﻿  \r\nfoo = ->\r\n\treturn bar\r\n  \n"
+    };
+
+    private final CoffeeScriptLexer rhinoLexer = new CoffeeScriptLexer();
+    private final JavaCoffeeScriptLexer javaLexer = new JavaCoffeeScriptLexer();
+
+    @Test
+    public void resourceFilesConform() throws Exception {
+        List<File> files = new ArrayList<File>();
+        collectCoffeeFiles(classPathFile("/functions.coffee").getParentFile(), files);
+
+        assertTrue(!files.isEmpty());
+
+        for (File file : files) {
+            List<String> differences = ConformanceLexer.compare(rhinoLexer.tokenize(file), javaLexer.tokenize(file));
+            assertEquals(file.getName() + " " + differences, 0, differences.size());
+        }
+    }
+
+    @Test
+    public void batchMatchesSingleFiles() throws Exception {
+        List<File> files = new ArrayList<File>();
+        collectCoffeeFiles(classPathFile("/functions.coffee").getParentFile(), files);
+
+        List<List<CoffeeToken>> batch = rhinoLexer.tokenizeAll(files);
+        assertEquals(files.size(), batch.size());
+
+        for (int i = 0; i < files.size(); ++i) {
+            List<String> differences = ConformanceLexer.compare(rhinoLexer.tokenize(files.get(i)), batch.get(i));
+            assertEquals(files.get(i).getName() + " " + differences, 0, differences.size());
+        }
+    }
+
+    @Test
+    public void streamMatchesTokenize() {
+        for (StreamingLexer lexer : new StreamingLexer[] { rhinoLexer, javaLexer }) {
+            for (String snippet : Snippets) {
+                TokenBuffer streamed = new TokenBuffer();
+                lexer.tokenize(snippet, streamed);
+
+                List<String> differences = ConformanceLexer.compare(lexer.tokenize(snippet), streamed);
+                assertEquals(snippet + " " + differences, 0, differences.size());
+            }
+        }
+    }
+
+    @Test
+    public void snippetsConform() {
+        for (String snippet : Snippets) {
+            List<String> differences = ConformanceLexer.compare(rhinoLexer.tokenize(snippet), javaLexer.tokenize(snippet));
+            assertEquals(snippet + " " + differences, 0, differences.size());
+        }
+    }
+
+    @Test(expected = CoffeeSyntaxException.class)
+    public void syntaxErrorTest() {
+        javaLexer.tokenize("a = (b\n)\n)");
+    }
+
+    private static void collectCoffeeFiles(File directory, List<File> files) {
+        File[] children = directory.listFiles();
+        if (null == children) {
+            return;
+        }
+
+        for (File child : children) {
+            if (child.isDirectory()) {
+                collectCoffeeFiles(child, files);
+            }
+            else if (child.getName().endsWith(".coffee")) {
+                files.add(child);
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.tree;
+
+import bolt.web.coffee.io.CoffeeToken;
+import bolt.web.coffee.io.TokenBuffer;
+import bolt.web.coffee.io.TokenSink;
+import bolt.web.coffee.types.CoffeeSymbolType;
+import bolt.web.coffee.types.CoffeeTokenType;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the token look-ups within a {@code CoffeeScope}.
+ *
+ * @author Matt Bolt
+ */
+public class CoffeeScopeTest {
+
+    @Test
+    public void neighbourTest() {
+        CoffeeScope scope = new CoffeeScope();
+
+        CoffeeToken foo = new CoffeeToken(CoffeeTokenType.Identifier, "foo");
+        CoffeeToken assign = new CoffeeToken(CoffeeSymbolType.Assignment, "=");
+        CoffeeToken bar = new CoffeeToken(CoffeeTokenType.Identifier, "bar");
+
+        scope.add(foo);
+        scope.add(assign);
+        scope.add(bar);
+
+        assertNull(scope.before(foo));
+        assertEquals(assign, scope.after(foo));
+        assertEquals(foo, scope.before(assign));
+        assertEquals(bar, scope.after(assign));
+        assertNull(scope.after(bar));
+    }
+
+    @Test
+    public void closingTokenTest() {
+        CoffeeScope scope = new CoffeeScope();
+
+        CoffeeToken outerStart = new CoffeeToken(CoffeeTokenType.CallStart, "(");
+        CoffeeToken indexStart = new CoffeeToken(CoffeeTokenType.IndexStart, "[");
+        CoffeeToken innerStart = new CoffeeToken(CoffeeTokenType.CallStart, "(");
+        CoffeeToken innerEnd = new CoffeeToken(CoffeeTokenType.CallEnd, ")");
+        CoffeeToken indexEnd = new CoffeeToken(CoffeeTokenType.IndexEnd, "]");
+        CoffeeToken outerEnd = new CoffeeToken(CoffeeTokenType.CallEnd, ")");
+        CoffeeToken unclosed = new CoffeeToken(CoffeeTokenType.CallStart, "(");
+
+        scope.add(new CoffeeToken(CoffeeTokenType.Identifier, "foo"));
+        scope.add(outerStart);
+        scope.add(new CoffeeToken(CoffeeTokenType.Identifier, "bar"));
+        scope.add(indexStart);
+        scope.add(new CoffeeToken(CoffeeTokenType.Identifier, "baz"));
+        scope.add(innerStart);
+        scope.add(innerEnd);
+        scope.add(indexEnd);
+        scope.add(outerEnd);
+        scope.add(new CoffeeToken(CoffeeTokenType.Identifier, "qux"));
+        scope.add(unclosed);
+
+        assertEquals(outerEnd, scope.closingFor(outerStart));
+        assertEquals(indexEnd, scope.closingFor(indexStart));
+        assertEquals(innerEnd, scope.closingFor(innerStart));
+        assertNull(scope.closingFor(unclosed));
+        assertNull(scope.closingFor(outerEnd));
+    }
+
+    @Test
+    public void bufferPositionTest() {
+        TokenBuffer buffer = new TokenBuffer();
+        buffer.append(CoffeeTokenType.Identifier, "foo", 0, 0, 0, 2);
+        buffer.append(CoffeeTokenType.CallStart, "(", 0, 3, 0, 3);
+        buffer.append(CoffeeTokenType.Indent, "2", 0, 4, 0, 4);
+        buffer.append(CoffeeTokenType.Identifier, "bar", 1, 2, 1, 4);
+        buffer.append(CoffeeTokenType.Outdent, "2", 1, 5, 1, 5);
+        buffer.append(CoffeeTokenType.CallEnd, ")", 1, 5, 1, 5);
+
+        CoffeeTree tree = new CoffeeTree();
+        File file = new File("foo.coffee");
+        tree.add(file, buffer);
+
+        CoffeeScope scope = tree.scopeFor(file);
+        assertEquals(3, scope.size());
+        assertArrayEquals(new int[] { 0 }, scope.positionsFor(CoffeeTokenType.Identifier));
+        assertEquals(2, scope.closingPositionFor(1));
+        assertEquals(-1, scope.closingPositionFor(2));
+        assertEquals("foo", scope.valueAt(0));
+        assertNull(scope.typeAt(3));
+        assertNull(scope.valueAt(-1));
+
+        // The tokens returned by the scope are views of the file's buffer
+        assertEquals(buffer.get(5), scope.closingFor(buffer.get(1)));
+        assertEquals(buffer.get(1), scope.after(scope.tokensFor(CoffeeTokenType.Identifier).get(0)));
+
+        CoffeeScope inner = scope.getScopes().get(0);
+        assertEquals(buffer.get(2), inner.getIdentifier());
+        assertEquals("bar", inner.valueAt(0));
+        assertEquals(0, inner.positionOf(buffer.get(3)));
+        assertEquals(-1, scope.positionOf(buffer.get(3)));
+    }
+
+    @Test
+    public void streamingTest() {
+        CoffeeTree tree = new CoffeeTree();
+        File file = new File("foo.coffee");
+
+        TokenSink sink = tree.sinkFor(file);
+        sink.token(CoffeeTokenType.Identifier, "foo", 0, 0, 0, 2);
+        sink.token(CoffeeTokenType.CallStart, "(", 0, 3, 0, 3);
+        sink.token(CoffeeTokenType.Indent, "2", 0, 4, 0, 4);
+        sink.token(CoffeeTokenType.Identifier, "bar", 1, 2, 1, 4);
+        sink.token(CoffeeTokenType.Outdent, "2", 1, 5, 1, 5);
+        sink.token(CoffeeTokenType.CallEnd, ")", 1, 5, 1, 5);
+
+        // The scopes match those built from a buffer of the same tokens
+        CoffeeScope scope = tree.scopeFor(file);
+        assertEquals(3, scope.size());
+        assertArrayEquals(new int[] { 0 }, scope.positionsFor(CoffeeTokenType.Identifier));
+        assertEquals(2, scope.closingPositionFor(1));
+        assertEquals(CoffeeTokenType.CallEnd, scope.typeAt(2));
+
+        CoffeeScope inner = scope.getScopes().get(0);
+        assertEquals(CoffeeTokenType.Indent, inner.getIdentifier().getType());
+        assertEquals("bar", inner.valueAt(0));
+        assertEquals(6, scope.getBuffer().size());
+    }
+
+    @Test
+    public void compactTest() {
+        CoffeeTree tree = new CoffeeTree();
+        File file = new File("foo.coffee");
+
+        TokenSink sink = tree.sinkFor(file);
+        sink.token(CoffeeTokenType.Identifier, "foo", 0, 0, 0, 2);
+        sink.token(CoffeeTokenType.CallStart, "(", 0, 3, 0, 3);
+        sink.token(CoffeeTokenType.Indent, "2", 0, 4, 0, 4);
+        sink.token(CoffeeTokenType.Identifier, "bar", 1, 2, 1, 4);
+        sink.token(CoffeeTokenType.Indent, "2", 1, 5, 1, 5);
+        sink.token(CoffeeTokenType.Identifier, "baz", 2, 4, 2, 6);
+        sink.token(CoffeeTokenType.Outdent, "2", 2, 7, 2, 7);
+        sink.token(CoffeeTokenType.Outdent, "2", 2, 7, 2, 7);
+        sink.token(CoffeeTokenType.Indent, "2", 3, 0, 3, 0);
+        sink.token(CoffeeTokenType.Identifier, "qux", 3, 2, 3, 4);
+        sink.token(CoffeeTokenType.Outdent, "2", 3, 5, 3, 5);
+        sink.token(CoffeeTokenType.CallEnd, ")", 3, 5, 3, 5);
+
+        CompactScopes scopes = tree.scopeFor(file).compact();
+
+        // The scopes are numbered in the order they were opened: foo.coffee, bar, baz, then qux
+        assertEquals(4, scopes.getScopeCount());
+        assertEquals(-1, scopes.parentOf(0));
+        assertEquals(1, scopes.firstChildOf(0));
+        assertEquals(2, scopes.firstChildOf(1));
+        assertEquals(0, scopes.parentOf(3));
+        assertEquals(3, scopes.nextSiblingOf(1));
+        assertEquals(-1, scopes.nextSiblingOf(3));
+        assertEquals(-1, scopes.firstChildOf(3));
+
+        // Each scope's own tokens are contiguous, and the neighbouring tokens of other scopes are out of reach
+        assertEquals(6, scopes.size());
+        assertEquals(0, scopes.startOf(0));
+        assertEquals(3, scopes.endOf(0));
+        assertEquals(CoffeeTokenType.CallEnd, scopes.typeAt(0, 2));
+        assertEquals(2, scopes.closingPositionFor(0, 1));
+        assertNull(scopes.typeAt(0, 3));
+        assertEquals("bar", scopes.valueAt(1, 3));
+        assertNull(scopes.valueAt(1, 4));
+
+        assertEquals(1, scopes.countOf(3, CoffeeTokenType.Identifier));
+        assertEquals("qux", scopes.valueAt(3, scopes.positionOf(3, CoffeeTokenType.Identifier, 0)));
+        assertEquals(0, scopes.countOf(1, CoffeeTokenType.CallStart));
+        assertEquals(1, scopes.countOf(0, CoffeeTokenType.CallStart));
+        assertEquals(0, scopes.countOf(3, CoffeeTokenType.CallStart));
+        assertEquals("baz", scopes.valueAt(2, scopes.positionOf(2, CoffeeTokenType.Identifier, 0)));
+    }
+
+    @Test
+    public void foreignTokenTest() {
+        CoffeeScope scope = new CoffeeScope();
+        scope.add(new CoffeeToken(CoffeeTokenType.Identifier, "foo"));
+
+        CoffeeToken other = new CoffeeToken(CoffeeTokenType.Identifier, "foo");
+
+        assertNull(scope.before(other));
+        assertNull(scope.after(other));
+    }
+}
@@ -0,0 +1,64 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.types;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests the look-up of token and symbol types by their type strings.
+ *
+ * @author Matt Bolt
+ */
+public class CoffeeScriptTypeTest {
+
+    @Test
+    public void typeForTest() {
+        for (CoffeeTokenType tokenType : CoffeeTokenType.values()) {
+            assertEquals(tokenType, CoffeeScriptType.typeFor(tokenType.getType()));
+        }
+
+        for (CoffeeSymbolType symbolType : CoffeeSymbolType.values()) {
+            assertEquals(symbolType, CoffeeScriptType.typeFor(symbolType.getType()));
+        }
+
+        // Types which aren't defined are a miss rather than an exception
+        assertEquals(CoffeeScriptType.NoType, CoffeeScriptType.typeFor("NOT_A_TYPE"));
+        assertEquals(CoffeeScriptType.NoType, CoffeeScriptType.typeFor(null));
+    }
+
+    @Test
+    public void undefinedTypeTest() {
+        UndefinedCoffeeType undefined = UndefinedCoffeeType.typeFor("NOT_A_TYPE");
+
+        assertEquals("NOT_A_TYPE", undefined.getType());
+        assertSame(undefined, UndefinedCoffeeType.typeFor("NOT_A_TYPE"));
+        assertFalse(undefined == UndefinedCoffeeType.typeFor("ANOTHER_TYPE"));
+    }
+}
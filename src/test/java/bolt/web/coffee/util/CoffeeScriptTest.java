@@ -0,0 +1,68 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.util;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Tests that the {@code CoffeeScript} compiler is only loaded once it is used.
+ *
+ * @author Matt Bolt
+ */
+public class CoffeeScriptTest {
+
+    @Test
+    public void bundledVersionTest() {
+        // The version recorded by the build must match the compiler actually bundled
+        CoffeeScript bundled = new CoffeeScript(CoffeeScriptEnginePool.forClasspath("CoffeeScript.js"));
+
+        assertEquals(bundled.getVersion(), new CoffeeScript().getVersion());
+    }
+
+    @Test
+    public void lazyLoadTest() throws Exception {
+        String missing = new File("missing-coffee-script.js").toURI().toURL().toExternalForm();
+
+        // Nothing is read until the compiler is needed
+        CoffeeScript coffeeScript = new CoffeeScript(missing);
+
+        boolean loaded = true;
+        try {
+            coffeeScript.tokenize("a = 1");
+        }
+        catch (Error e) {
+            loaded = false;
+        }
+
+        assertFalse("Expected the missing compiler to fail on first use.", loaded);
+    }
+
+}
@@ -0,0 +1,90 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.util;
+
+import bolt.web.coffee.BaseTestCase;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the on-disk {@code CompiledScriptCache}.
+ *
+ * @author Matt Bolt
+ */
+public class CompiledScriptCacheTest extends BaseTestCase {
+
+    @Test
+    public void keyTest() throws Exception {
+        CompiledScriptCache cache = new CompiledScriptCache(new File("unused"));
+
+        String key = cache.keyFor("a = 1", "1.6.1", true);
+
+        assertEquals(key, cache.keyFor("a = 1", "1.6.1", true));
+        assertFalse(key.equals(cache.keyFor("a = 2", "1.6.1", true)));
+        assertFalse(key.equals(cache.keyFor("a = 1", "1.6.2", true)));
+        assertFalse(key.equals(cache.keyFor("a = 1", "1.6.1", false)));
+    }
+
+    @Test
+    public void leastRecentlyUsedTest() throws Exception {
+        File directory = createTempDirectory();
+
+        try {
+            CompiledScriptCache cache = new CompiledScriptCache(directory, 250);
+
+            assertNull(cache.get("first"));
+
+            cache.put("first", repeat('a', 100));
+            cache.put("second", repeat('b', 100));
+            assertEquals(repeat('a', 100), cache.get("first"));
+
+            // Make "second" the least recently used, then go over the cap
+            new File(directory, "second.js").setLastModified(System.currentTimeMillis() - 60000);
+            cache.put("third", repeat('c', 100));
+            cache.trim();
+
+            assertEquals(repeat('a', 100), cache.get("first"));
+            assertNull(cache.get("second"));
+            assertEquals(repeat('c', 100), cache.get("third"));
+        }
+        finally {
+            delete(directory);
+        }
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; ++i) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}
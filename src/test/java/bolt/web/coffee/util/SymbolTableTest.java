@@ -0,0 +1,120 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Coffee-Graph
+//  Copyright(C) 2012 Matt Bolt
+// 
+//  Permission is hereby granted, free of charge, to any person obtaining a 
+//  copy of this software and associated documentation files (the "Software"), 
+//  to deal in the Software without restriction, including without limitation 
+//  the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+//  and/or sell copies of the Software, and to permit persons to whom the  
+//  Software is furnished to do so, subject to the following conditions:
+// 
+//  The above copyright notice and this permission notice shall be included in 
+//  all copies or substantial portions of the Software.
+// 
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+//  THE SOFTWARE.
+// 
+////////////////////////////////////////////////////////////////////////////////
+
+package bolt.web.coffee.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the interning of identifier names by a {@code SymbolTable}.
+ *
+ * @author Matt Bolt
+ */
+public class SymbolTableTest {
+
+    @Test
+    public void internTest() {
+        SymbolTable symbols = new SymbolTable();
+
+        assertEquals(-1, symbols.idOf("foo"));
+        assertEquals(-1, symbols.idOf(null));
+
+        int foo = symbols.intern("foo");
+        int bar = symbols.intern("bar");
+
+        assertEquals(0, foo);
+        assertEquals(1, bar);
+        assertEquals(foo, symbols.intern("foo"));
+        assertEquals(foo, symbols.idOf("foo"));
+        assertEquals("bar", symbols.nameOf(bar));
+    }
+
+    @Test
+    public void resetTest() {
+        SymbolTable.global().intern("resetTestName");
+
+        SymbolTable.reset();
+
+        assertEquals(-1, SymbolTable.global().idOf("resetTestName"));
+        assertEquals(0, SymbolTable.global().intern("resetTestName"));
+    }
+
+    @Test
+    public void concurrentInternTest() throws Exception {
+        final SymbolTable symbols = new SymbolTable();
+        final int count = 2000;
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<int[]>> results = new ArrayList<Future<int[]>>();
+
+            for (int i = 0; i < 4; ++i) {
+                results.add(executor.submit(new Callable<int[]>() {
+                    @Override
+                    public int[] call() {
+                        int[] ids = new int[count];
+
+                        for (int j = 0; j < count; ++j) {
+                            ids[j] = symbols.intern("name" + j);
+                        }
+
+                        return ids;
+                    }
+                }));
+            }
+
+            // Every thread sees the same ids, each id maps back to its name, and the ids are dense
+            int[] first = results.get(0).get();
+            boolean[] used = new boolean[count];
+
+            for (Future<int[]> result : results) {
+                int[] ids = result.get();
+
+                for (int j = 0; j < count; ++j) {
+                    assertEquals(first[j], ids[j]);
+                    assertEquals("name" + j, symbols.nameOf(ids[j]));
+                    used[ids[j]] = true;
+                }
+            }
+
+            for (boolean id : used) {
+                assertTrue(id);
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+}